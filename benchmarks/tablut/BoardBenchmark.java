@@ -0,0 +1,154 @@
+package tablut;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static tablut.Piece.*;
+
+/** Microbenchmarks for the Board operations on the search's hot path:
+ *  move generation, making and undoing moves, captures, and the position
+ *  encoding used to detect repetitions.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** Name of the position (from Positions.NAMES) being measured. */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String position;
+
+    /** Number of plies played on top of the position before measuring
+     *  makeMoveUndoWithHistory, so that the repetition check has a
+     *  realistically long history to scan. */
+    static final int HISTORY_PLIES = 60;
+
+    /** Set up the boards for the benchmarks. */
+    @Setup
+    public void setUp() {
+        _board = Positions.get(position);
+        _moves = _board.legalMoves(_board.turn()).toArray(new Move[0]);
+        _next = 0;
+
+        _capture = Positions.get("capture");
+        _captureMove = Move.mv(Positions.CAPTURE_MOVE);
+
+        _occupied = Square.SQUARE_LIST.stream()
+            .filter(s -> _board.get(s) != EMPTY).toArray(Square[]::new);
+        String before = _board.encodedBoard();
+        captureScan();
+        if (!before.equals(_board.encodedBoard())) {
+            throw new IllegalStateException("position has pending captures");
+        }
+
+        _longGame = Positions.get(position);
+        for (int k = 0; k < HISTORY_PLIES && _longGame.winner() == null;
+             k += 1) {
+            List<Move> moves = _longGame.legalMoves(_longGame.turn());
+            if (moves.isEmpty()) {
+                break;
+            }
+            _longGame.makeMove(moves.get((k * 7) % moves.size()));
+        }
+        _longMoves =
+            _longGame.legalMoves(_longGame.turn()).toArray(new Move[0]);
+    }
+
+    /** Generate all legal moves for the side to move. */
+    @Benchmark
+    public List<Move> legalMoves() {
+        return _board.legalMoves(_board.turn());
+    }
+
+    /** Make and then undo one legal move, cycling through all of them. */
+    @Benchmark
+    public Board makeMoveUndo() {
+        _board.makeMove(nextMove(_moves));
+        _board.undo();
+        return _board;
+    }
+
+    /** Make and undo a move that captures two pieces. */
+    @Benchmark
+    public Board captureMoveUndo() {
+        _capture.makeMove(_captureMove);
+        _capture.undo();
+        return _capture;
+    }
+
+    /** Run all four capture routines from every occupied square of a
+     *  position in which no capture is pending, measuring the cost of the
+     *  capture tests themselves. */
+    @Benchmark
+    public Board captureScan() {
+        for (Square s : _occupied) {
+            _board.captureUp(s);
+            _board.captureDown(s);
+            _board.captureLeft(s);
+            _board.captureRight(s);
+        }
+        return _board;
+    }
+
+    /** Encode the position as used for repetition detection. */
+    @Benchmark
+    public String encodedBoard() {
+        return _board.encodedBoard();
+    }
+
+    /** Make and undo a move on a board with HISTORY_PLIES of history.
+     *  This is where checkRepeated searches the history. */
+    @Benchmark
+    public void makeMoveUndoWithHistory(Blackhole bh) {
+        if (_longMoves.length == 0) {
+            bh.consume(_longGame.encodedBoard());
+            return;
+        }
+        _longGame.makeMove(nextMove(_longMoves));
+        bh.consume(_longGame.winner());
+        _longGame.undo();
+    }
+
+    /** Return the next of MOVES in rotation. */
+    private Move nextMove(Move[] moves) {
+        _next += 1;
+        if (_next >= moves.length) {
+            _next = 0;
+        }
+        return moves[_next];
+    }
+
+    /** The board being measured. */
+    private Board _board;
+    /** Legal moves on _board. */
+    private Move[] _moves;
+    /** Index of the last move used from a move array. */
+    private int _next;
+    /** Occupied squares of _board. */
+    private Square[] _occupied;
+    /** The capture position and its capturing move. */
+    private Board _capture;
+    /** The capturing move in _capture. */
+    private Move _captureMove;
+    /** _board after HISTORY_PLIES additional plies. */
+    private Board _longGame;
+    /** Legal moves on _longGame. */
+    private Move[] _longMoves;
+}
@@ -0,0 +1,61 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the AI: static evaluation and fixed-depth search on the
+ *  positions in Positions.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    /** Name of the position (from Positions.NAMES) being searched. */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String position;
+
+    /** Search depth in plies. */
+    @Param({ "1", "2", "3" })
+    public int depth;
+
+    /** Set up the board and AI. */
+    @Setup
+    public void setUp() {
+        _board = Positions.get(position);
+        _ai = new AI();
+    }
+
+    /** Statically evaluate the position. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int staticScore() {
+        return _ai.staticScore(_board);
+    }
+
+    /** Search the position to a fixed depth. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Move findMove() {
+        return _ai.findMove(_board, depth);
+    }
+
+    /** The position being searched. */
+    private Board _board;
+    /** The searching player. */
+    private AI _ai;
+}
@@ -1,7 +1,10 @@
 package tablut;
 
-
-import static tablut.Board.SIZE;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static tablut.Piece.*;
 
@@ -25,6 +28,9 @@ class AI extends Player {
      */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /** Search depth used by default. */
+    static final int DEFAULT_DEPTH = 1;
+
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
@@ -33,21 +39,48 @@ class AI extends Player {
         this(null, null);
     }
 
+    /**
+     * A new AI template with no piece or controller that searches DEPTH
+     * plies.
+     */
+    AI(int depth) {
+        this(null, null, depth);
+    }
+
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, DEFAULT_DEPTH);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER that searches
+     * DEPTH plies.
+     */
+    AI(Piece piece, Controller controller, int depth) {
         super(piece, controller);
+        _depth = depth;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI result = new AI(piece, controller, _depth);
+        result._hashSize = _hashSize;
+        result._network = _network;
+        result._params = _params;
+        return result;
+    }
+
+    /** Return a new AI template (with no piece or controller) with the
+     *  same configuration as mine. */
+    AI copy() {
+        return (AI) create(null, null);
     }
 
     @Override
     String myMove() {
-        Move move = findMove();
+        Move move = _controller.runSearch(this::findMove);
         _controller.reportMove(move);
         return move.toString();
     }
@@ -63,21 +96,344 @@ class AI extends Player {
      */
     private Move findMove() {
         Board b = new Board(board());
+        attach(b);
+        _generation = newGeneration();
+        _monitor = _controller.searchMonitor();
+        _rootMoves.clear();
+        _searchStart = System.nanoTime();
+        _lastReport = _searchStart;
+        _monitorNodes = _nodes;
         if (_myPiece == WHITE) {
             findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
         } else {
             findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
         }
+        if (_monitor != null && !_rootMoves.isEmpty()) {
+            report(maxDepth(b));
+        }
+        _monitor = null;
 
         return _lastFoundMove;
     }
 
+    /** Record that the root move MOVE has value SCORE for the side to
+     *  move in a search to DEPTH, and that the best root move so far is
+     *  BEST, reporting the progress of the search to _monitor if
+     *  REPORT_INTERVAL has passed since the last report. */
+    private void noteRootMove(Move move, int score, Move best, int depth) {
+        int k = _rootMoves.size();
+        _rootMoves.add(move);
+        if (k == _rootScores.length) {
+            _rootScores = Arrays.copyOf(_rootScores, 2 * k);
+        }
+        _rootScores[k] = score;
+        _rootBest = best;
+        if (System.nanoTime() - _lastReport >= REPORT_INTERVAL) {
+            report(depth);
+        }
+    }
+
+    /** Send a report on the search to DEPTH in progress to _monitor. */
+    private void report(int depth) {
+        _lastReport = System.nanoTime();
+        _monitor.accept(
+            new SearchProgress(depth, _nodes - _monitorNodes,
+                               (_lastReport - _searchStart) / 1_000_000,
+                               _rootBest, _rootMoves, _rootScores));
+    }
+
+    /** Return the best move found for the side to move on BOARD by a
+     *  search of exactly DEPTH plies, or null if there is none.  BOARD
+     *  is restored before returning. */
+    Move findMove(Board board, int depth) {
+        _lastFoundMove = null;
+        _nodes = 0;
+        _aborted = false;
+        _generation = newGeneration();
+        Accumulator saved = attach(board);
+        try {
+            findMove(board, depth, true, board.turn() == WHITE ? 1 : -1,
+                     -INFTY, INFTY);
+        } finally {
+            board.setAccumulator(saved);
+        }
+        return _lastFoundMove;
+    }
+
+    /** Return the best move found for the side to move on BOARD by
+     *  successively deeper searches within LIMITS, or null if the side to
+     *  move has no move.  A search cut short by LIMITS or by stop() returns
+     *  the move found by the deepest completed search (or, if none was
+     *  completed, some legal move).  BOARD is restored before returning. */
+    Move findMove(Board board, SearchLimits limits) {
+        return findMove(board, limits, null);
+    }
+
+    /** As for findMove(BOARD, LIMITS), but also passes a SearchInfo
+     *  describing each completed iteration to LISTENER, unless it is
+     *  null. */
+    Move findMove(Board board, SearchLimits limits,
+                  Consumer<SearchInfo> listener) {
+        List<SearchInfo> lines = analyze(board, 1, limits, listener);
+        return lines.isEmpty() ? null : lines.get(0).pv().get(0);
+    }
+
+    /** Return reports on the best COUNT moves (or all of them, if there
+     *  are fewer) for the side to move on BOARD, best first, as found by
+     *  successively deeper searches within LIMITS.  Each iteration finds
+     *  the best move, then searches again with that move excluded to
+     *  find the next best, and so on, all sharing the transposition
+     *  table.  The pv() of each report starts with its move, and its
+     *  multiPV() is its rank.  Each report is passed to LISTENER, unless
+     *  it is null, as it is found.  A search cut short by LIMITS or by
+     *  stop() returns the reports of the deepest completed iteration (or,
+     *  if none was completed, a single report of depth 0 on some legal
+     *  move).  Returns an empty list if the side to move has no move.
+     *  BOARD is restored before returning. */
+    List<SearchInfo> analyze(Board board, int count, SearchLimits limits,
+                             Consumer<SearchInfo> listener) {
+        return analyze(board, count, limits, listener, newGeneration());
+    }
+
+    /** As for analyze(BOARD, COUNT, LIMITS, LISTENER), as the search
+     *  numbered GENERATION, which must have been returned by
+     *  newGeneration() and not used for another search. */
+    List<SearchInfo> analyze(Board board, int count, SearchLimits limits,
+                             Consumer<SearchInfo> listener,
+                             long generation) {
+        long start = System.nanoTime();
+        _nodes = 0;
+        _aborted = false;
+        _generation = generation;
+        _nodeLimit = limits.nodes();
+        _deadline = limits.millis() == 0 ? 0
+            : System.nanoTime() + limits.millis() * 1_000_000;
+        Accumulator saved = attach(board);
+        try {
+            ArrayList<SearchInfo> result = new ArrayList<>();
+            if (board.winner() != null) {
+                return result;
+            }
+            List<Move> moves = board.legalMoves(board.turn());
+            if (moves.isEmpty()) {
+                return result;
+            }
+            result.add(new SearchInfo(0, 0, 0, 0, 0, List.of(moves.get(0))));
+            int sense = board.turn() == WHITE ? 1 : -1;
+            for (int depth = 1; depth <= limits.depth(); depth += 1) {
+                ArrayList<SearchInfo> lines = new ArrayList<>();
+                _excluded.clear();
+                while (lines.size() < count) {
+                    _lastFoundMove = null;
+                    int value = findMove(board, depth, true, sense,
+                                         -INFTY, INFTY);
+                    if (_aborted || _lastFoundMove == null) {
+                        break;
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    SearchInfo line =
+                        new SearchInfo(depth, lines.size() + 1,
+                                       sense * value, _nodes, millis,
+                                       table().hashfull(),
+                                       variation(board, _lastFoundMove,
+                                                 depth));
+                    lines.add(line);
+                    _excluded.add(_lastFoundMove);
+                    if (listener != null) {
+                        listener.accept(line);
+                    }
+                }
+                if (_aborted) {
+                    break;
+                }
+                result = lines;
+            }
+            return result;
+        } finally {
+            board.setAccumulator(saved);
+            _excluded.clear();
+            _nodeLimit = 0;
+            _deadline = 0;
+        }
+    }
+
+    /** Return MOVE followed by the principal variation (as recorded in
+     *  the transposition table) from the position it produces on BOARD,
+     *  at most DEPTH moves in all. */
+    private List<Move> variation(Board board, Move move, int depth) {
+        ArrayList<Move> result = new ArrayList<>();
+        result.add(move);
+        board.makeMove(move);
+        result.addAll(principalVariation(board, depth - 1));
+        board.undo();
+        return result;
+    }
+
+    /** Return the sequence of best moves from BOARD recorded in the
+     *  transposition table, up to DEPTH moves long. */
+    List<Move> principalVariation(Board board, int depth) {
+        ArrayList<Move> result = new ArrayList<>();
+        Board b = new Board(board);
+        while (result.size() < depth && b.winner() == null) {
+            int slot = table().probe(b.hash());
+            Move move = slot < 0 ? null : table().move(slot);
+            if (move == null || !b.isLegal(move.from()) || !b.isLegal(move)) {
+                break;
+            }
+            result.add(move);
+            b.makeMove(move);
+        }
+        return result;
+    }
+
+    /** Evaluate positions with NETWORK, or with the built-in evaluation if
+     *  NETWORK is null. */
+    void setNetwork(Network network) {
+        if (network != _network) {
+            _network = network;
+            clearHash();
+        }
+    }
+
+    /** Return the network I evaluate positions with, or null if I use the
+     *  built-in evaluation. */
+    Network network() {
+        return _network;
+    }
+
+    /** Evaluate positions without a network using the weights PARAMS. */
+    void setParams(EvalParams params) {
+        if (params != _params) {
+            _params = params;
+            clearHash();
+        }
+    }
+
+    /** Return the weights of my built-in evaluation. */
+    EvalParams params() {
+        return _params;
+    }
+
+    /** If I use a network, make sure that BOARD keeps an accumulator for
+     *  it up to date during a search.  Returns BOARD's previous
+     *  accumulator, to be restored when the search is done. */
+    private Accumulator attach(Board board) {
+        Accumulator old = board.accumulator();
+        if (_network != null && (old == null || old.network() != _network)) {
+            board.setAccumulator(new Accumulator(_network, board));
+        }
+        return old;
+    }
+
+    /** Use a transposition table of about MEGABYTES megabytes. */
+    void setHashSize(int megabytes) {
+        if (megabytes != _hashSize) {
+            _hashSize = megabytes;
+            _table = null;
+        }
+    }
+
+    /** Empty my transposition table. */
+    void clearHash() {
+        if (_table != null) {
+            _table.clear();
+        }
+    }
+
+    /** Return my transposition table, creating it if necessary. */
+    private TranspositionTable table() {
+        if (_table == null) {
+            _table = new TranspositionTable(_hashSize);
+        }
+        return _table;
+    }
+
+    /** Return a new search number, to be passed to analyze by a search
+     *  that has yet to begin, so that stop(GENERATION) may stop that
+     *  search even before it begins.  Each search takes a new number. */
+    long newGeneration() {
+        return _generations.incrementAndGet();
+    }
+
+    /** Cause any search in progress (in another thread) to stop as soon
+     *  as possible.  Has no effect on searches begun later. */
+    void stop() {
+        stop(_generation);
+    }
+
+    /** Cause the search numbered GENERATION (see newGeneration) to stop
+     *  as soon as possible, whether it is in progress or has yet to
+     *  begin.  Has no effect on other searches. */
+    void stop(long generation) {
+        _stopGeneration = generation;
+    }
+
+    /** Return the number of positions visited by the last call to
+     *  findMove(Board, int). */
+    long nodeCount() {
+        return _nodes;
+    }
+
     /**
      * The move found by the last call to one of the ...FindMove methods
      * below.
      */
     private Move _lastFoundMove;
 
+    /** Moves to be ignored at the root of the current search: those
+     *  already reported by analyze in its current iteration. */
+    private final ArrayList<Move> _excluded = new ArrayList<>();
+
+    /** Receives reports on the progress of my current search as a
+     *  player, or null if none are wanted. */
+    private Consumer<SearchProgress> _monitor;
+
+    /** Minimum time between reports to _monitor, in nanoseconds. */
+    static final long REPORT_INTERVAL = 50_000_000;
+
+    /** The root moves searched so far in the current monitored search,
+     *  the values found for them, and the best of them. */
+    private final ArrayList<Move> _rootMoves = new ArrayList<>();
+    /** See _rootMoves. */
+    private int[] _rootScores = new int[64];
+    /** See _rootMoves. */
+    private Move _rootBest;
+
+    /** Values of System.nanoTime() at the start of the current monitored
+     *  search and at its last report. */
+    private long _searchStart, _lastReport;
+
+    /** Value of _nodes at the start of the current monitored search. */
+    private long _monitorNodes;
+
+    /** Number of positions visited by the current or last search. */
+    private long _nodes;
+
+    /** Maximum number of positions to visit in the current search, or 0 if
+     *  unlimited. */
+    private long _nodeLimit;
+
+    /** Value of System.nanoTime() at which the current search must stop,
+     *  or 0 if unlimited. */
+    private long _deadline;
+
+    /** The last search number returned by newGeneration. */
+    private final AtomicLong _generations = new AtomicLong();
+
+    /** The number of the current (or last) search. */
+    private volatile long _generation;
+
+    /** The number of the search that stop() last asked to stop. */
+    private volatile long _stopGeneration;
+
+    /** True iff the current search was cut short by its limits or by
+     *  stop(). */
+    private boolean _aborted;
+
+    /** The number of positions between checks of the clock, less 1 (a
+     *  power of 2 less 1). */
+    private static final int CLOCK_CHECK_MASK = 1023;
+
     /**
      * Find a move from position BOARD and return its value, recording
      * the move found in _lastFoundMove iff SAVEMOVE. The move
@@ -88,24 +444,61 @@ class AI extends Player {
      */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
+        _nodes += 1;
+        if (outOfBounds()) {
+            _aborted = true;
+            return 0;
+        }
         if (depth == 0 || board.winner() != null) {
             return staticScore(board);
         }
-        int byebye = 0;
-        int value = 2 * (int) Math.pow(board.SIZE, 3);
+        TranspositionTable table = table();
+        long key = board.hash();
+        int slot = table.probe(key);
+        Move hashMove = null;
+        if (slot >= 0) {
+            hashMove = table.move(slot);
+            if (!saveMove && table.depth(slot) >= depth) {
+                int score = table.score(slot);
+                switch (table.bound(slot)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER:
+                    if (score >= beta) {
+                        return score;
+                    }
+                    break;
+                default:
+                    if (score <= alpha) {
+                        return score;
+                    }
+                    break;
+                }
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        Move currentbest = null;
+        int best;
         if (sense == 1) {
-            Move currentbest = null;
-            int best = -INFTY;
-            for (Move i : board.legalMoves(WHITE)) {
-                byebye += 1;
+            best = -INFTY;
+            for (Move i : orderedMoves(board, WHITE, hashMove)) {
+                if (saveMove && _excluded.contains(i)) {
+                    continue;
+                }
                 board.makeMove(i);
                 int eval = findMove(board, depth - 1, false,
                         -1, alpha, beta);
                 board.undo();
+                if (_aborted) {
+                    return 0;
+                }
                 if (eval > best) {
                     currentbest = i;
                     best = eval;
                 }
+                if (saveMove && _monitor != null) {
+                    noteRootMove(i, eval, currentbest, depth);
+                }
                 alpha = Math.max(alpha, best);
                 if (beta <= alpha) {
                     break;
@@ -114,20 +507,26 @@ class AI extends Player {
                     _lastFoundMove = currentbest;
                 }
             }
-            return best;
-        } else if (sense == -1) {
-            Move currentbest = null;
-            int best = INFTY;
-            for (Move i : board.legalMoves(BLACK)) {
-                byebye += 1;
+        } else {
+            best = INFTY;
+            for (Move i : orderedMoves(board, BLACK, hashMove)) {
+                if (saveMove && _excluded.contains(i)) {
+                    continue;
+                }
                 board.makeMove(i);
                 int eval = findMove(board, depth - 1, false,
                         1, alpha, beta);
                 board.undo();
-                if (eval > best) {
+                if (_aborted) {
+                    return 0;
+                }
+                if (eval < best) {
                     currentbest = i;
                     best = eval;
                 }
+                if (saveMove && _monitor != null) {
+                    noteRootMove(i, -eval, currentbest, depth);
+                }
                 beta = Math.min(beta, best);
                 if (beta <= alpha) {
                     break;
@@ -136,44 +535,81 @@ class AI extends Player {
                     _lastFoundMove = currentbest;
                 }
             }
-            return best;
         }
-        return 0;
-
+        if (currentbest != null && (!saveMove || _excluded.isEmpty())) {
+            table.store(key, depth, best,
+                        best <= alpha0 ? TranspositionTable.UPPER
+                        : best >= beta0 ? TranspositionTable.LOWER
+                        : TranspositionTable.EXACT,
+                        currentbest);
+        }
+        return best;
     }
 
+    /** Return the legal moves for SIDE on BOARD, with FIRST (if it is one
+     *  of them) moved to the front. */
+    private List<Move> orderedMoves(Board board, Piece side, Move first) {
+        List<Move> moves = board.legalMoves(side);
+        if (first != null) {
+            int k = moves.indexOf(first);
+            if (k > 0) {
+                moves.set(k, moves.get(0));
+                moves.set(0, first);
+            }
+        }
+        return moves;
+    }
 
-
+    /** Return true iff the current search has exceeded its limits or
+     *  been asked to stop. */
+    private boolean outOfBounds() {
+        return _aborted || _stopGeneration == _generation
+            || (_nodeLimit > 0 && _nodes > _nodeLimit)
+            || (_deadline != 0 && (_nodes & CLOCK_CHECK_MASK) == 0
+                && System.nanoTime() - _deadline > 0);
+    }
 
     /** Return a heuristically determined maximum search depth
      *  based on characteristics of BOARD. */
-    private static int maxDepth(Board board) {
-        return 1;
+    private int maxDepth(Board board) {
+        return _depth;
+    }
+
+    /** Return the depth to which I search. */
+    int depth() {
+        return _depth;
     }
 
+    /** The depth to which I search. */
+    private final int _depth;
+
+    /** Default size of the transposition table in megabytes. */
+    static final int DEFAULT_HASH_SIZE = 1;
+
+    /** Size of my transposition table in megabytes. */
+    private int _hashSize = DEFAULT_HASH_SIZE;
+
+    /** My transposition table, or null if not yet created. */
+    private TranspositionTable _table;
+
+    /** The network I evaluate positions with, or null. */
+    private Network _network;
+
+    /** The weights of my built-in evaluation. */
+    private EvalParams _params = EvalParams.DEFAULT;
+
+    /** Features of the position being evaluated (see EvalParams). */
+    private final int[] _features = new int[EvalParams.COUNT];
+
     /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Piece[][] brd = board.returnBoard();
-        int numWhite = 0;
-        int numBlack = 0;
-        boolean king = false;
-
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                if (brd[i][j] == KING) {
-                    king = true;
-                }
-                if (brd[i][j] == WHITE) {
-                    numWhite++;
-                } else if (brd[i][j] == BLACK) {
-                    numBlack--;
-                }
-                if (king) {
-                    return (numWhite + 7) - numBlack;
-                }
-            }
+    int staticScore(Board board) {
+        if (_network != null) {
+            Accumulator accumulator = board.accumulator();
+            return accumulator != null && accumulator.network() == _network
+                ? accumulator.evaluate() : _network.evaluate(board);
         }
-        return numWhite - numBlack;
+        EvalParams.features(board, _features);
+        return _params.evaluate(_features);
     }
 
 
@@ -0,0 +1,50 @@
+package tablut;
+
+/** The hidden-unit inputs of a Network for the position on a Board,
+ *  kept up to date as the board changes.  An Accumulator attached to a
+ *  board (see Board.setAccumulator) is told of every change to the
+ *  contents of a square, and so costs time proportional to the number of
+ *  squares a move, its captures, or its undoing change, rather than to
+ *  the number of pieces.
+ *  @author Osvaldo Valadez
+ */
+final class Accumulator {
+
+    /** An accumulator for NETWORK, set for the position on BOARD. */
+    Accumulator(Network network, Board board) {
+        _network = network;
+        _values = new int[network.hidden()];
+        refresh(board);
+    }
+
+    /** Return my network. */
+    Network network() {
+        return _network;
+    }
+
+    /** Recompute my values from scratch for the position on BOARD. */
+    void refresh(Board board) {
+        _network.refresh(_values, board);
+    }
+
+    /** Record that the contents of the square with index INDEX have
+     *  changed from OLD to NOW. */
+    void change(int index, Piece old, Piece now) {
+        if (old != Piece.EMPTY) {
+            _network.add(_values, Network.feature(old, index), -1);
+        }
+        if (now != Piece.EMPTY) {
+            _network.add(_values, Network.feature(now, index), 1);
+        }
+    }
+
+    /** Return the network's value of the current position. */
+    int evaluate() {
+        return _network.evaluate(_values);
+    }
+
+    /** My network. */
+    private final Network _network;
+    /** Current inputs of the hidden units. */
+    private final int[] _values;
+}
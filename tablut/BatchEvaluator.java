@@ -0,0 +1,163 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+
+/** Evaluates batches of positions, as AI.staticScore does one at a time
+ *  (with the built-in evaluation, using given EvalParams, or with a
+ *  Network).  Positions are
+ *  packed one byte per square (the ordinal of its Piece), in square-index
+ *  order, NUM_SQUARES bytes to a position, into one array (see pack).
+ *  <p>
+ *  The evaluation here is scalar.  When the program is run with the
+ *  incubating Vector API enabled (--add-modules jdk.incubator.vector) and
+ *  the classes made by "make vector" are on the class path, create
+ *  returns a VectorBatchEvaluator instead, which does the same work with
+ *  SIMD operations and gives the same results.
+ *  @author Osvaldo Valadez
+ */
+class BatchEvaluator {
+
+    /** Name of the class of the vectorized evaluator. */
+    static final String VECTOR_CLASS = "tablut.VectorBatchEvaluator";
+
+    /** Number of positions in the batches evaluated by main. */
+    static final int MAIN_BATCH = 1 << 16;
+
+    /** Number of batches evaluated by main. */
+    static final int MAIN_ROUNDS = 10;
+
+    /** SCAN_ORDER[i] is the position of the square with index i in the
+     *  order in which the built-in evaluation visits squares (by column,
+     *  then by row). */
+    static final byte[] SCAN_ORDER = new byte[NUM_SQUARES];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            SCAN_ORDER[i] = (byte) (i % Board.SIZE * Board.SIZE
+                                    + i / Board.SIZE);
+        }
+    }
+
+    /** Return an evaluator using NETWORK (or, if it is null, the built-in
+     *  evaluation with weights PARAMS): a VectorBatchEvaluator if the
+     *  Vector API and that class are available, and otherwise a scalar
+     *  one. */
+    static BatchEvaluator create(Network network, EvalParams params) {
+        try {
+            return (BatchEvaluator) Class.forName(VECTOR_CLASS)
+                .getDeclaredConstructor(Network.class, EvalParams.class)
+                .newInstance(network, params);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new BatchEvaluator(network, params);
+        }
+    }
+
+    /** A scalar evaluator using NETWORK, or the built-in evaluation with
+     *  weights PARAMS if NETWORK is null. */
+    BatchEvaluator(Network network, EvalParams params) {
+        _network = network;
+        _params = params;
+    }
+
+    /** Return my network, or null for the built-in evaluation. */
+    Network network() {
+        return _network;
+    }
+
+    /** Return the weights of my built-in evaluation. */
+    EvalParams params() {
+        return _params;
+    }
+
+    /** Return true iff I use SIMD operations. */
+    boolean vectorized() {
+        return false;
+    }
+
+    /** Store the position on BOARD as the Kth position of POSITIONS. */
+    static void pack(Board board, byte[] positions, int k) {
+        int base = k * NUM_SQUARES;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            positions[base + i] =
+                (byte) board.get(i % Board.SIZE, i / Board.SIZE).ordinal();
+        }
+    }
+
+    /** Set SCORES[k] to the value of the Kth position of POSITIONS, for
+     *  0 <= k < COUNT. */
+    void evaluate(byte[] positions, int count, int[] scores) {
+        if (_network == null) {
+            int[] features = new int[EvalParams.COUNT];
+            for (int k = 0; k < count; k += 1) {
+                EvalParams.features(positions, k * NUM_SQUARES, features);
+                scores[k] = _params.evaluate(features);
+            }
+        } else {
+            int[] accumulator = new int[_network.hidden()];
+            for (int k = 0; k < count; k += 1) {
+                scores[k] = networkScore(positions, k * NUM_SQUARES,
+                                         accumulator);
+            }
+        }
+    }
+
+    /** Return the value given by my network to the position at BASE in
+     *  POSITIONS, using ACCUMULATOR for the hidden-unit inputs. */
+    private int networkScore(byte[] positions, int base, int[] accumulator) {
+        Network network = _network;
+        network.clear(accumulator);
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int piece = positions[base + i];
+            if (piece != EMPTY.ordinal()) {
+                network.add(accumulator,
+                            (piece - WHITE.ordinal()) * NUM_SQUARES + i, 1);
+            }
+        }
+        return network.evaluate(accumulator);
+    }
+
+    /** Evaluate MAIN_ROUNDS batches of MAIN_BATCH positions taken from
+     *  Positions, using the network in the file ARGS[0] if present (and
+     *  otherwise the default built-in evaluation), and report the rate of
+     *  each. */
+    public static void main(String... args) {
+        Network network = null;
+        if (args.length > 0) {
+            try {
+                network = Network.load(Paths.get(args[0]));
+            } catch (IOException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+        String[] names = Positions.NAMES;
+        byte[] positions = new byte[MAIN_BATCH * NUM_SQUARES];
+        for (int k = 0; k < names.length; k += 1) {
+            pack(Positions.get(names[k]), positions, k);
+        }
+        for (int k = names.length; k < MAIN_BATCH; k += 1) {
+            System.arraycopy(positions, k % names.length * NUM_SQUARES,
+                             positions, k * NUM_SQUARES, NUM_SQUARES);
+        }
+        int[] scores = new int[MAIN_BATCH];
+        BatchEvaluator evaluator = create(network, EvalParams.DEFAULT);
+        for (int round = 0; round < MAIN_ROUNDS; round += 1) {
+            long start = System.nanoTime();
+            evaluator.evaluate(positions, MAIN_BATCH, scores);
+            long micros = Math.max(1, (System.nanoTime() - start) / 1000);
+            System.out.printf("%s: %d positions in %d us (%d/s)%n",
+                              evaluator.vectorized() ? "vector" : "scalar",
+                              MAIN_BATCH, micros,
+                              MAIN_BATCH * 1_000_000L / micros);
+        }
+    }
+
+    /** My network, or null. */
+    private final Network _network;
+    /** Weights of my built-in evaluation. */
+    private final EvalParams _params;
+}
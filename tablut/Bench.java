@@ -0,0 +1,46 @@
+package tablut;
+
+import java.io.PrintStream;
+
+/** A fixed search benchmark.  Searches each of a fixed list of positions
+ *  to a fixed depth and reports the total number of nodes visited, the
+ *  elapsed time, and the search speed.  Since the search is deterministic,
+ *  the node count also serves as a signature of the search: any change to
+ *  move generation, evaluation, or pruning will (almost always) change it.
+ *  @author Osvaldo Valadez
+ */
+class Bench {
+
+    /** Default search depth. */
+    static final int DEFAULT_DEPTH = 3;
+
+    /** Names of the positions searched, all from Positions. */
+    static final String[] POSITIONS = {
+        "opening", "middlegame", "endgame", "capture"
+    };
+
+    /** Search each of POSITIONS to depth DEPTH, printing a line for each
+     *  followed by the totals on OUT.  Returns the total number of nodes
+     *  searched. */
+    static long run(PrintStream out, int depth) {
+        AI ai = new AI();
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (String name : POSITIONS) {
+            Board board = Positions.get(name);
+            ai.clearHash();
+            Move move = ai.findMove(board, depth);
+            out.printf("%-12s %-6s %12d%n", name, move, ai.nodeCount());
+            nodes += ai.nodeCount();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        out.printf("===%n");
+        out.printf("Depth: %d%n", depth);
+        out.printf("Nodes searched: %d%n", nodes);
+        out.printf("Time (ms): %d%n", millis);
+        out.printf("Nodes/second: %d%n", nodes * 1000 / millis);
+        out.flush();
+        return nodes;
+    }
+
+}
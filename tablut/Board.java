@@ -5,9 +5,11 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.HashSet;
+import java.util.Random;
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
+import static tablut.Utils.error;
 
 
 /**
@@ -117,9 +119,18 @@ class Board {
             return;
         }
         init();
-        this._board = model._board;
-        this.history = model.history;
+        for (int x = 0; x < SIZE; x++) {
+            System.arraycopy(model._board[x], 0, _board[x], 0, SIZE);
+        }
+        if (_accumulator != null) {
+            _accumulator.refresh(this);
+        }
+        this.history = new Stack<>();
+        this.history.addAll(model.history);
         this._turn = model._turn;
+        this._hash = model._hash;
+        this._winner = model._winner;
+        this._repeated = model._repeated;
         this._moveCount = model._moveCount;
         this.moveLimit = model.moveLimit;
     }
@@ -133,7 +144,6 @@ class Board {
         _winner = null;
         _moveCount = 0;
         Piece king = KING;
-        _board[4][4] = king;
         for (int x = 0; x < SIZE; x++) {
             for (int y = 0; y < SIZE; y++) {
                 Piece empty = EMPTY;
@@ -141,19 +151,23 @@ class Board {
 
             }
         }
-        _board[4][4] = king;
+        _hash = 0;
+        if (_accumulator != null) {
+            _accumulator.refresh(this);
+        }
+        set(4, 4, king);
         for (Square i : INITIAL_ATTACKERS) {
             int xCoord = i.col();
             int yCoord = i.row();
             Piece black = BLACK;
-            _board[xCoord][yCoord] = black;
+            set(xCoord, yCoord, black);
 
         }
         for (Square i : INITIAL_DEFENDERS) {
             int xCoord = i.col();
             int yCoord = i.row();
             Piece white = WHITE;
-            _board[xCoord][yCoord] = white;
+            set(xCoord, yCoord, white);
         }
         clearUndo();
     }
@@ -198,14 +212,11 @@ class Board {
      */
     private void checkRepeated() {
         String current = encodedBoard();
-        if (history.empty()) {
-            history.push(current);
-        } else if (history.contains(current)) {
+        if (history.contains(current)) {
             _winner = _turn;
-        } else {
-            history.push(encodedBoard());
+            _repeated = true;
         }
-
+        history.push(current);
     }
 
     /**
@@ -257,7 +268,61 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        _board[s.col()][s.row()] = p;
+        set(s.col(), s.row(), p);
+    }
+
+    /**
+     * Set the square at COL ROW to P, keeping hash() and any accumulator
+     * up to date.  All changes to the contents of squares go through here.
+     */
+    private void set(int col, int row, Piece p) {
+        Piece old = _board[col][row];
+        if (old != p) {
+            int index = row * SIZE + col;
+            _hash ^= ZOBRIST[old.ordinal()][index]
+                ^ ZOBRIST[p.ordinal()][index];
+            _board[col][row] = p;
+            if (_accumulator != null) {
+                _accumulator.change(index, old, p);
+            }
+        }
+    }
+
+    /**
+     * Keep ACCUMULATOR (which must be set for the current position, or be
+     * null) up to date as the board changes from now on, in place of any
+     * previous accumulator.  Copies of this board do not share it.
+     */
+    void setAccumulator(Accumulator accumulator) {
+        _accumulator = accumulator;
+    }
+
+    /**
+     * Return the accumulator kept up to date by this board, or null.
+     */
+    Accumulator accumulator() {
+        return _accumulator;
+    }
+
+    /**
+     * Set the side to move to TURN, keeping hash() up to date.
+     */
+    private void setTurn(Piece turn) {
+        if (turn != _turn) {
+            _hash ^= WHITE_TO_MOVE;
+            _turn = turn;
+        }
+    }
+
+    /**
+     * Return a 64-bit hash of the current position: the contents of all
+     * squares and the side to move.  Equal positions have equal hashes,
+     * and unequal positions almost never do.  The hash is a Zobrist hash,
+     * maintained incrementally as the board changes, and does not depend
+     * on the run of the program.
+     */
+    long hash() {
+        return _hash;
     }
 
     /**
@@ -370,8 +435,8 @@ class Board {
                 || _turn == _board[from.col()][from.row()].ally()) {
             if (_winner == null) {
                 put(_board[from.col()][from.row()], to);
-                _board[from.col()][from.row()] = EMPTY;
-                _turn = _board[to.col()][to.row()].opponent();
+                set(from.col(), from.row(), EMPTY);
+                setTurn(_board[to.col()][to.row()].opponent());
                 captureUp(to);
                 captureDown(to);
                 captureLeft(to);
@@ -568,7 +633,7 @@ class Board {
                 || (kingSquare.col() + 1 == 4 && kingSquare.row() == 4))
                 && ((_board[kingSquare.col() - 1][kingSquare.row()] == BLACK)
                 || (kingSquare.col() - 1 == 4 && kingSquare.row() == 4))) {
-            _board[kingSquare.col()][kingSquare.row()] = EMPTY;
+            set(kingSquare.col(), kingSquare.row(), EMPTY);
             _winner = BLACK;
         }
     }
@@ -586,17 +651,18 @@ class Board {
      */
     private void capture(Square sq0, Square sq2) {
         Square middle = sq0.between(sq2);
-        _board[middle.col()][middle.row()] = EMPTY;
+        set(middle.col(), middle.row(), EMPTY);
     }
 
     /**
      * Undo one move.  Has no effect on the initial board.
      */
     void undo() {
-        if (_moveCount > 0) {
+        if (_moveCount > 0 && history.size() > 1) {
             undoPosition();
-            String code = history.pop();
-            uncodeBoard(code);
+            history.pop();
+            uncodeBoard(history.peek());
+            _winner = null;
             _moveCount--;
         }
     }
@@ -611,10 +677,12 @@ class Board {
 
     /**
      * Clear the undo stack and board-position counts. Does not modify the
-     * current position or win status.
+     * current position or win status.  The current position remains as the
+     * bottom of the stack, so that undo() can always return to it.
      */
     void clearUndo() {
         history.clear();
+        history.push(encodedBoard());
     }
 
     /**
@@ -628,26 +696,34 @@ class Board {
                 if (get(i, j) == side || get(i, j) == side.ally()) {
                     int index = 1;
                     while ((j + index < SIZE) && get(i, j + index) == EMPTY) {
-                        Move up = new Move(sq(i, j), sq(i, j + index));
-                        moves.add(up);
+                        Move up = Move.mv(sq(i, j), sq(i, j + index));
+                        if (get(i, j) == KING || up.to() != THRONE) {
+                            moves.add(up);
+                        }
                         index++;
                     }
                     index = 1;
                     while ((j - index >= 0) && get(i, j - index) == EMPTY) {
-                        Move down = new Move(sq(i, j), sq(i, j - index));
-                        moves.add(down);
+                        Move down = Move.mv(sq(i, j), sq(i, j - index));
+                        if (get(i, j) == KING || down.to() != THRONE) {
+                            moves.add(down);
+                        }
                         index++;
                     }
                     index = 1;
                     while ((i + index < SIZE) && get(i + index, j) == EMPTY) {
-                        Move right = new Move(sq(i, j), sq(i + index, j));
-                        moves.add(right);
+                        Move right = Move.mv(sq(i, j), sq(i + index, j));
+                        if (get(i, j) == KING || right.to() != THRONE) {
+                            moves.add(right);
+                        }
                         index++;
                     }
                     index = 1;
                     while ((i - index >= 0) && get(i - index, j) == EMPTY) {
-                        Move left = new Move(sq(i, j), sq(i - index, j));
-                        moves.add(left);
+                        Move left = Move.mv(sq(i, j), sq(i - index, j));
+                        if (get(i, j) == KING || left.to() != THRONE) {
+                            moves.add(left);
+                        }
                         index++;
                     }
                 }
@@ -729,29 +805,133 @@ class Board {
         return new String(result);
     }
 
+    /** The standard initial position in the notation of setFen. */
+    static final String INITIAL_FEN =
+        "3BBB3/4B4/4W4/B3W3B/BBWWKWWBB/B3W3B/4W4/4B4/3BBB3 b";
+
+    /** Set me to the position described by FEN, starting a new game from
+     *  it (with no moves to undo).  The game has no winner yet unless
+     *  there is no king, in which case Black has won, or the side to move
+     *  has no legal move, in which case its opponent has won (as in
+     *  Match.play).  FEN gives the rows
+     *  from top (row 9) to bottom, separated by '/', each as its squares
+     *  from left to right: W for a white piece, B for a black piece, K for
+     *  the king, or a digit for that many empty squares.  It ends with a
+     *  space and the side to move, w or b.  Letters may be of either case.
+     *  There may be at most one king.  Throws IllegalArgumentException
+     *  (leaving me unchanged) if FEN is malformed. */
+    void setFen(String fen) {
+        Piece[] contents = new Piece[NUM_SQUARES];
+        int row = SIZE - 1, col = 0, kings = 0, i;
+        for (i = 0; i < fen.length() && fen.charAt(i) != ' '; i += 1) {
+            char c = fen.charAt(i);
+            Piece piece;
+            switch (c) {
+            case '/':
+                if (col != SIZE || row == 0) {
+                    throw error("bad position: %s", fen);
+                }
+                row -= 1;
+                col = 0;
+                continue;
+            case 'w': case 'W':
+                piece = WHITE;
+                break;
+            case 'b': case 'B':
+                piece = BLACK;
+                break;
+            case 'k': case 'K':
+                piece = KING;
+                kings += 1;
+                break;
+            default:
+                if (c < '1' || c > '9' || col + c - '0' > SIZE) {
+                    throw error("bad position: %s", fen);
+                }
+                for (int k = c - '0'; k > 0; k -= 1, col += 1) {
+                    contents[row * SIZE + col] = EMPTY;
+                }
+                continue;
+            }
+            if (col == SIZE) {
+                throw error("bad position: %s", fen);
+            }
+            contents[row * SIZE + col] = piece;
+            col += 1;
+        }
+        if (row != 0 || col != SIZE || kings > 1 || i + 2 != fen.length()) {
+            throw error("bad position: %s", fen);
+        }
+        Piece turn;
+        switch (fen.charAt(i + 1)) {
+        case 'w': case 'W':
+            turn = WHITE;
+            break;
+        case 'b': case 'B':
+            turn = BLACK;
+            break;
+        default:
+            throw error("bad position: %s", fen);
+        }
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            set(k % SIZE, k / SIZE, contents[k]);
+        }
+        setTurn(turn);
+        _winner = kings == 0 ? BLACK : hasMove(turn) ? null : turn.opponent();
+        _repeated = false;
+        _moveCount = 0;
+        clearUndo();
+    }
+
+    /** Return the current position in the notation of setFen. */
+    String fen() {
+        StringBuilder result = new StringBuilder(2 * NUM_SQUARES);
+        for (int row = SIZE - 1; row >= 0; row -= 1) {
+            int empty = 0;
+            for (int col = 0; col < SIZE; col += 1) {
+                Piece piece = _board[col][row];
+                if (piece == EMPTY) {
+                    empty += 1;
+                    continue;
+                }
+                if (empty > 0) {
+                    result.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                result.append(piece.toString());
+            }
+            if (empty > 0) {
+                result.append((char) ('0' + empty));
+            }
+            result.append(row == 0 ? ' ' : '/');
+        }
+        result.append(_turn == WHITE ? 'w' : 'b');
+        return result.toString();
+    }
+
     /** Given @param code uncode the board. */
     void uncodeBoard(String code) {
         int index = 1;
         char please = code.charAt(0);
         if (please == 'W') {
-            _turn = WHITE;
+            setTurn(WHITE);
         }
         if (please == 'B') {
-            _turn = BLACK;
+            setTurn(BLACK);
         }
         for (Square sq : SQUARE_LIST) {
             char bye = code.charAt(index);
             if (bye == 'W') {
-                _board[sq.col()][sq.row()] = WHITE;
+                set(sq.col(), sq.row(), WHITE);
                 index += 1;
             } else if (bye == 'B') {
-                _board[sq.col()][sq.row()] = BLACK;
+                set(sq.col(), sq.row(), BLACK);
                 index += 1;
             } else if (bye == 'K') {
-                _board[sq.col()][sq.row()] = KING;
+                set(sq.col(), sq.row(), KING);
                 index += 1;
             } else {
-                _board[sq.col()][sq.row()] = EMPTY;
+                set(sq.col(), sq.row(), EMPTY);
                 index += 1;
             }
         }
@@ -762,6 +942,38 @@ class Board {
      * Piece whose turn it is (WHITE or BLACK).
      */
     private Piece _turn;
+    /**
+     * Zobrist hash of the current position.
+     */
+    private long _hash;
+    /**
+     * Network accumulator kept up to date with the position, or null.
+     */
+    private Accumulator _accumulator;
+
+    /**
+     * ZOBRIST[p.ordinal()][i] is the random hash component for piece p on
+     * the square with index i.  The components for EMPTY are 0.  Generated
+     * from a fixed seed so that hashes may be stored in files.
+     */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][SIZE * SIZE];
+    /**
+     * Hash component for White to move.
+     */
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(0x7ab1a7L);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < SIZE * SIZE; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = random.nextLong();
+                }
+            }
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
     /**
      * Cached value of winner on this board, or EMPTY if it has not been
      * computed.
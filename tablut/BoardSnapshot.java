@@ -0,0 +1,81 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
+
+/** An immutable copy of the state of a Board that is of interest to
+ *  Views: the contents of the squares, the side to move, the winner, and
+ *  the number of moves made.  Since snapshots never change once made,
+ *  they may be handed to other threads (such as a GUI's event thread)
+ *  without locking.
+ *  @author Osvaldo Valadez
+ */
+final class BoardSnapshot {
+
+    /** A snapshot of the current state of BOARD. */
+    BoardSnapshot(Board board) {
+        _contents = new Piece[NUM_SQUARES];
+        for (Square s : SQUARE_LIST) {
+            _contents[s.index()] = board.get(s);
+        }
+        _turn = board.turn();
+        _winner = board.winner();
+        _repeated = board.repeatedPosition();
+        _moveCount = board.moveCount();
+    }
+
+    /** Return the contents of square S. */
+    Piece get(Square s) {
+        return _contents[s.index()];
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return the winner, or null if the game is not over. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return true iff the game ended by repeating a position. */
+    boolean repeatedPosition() {
+        return _repeated;
+    }
+
+    /** Return the number of moves made (as for Board.moveCount). */
+    int moveCount() {
+        return _moveCount;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof BoardSnapshot)) {
+            return false;
+        }
+        BoardSnapshot other = (BoardSnapshot) obj;
+        return _turn == other._turn && _winner == other._winner
+            && _repeated == other._repeated
+            && _moveCount == other._moveCount
+            && Arrays.equals(_contents, other._contents);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_contents) * 31 + _moveCount;
+    }
+
+    /** Contents of the squares, by index. */
+    private final Piece[] _contents;
+    /** Side to move. */
+    private final Piece _turn;
+    /** Winner, or null. */
+    private final Piece _winner;
+    /** True iff the game ended with a repeated position. */
+    private final boolean _repeated;
+    /** Number of moves made. */
+    private final int _moveCount;
+}
@@ -2,18 +2,41 @@ package tablut;
 
 import ucb.gui2.Pad;
 
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import javax.swing.Timer;
 
 
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
 import static tablut.Square.sq;
 
 
-/** A widget that displays a Tablut game.
+/** A widget that displays a Tablut game.  To keep repainting cheap, the
+ *  bare board is rendered once into an offscreen image and each kind of
+ *  piece into a sprite, and an update repaints only the squares whose
+ *  contents changed.
+ *  <p>
+ *  Optionally, the widget also shows the progress of an AI's search as an
+ *  overlay: the best move so far, a heat map of the values of the root
+ *  moves by destination square, and statistics.  Searching threads only
+ *  post their latest report (see showSearch), and a Swing timer on the
+ *  event dispatch thread picks up the most recent one at most every
+ *  OVERLAY_INTERVAL milliseconds, so that neither side ever waits for the
+ *  other and repaints are capped however often reports arrive.
  *  @author Osvaldo Valadez
  */
 class BoardWidget extends Pad {
@@ -48,6 +71,21 @@ class BoardWidget extends Pad {
     /** The font for labeling rows and columns. */
     static final Font ROW_COL_FONT = new Font("SanSerif", Font.PLAIN, 10);
 
+    /** Colors of the search overlay: the heat map for the best and worst
+     *  moves, the best move, and statistics. */
+    static final Color
+        HOT_COLOR = new Color(0, 200, 0, 110),
+        COLD_COLOR = new Color(220, 0, 0, 110),
+        BEST_MOVE_COLOR = new Color(30, 60, 255, 200),
+        STATS_COLOR = Color.black;
+
+    /** Minimum time between repaints of the search overlay, in
+     *  milliseconds. */
+    static final int OVERLAY_INTERVAL = 100;
+
+    /** Diameter of a piece (in pixels). */
+    static final int PIECE_SIDE = SQUARE_SIDE - 6;
+
     /** Squares adjacent to the throne. */
     static final Square[] ADJACENT_THRONE = {
         Board.NTHRONE, Board.ETHRONE, Board.STHRONE, Board.WTHRONE
@@ -60,6 +98,48 @@ class BoardWidget extends Pad {
         setMouseHandler("click", this::mouseClicked);
         setPreferredSize(BOARD_SIDE, BOARD_SIDE);
         _acceptingMoves = false;
+        Arrays.fill(_shown, EMPTY);
+        _overlayTimer = new Timer(OVERLAY_INTERVAL, e -> pollSearch());
+    }
+
+    /** Return the image of the bare board, rendering it on first use. */
+    private BufferedImage background() {
+        if (_background == null) {
+            _background = new BufferedImage(BOARD_SIDE, BOARD_SIDE,
+                                            BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = _background.createGraphics();
+            drawGrid(g);
+            g.dispose();
+        }
+        return _background;
+    }
+
+    /** Return the image of PIECE (not EMPTY), rendering it on first use.
+     *  Its background is transparent. */
+    private BufferedImage sprite(Piece piece) {
+        BufferedImage result = _sprites.get(piece);
+        if (result == null) {
+            result = new BufferedImage(PIECE_SIDE + 1, PIECE_SIDE + 1,
+                                       BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = result.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                               RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(piece == BLACK ? BLACK_COLOR : WHITE_COLOR);
+            g.fillOval(0, 0, PIECE_SIDE, PIECE_SIDE);
+            g.setColor(GRID_LINE_COLOR);
+            g.drawOval(0, 0, PIECE_SIDE, PIECE_SIDE);
+            if (piece == KING) {
+                g.setFont(KING_FONT);
+                FontMetrics metrics = g.getFontMetrics();
+                g.drawString("K",
+                             (PIECE_SIDE - metrics.stringWidth("K")) / 2,
+                             (PIECE_SIDE + metrics.getAscent()
+                              - metrics.getDescent()) / 2);
+            }
+            g.dispose();
+            _sprites.put(piece, result);
+        }
+        return result;
     }
 
     /** Draw the bare board G.  */
@@ -78,12 +158,124 @@ class BoardWidget extends Pad {
 
     @Override
     public synchronized void paintComponent(Graphics2D g) {
-        drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, BOARD_SIDE, BOARD_SIDE);
+        }
+        g.drawImage(background(), clip.x, clip.y,
+                    clip.x + clip.width, clip.y + clip.height,
+                    clip.x, clip.y, clip.x + clip.width,
+                    clip.y + clip.height, null);
+        for (Square s : SQUARE_LIST) {
+            if (clip.intersects(cx(s), cy(s), SQUARE_SIDE, SQUARE_SIDE)) {
+                drawPiece(g, s);
+            }
+        }
+        if (_overlay != null) {
+            drawOverlay(g, _overlay);
+        }
+    }
+
+    /** Draw the search overlay for PROGRESS on G. */
+    private void drawOverlay(Graphics2D g, SearchProgress progress) {
+        Integer[] values = new Integer[NUM_SQUARES];
+        for (int k = 0; k < progress.moves().size(); k += 1) {
+            int i = progress.moves().get(k).to().index();
+            if (values[i] == null || values[i] < progress.score(k)) {
+                values[i] = progress.score(k);
+            }
+        }
+        int[] sorted = Arrays.stream(values).filter(v -> v != null)
+            .mapToInt(v -> v).sorted().distinct().toArray();
+        for (Square s : SQUARE_LIST) {
+            Integer value = values[s.index()];
+            if (value != null) {
+                float heat = sorted.length == 1 ? 1.0f
+                    : (float) Arrays.binarySearch(sorted, value)
+                      / (sorted.length - 1);
+                g.setColor(blend(COLD_COLOR, HOT_COLOR, heat));
+                g.fillRect(cx(s) + 1, cy(s) + 1,
+                           SQUARE_SIDE - 1, SQUARE_SIDE - 1);
+            }
+        }
+        Move best = progress.best();
+        int half = SQUARE_SIDE / 2;
+        g.setColor(BEST_MOVE_COLOR);
+        g.setStroke(new BasicStroke(3));
+        g.drawLine(cx(best.from()) + half, cy(best.from()) + half,
+                   cx(best.to()) + half, cy(best.to()) + half);
+        g.fillOval(cx(best.to()) + half - 4, cy(best.to()) + half - 4, 8, 8);
+        g.setColor(STATS_COLOR);
+        g.setFont(ROW_COL_FONT);
+        g.drawString(String.format("depth %d  %d nodes  %d ms  %s (%d)",
+                                   progress.depth(), progress.nodes(),
+                                   progress.millis(), best,
+                                   progress.bestScore()),
+                     cx(0), BOARD_SIDE - 3);
+    }
+
+    /** Return the color a fraction T of the way from C0 to C1. */
+    private static Color blend(Color c0, Color c1, float t) {
+        return new Color(Math.round(c0.getRed()
+                                    + t * (c1.getRed() - c0.getRed())),
+                         Math.round(c0.getGreen()
+                                    + t * (c1.getGreen() - c0.getGreen())),
+                         Math.round(c0.getBlue()
+                                    + t * (c1.getBlue() - c0.getBlue())),
+                         Math.round(c0.getAlpha()
+                                    + t * (c1.getAlpha() - c0.getAlpha())));
+    }
+
+    /** Turn the search overlay on iff ON.  Called on the event dispatch
+     *  thread. */
+    void setSearchOverlay(boolean on) {
+        if (on) {
+            _overlayTimer.start();
+        } else {
+            _overlayTimer.stop();
+            _pendingSearch.set(null);
+            _overlay = null;
+            repaint();
+        }
+    }
+
+    /** Post PROGRESS, the latest report on a search, for display on the
+     *  overlay.  May be called from any thread; never blocks. */
+    void showSearch(SearchProgress progress) {
+        _pendingSearch.set(progress);
+    }
+
+    /** Remove any search shown on the overlay (e.g., because its position
+     *  is gone).  May be called from any thread; never blocks. */
+    void clearSearch() {
+        _pendingSearch.set(null);
+        _clearSearch = true;
+    }
+
+    /** Pick up the latest search report, if any, and repaint the overlay
+     *  with it.  Called by _overlayTimer on the event dispatch thread. */
+    private void pollSearch() {
+        if (_clearSearch) {
+            _clearSearch = false;
+            if (_overlay != null) {
+                _overlay = null;
+                repaint();
+            }
+        }
+        SearchProgress progress = _pendingSearch.getAndSet(null);
+        if (progress != null) {
+            _overlay = progress;
+            repaint();
+        }
     }
 
     /** Draw the contents of S on G. */
     private void drawPiece(Graphics2D g, Square s) {
+        Piece piece = _shown[s.index()];
+        if (piece != EMPTY) {
+            int inset = (SQUARE_SIDE - PIECE_SIDE) / 2;
+            g.drawImage(sprite(piece), cx(s) + inset, cy(s) + inset, null);
+        }
     }
 
     /** Handle a click on S. */
@@ -102,10 +294,17 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Revise the displayed board according to BOARD. */
-    synchronized void update(Board board) {
-        _board.copy(board);
-        repaint();
+    /** Revise the displayed board according to BOARD, repainting only
+     *  the squares whose contents have changed. */
+    synchronized void update(BoardSnapshot board) {
+        clearSearch();
+        for (Square s : SQUARE_LIST) {
+            int k = s.index();
+            if (board.get(s) != _shown[k]) {
+                _shown[k] = board.get(s);
+                repaint(cx(s), cy(s), SQUARE_SIDE, SQUARE_SIDE);
+            }
+        }
     }
 
     /** Turn on move collection iff COLLECTING, and clear any current
@@ -142,8 +341,24 @@ class BoardWidget extends Pad {
 
     /** Queue on which to post move commands (from mouse clicks). */
     private ArrayBlockingQueue<String> _commands;
-    /** Board being displayed. */
-    private final Board _board = new Board();
+    /** Contents of the squares displayed, by square index. */
+    private final Piece[] _shown = new Piece[NUM_SQUARES];
+    /** The rendered bare board, or null if not yet rendered. */
+    private BufferedImage _background;
+    /** Rendered pieces. */
+    private final EnumMap<Piece, BufferedImage> _sprites =
+        new EnumMap<>(Piece.class);
+
+    /** The latest search report not yet displayed, or null. */
+    private final AtomicReference<SearchProgress> _pendingSearch =
+        new AtomicReference<>();
+    /** True iff the overlay is to be cleared. */
+    private volatile boolean _clearSearch;
+    /** The search report displayed on the overlay (null if none).  Used
+     *  only on the event dispatch thread. */
+    private SearchProgress _overlay;
+    /** Timer that repaints the overlay. */
+    private final Timer _overlayTimer;
 
     /** True iff accepting moves from user. */
     private boolean _acceptingMoves;
@@ -0,0 +1,87 @@
+package tablut;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/** A minimal client for a Tablut daemon (see Main's --daemon option).  It
+ *  sends its input to the daemon as the commands of a new session and
+ *  copies the daemon's responses to its output, so that
+ *  <pre>
+ *    java tablut.Client SOCKET [INPUT [OUTPUT]]
+ *  </pre>
+ *  behaves like java tablut.Main [INPUT [OUTPUT]], but without the cost
+ *  of starting and warming up the program.  It deliberately uses no other
+ *  classes of this package, so that it starts as quickly as possible.
+ *  @author Osvaldo Valadez
+ */
+public class Client {
+
+    /** Size of copying buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Run a session with the daemon listening on the Unix socket ARGS[0],
+     *  reading commands from the file ARGS[1] (or the standard input) and
+     *  writing responses to the file ARGS[2] (or the standard output). */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java tablut.Client SOCKET"
+                               + " [INPUT [OUTPUT]]");
+            System.exit(1);
+        }
+        try (SocketChannel channel =
+             SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(args[0]));
+            InputStream input =
+                args.length > 1 ? new FileInputStream(args[1]) : System.in;
+            OutputStream output =
+                args.length > 2 ? new FileOutputStream(args[2]) : System.out;
+            Thread sender = new Thread(() -> send(input, channel));
+            sender.setDaemon(true);
+            sender.start();
+            receive(channel, output);
+            output.flush();
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** Copy INPUT to CHANNEL, then shut down CHANNEL's output so that the
+     *  daemon sees the end of the input. */
+    private static void send(InputStream input, SocketChannel channel) {
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = input.read(buffer)) >= 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, n);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            channel.shutdownOutput();
+        } catch (IOException excp) {
+            /* The daemon has closed the session; the main thread will
+             * finish. */
+            return;
+        }
+    }
+
+    /** Copy the contents of CHANNEL to OUTPUT until CHANNEL ends. */
+    private static void receive(SocketChannel channel, OutputStream output)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+            output.write(buffer.array(), 0, buffer.position());
+            output.flush();
+            buffer.clear();
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package tablut;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static tablut.Utils.*;
 import static tablut.Square.*;
 import static tablut.Piece.*;
+import static tablut.ViewEvent.Kind.*;
 
 /** The input/output and GUI controller for play of Tablut.
  *  @author Osvaldo Valadez*/
@@ -21,16 +29,29 @@ final class Controller {
      *  as an exemplar for automated players.  Reports
      *  board changes to VIEW at appropriate points.  Uses REPORTER
      *  to report moves, wins, and errors to user. If LOGFILE is
-     *  non-null, copies all commands to it. If STRICT, exits the
-     *  program with non-zero code on receiving an erroneous move from a
-     *  player. */
+     *  non-null, copies all commands to it (in the background; see
+     *  LogWriter). If STRICT, play stops with
+     *  an exception on receiving an erroneous move from a player.
+     *  Reads commands from the standard input and writes output to the
+     *  standard output. */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict, System.in, System.out);
+    }
+
+    /** As for the constructor above, but reading commands from INPUT and
+     *  writing prompts and other output to OUTPUT instead of the
+     *  standard input and output. */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, InputStream input, PrintStream output) {
         _view = view;
         _playing = false;
-        _logFile = logFile;
-        _input = new Scanner(System.in);
+        _logFile = logFile == null ? null : new LogWriter(logFile);
+        _input = new BufferedReader(new InputStreamReader(input));
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -40,46 +61,94 @@ final class Controller {
         _strict = strict;
     }
 
-    /** Play Tablut. */
+    /** Play Tablut.  If I am strict, an erroneous command ends play by
+     *  throwing an IllegalArgumentException after it is reported. */
     void play() {
-        _playing = true;
-        _winner = null;
-        _board.init();
-        while (_playing) {
-            _view.update(this);
-            String command;
-            if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
+        try {
+            _playing = true;
+            _winner = null;
+            _board.init();
+            if (_startPosition != null) {
+                _board.setFen(_startPosition);
+                _winner = _board.winner();
+            }
+            _history.reset();
+            publish(NEW_GAME, null);
+            while (_playing) {
+                String command;
+                if (_winner == null) {
+                    if (_board.turn() == WHITE) {
+                        command = _white.myMove();
+                    } else {
+                        command = _black.myMove();
+                    }
                 } else {
-                    command = _black.myMove();
+                    command = _nonPlayer.myMove();
+                    if (command == null) {
+                        command = "quit";
+                    }
                 }
-            } else {
-                command = _nonPlayer.myMove();
-                if (command == null) {
-                    command = "quit";
-                }
-            }
-            try {
-                executeCommand(command);
-            } catch (IllegalArgumentException excp) {
-                reportError("Error: %s%n", excp.getMessage());
-                if (_strict) {
-                    System.exit(1);
+                try {
+                    executeCommand(command);
+                } catch (IllegalArgumentException excp) {
+                    reportError("Error: %s%n", excp.getMessage());
+                    if (_strict) {
+                        _playing = false;
+                        throw excp;
+                    }
                 }
             }
+        } finally {
+            closeLog();
         }
+    }
+
+    /** Flush and close the log file, if any. */
+    private void closeLog() {
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
+    /** Start play from the position described by FEN (as for
+     *  Board.setFen) rather than the standard initial position.  Throws
+     *  IllegalArgumentException if FEN is malformed. */
+    void setStartPosition(String fen) {
+        new Board().setFen(fen);
+        _startPosition = fen;
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified. */
     Board board() {
         return _board;
     }
 
+    /** Return a snapshot of the current board as last published to my
+     *  View.  May be called from any thread. */
+    BoardSnapshot snapshot() {
+        return _snapshot;
+    }
+
+    /** Return a receiver for reports on the progress of searches by AI
+     *  players, or null if my View does not display them.  May be called
+     *  from any thread. */
+    Consumer<SearchProgress> searchMonitor() {
+        return _view.searchMonitor();
+    }
+
+    /** Notify my View of an event of kind KIND, caused by MOVE (null if
+     *  KIND is not MOVE), with a new snapshot of the board.  PLAYERS and
+     *  WINNER events leave the board as last published, so they reuse
+     *  the previous snapshot, and report no changed squares. */
+    private void publish(ViewEvent.Kind kind, Move move) {
+        BoardSnapshot before = _snapshot;
+        if (before == null || kind != PLAYERS && kind != WINNER) {
+            _snapshot = new BoardSnapshot(_board);
+        }
+        _view.update(new ViewEvent(kind, move, before, _snapshot));
+    }
+
     /** Return a random integer in the range 0 inclusive to U, exclusive.
      *  Available for use by AIs that use random selections in some cases.
      *  Once setRandomSeed is called with a particular value, this method
@@ -100,16 +169,42 @@ final class Controller {
      *  leading and trailing whitespace. First issues a prompt iff PROMPT. */
     String readLine(boolean prompt) {
         if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+            _output.print("> ");
+            _output.flush();
         }
-        if (_input.hasNextLine()) {
-            return _input.nextLine().trim();
-        } else {
+        try {
+            String line = _input.readLine();
+            return line == null ? null : line.trim();
+        } catch (IOException excp) {
             return null;
         }
     }
 
+    /** Run searches (see runSearch) on EXECUTOR, rather than in the
+     *  thread calling play(). */
+    void setSearchExecutor(ExecutorService executor) {
+        _searchExecutor = executor;
+    }
+
+    /** Return the value of SEARCH, a CPU-intensive computation such as an
+     *  AI search.  It runs on my search executor, if I have one, while
+     *  the calling thread waits, and otherwise directly. */
+    <T> T runSearch(Supplier<T> search) {
+        if (_searchExecutor == null) {
+            return search.get();
+        }
+        try {
+            return _searchExecutor.submit(search::get).get();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("search interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+    }
+
     /** Return true iff white is a manual player. */
     boolean manualWhite() {
         return _white.isManual();
@@ -139,80 +234,164 @@ final class Controller {
      *  as for String.format. */
     void logComment(String format, Object... args) {
         if (_logFile != null) {
-            _logFile.printf("# " + format + "%n", args);
-            _logFile.flush();
+            _logFile.printf("# " + format, args);
         }
     }
 
-    /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
-     *  <processor> is a functional object whose .accept method takes a
-     *  successfully matched Matcher and performs some operation. */
+    /** A Command is a pair (<syntax>, <processor>), where <syntax>
+     *  describes the arguments that may follow the command's name, and
+     *  <processor> is a functional object whose .accept method takes the
+     *  words of a syntactically correct command (its name first) and
+     *  performs some operation. */
     private static class Command {
-        /** A new Command that matches PATN (a regular expression) and uses
-         *  PROCESSOR to process commands that match the pattern. */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
+        /** A new Command taking from MINARGS to MAXARGS arguments, each
+         *  satisfying ARGUMENT (which may be null if MAXARGS is 0), that
+         *  uses PROCESSOR to process commands. */
+        Command(int minArgs, int maxArgs, Predicate<String> argument,
+                Consumer<String[]> processor) {
+            _minArgs = minArgs;
+            _maxArgs = maxArgs;
+            _argument = argument;
             _processor = processor;
         }
 
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
+        /** A new Command taking no arguments that uses PROCESSOR to
+         *  process commands. */
+        Command(Consumer<String[]> processor) {
+            this(0, 0, null, processor);
+        }
+
+        /** Return true iff WORDS (the command name followed by its
+         *  arguments) is a valid instance of me. */
+        boolean accepts(String[] words) {
+            int n = words.length - 1;
+            if (n < _minArgs || n > _maxArgs) {
+                return false;
+            }
+            for (int i = 1; i < words.length; i += 1) {
+                if (!_argument.test(words[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Bounds on my number of arguments. */
+        private final int _minArgs, _maxArgs;
+        /** Test for valid arguments. */
+        private final Predicate<String> _argument;
         /** The function object that implements my command. */
-        protected final Consumer<Matcher> _processor;
-    }
-
-    /** A list of Commands describing the valid textual commands to the
-     *  Tablut program and the methods to process them. */
-    private Command[] _commands = {
-        new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
-        new Command("seed\\s+(\\d+)$", this::doSeed),
-        new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
-        new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
-    };
-
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+        protected final Consumer<String[]> _processor;
+    }
+
+    /** The valid textual commands to the Tablut program (other than
+     *  moves), indexed by name. */
+    private final HashMap<String, Command> _commands = new HashMap<>();
+
+    {
+        _commands.put("quit", new Command(this::doQuit));
+        _commands.put("new", new Command(this::doNew));
+        _commands.put("seed",
+                      new Command(1, 1, Controller::isNumeral, this::doSeed));
+        _commands.put("dump", new Command(this::doDump));
+        _commands.put("bench",
+                      new Command(0, 1, Controller::isNumeral, this::doBench));
+        _commands.put("uci", new Command(this::doProtocol));
+        _commands.put("hint",
+                      new Command(0, 1, Controller::isNumeral, this::doHint));
+        _commands.put("undo",
+                      new Command(0, 1, Controller::isNumeral, this::doUndo));
+        _commands.put("redo",
+                      new Command(0, 1, Controller::isNumeral, this::doRedo));
+        _commands.put("goto",
+                      new Command(1, 1, w -> isNumeral(w) || w.equals("end"),
+                                  this::doGoto));
+        _commands.put("manual",
+                      new Command(1, 1, Controller::isColor, this::doManual));
+        _commands.put("auto",
+                      new Command(1, 1, Controller::isColor, this::doAuto));
+        _commands.put("limit",
+                      new Command(1, 1, Controller::isNumeral, this::doLimit));
+        _commands.put("setup",
+                      new Command(2, 2, w -> true, this::doSetup));
+        _commands.put("fen", new Command(this::doFen));
+        _commands.put("toggle",
+                      new Command(1, 1, Controller::isSquare,
+                                  this::doToggle));
+    }
+
+    /** Return true iff WORD is a non-empty string of decimal digits. */
+    private static boolean isNumeral(String word) {
+        for (int i = 0; i < word.length(); i += 1) {
+            if (!Character.isDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return !word.isEmpty();
+    }
+
+    /** Return true iff WORD is "white" or "black". */
+    private static boolean isColor(String word) {
+        return word.equals("white") || word.equals("black");
+    }
+
+    /** Return true iff WORD denotes a square. */
+    private static boolean isSquare(String word) {
+        return word.length() == 2 && word.charAt(0) >= 'a'
+            && word.charAt(0) <= 'i' && word.charAt(1) >= '1'
+            && word.charAt(1) <= '9';
+    }
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
+     *  so, raising an IllegalArgumentException otherwise.  Commands are
+     *  case-insensitive, and anything from a '#' on is a comment.  Moves,
+     *  the commonest commands, are recognized without creating any
+     *  objects. */
     private void executeCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
-            _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        int start, end;
+        end = cmnd.indexOf('#');
+        if (end < 0) {
+            end = cmnd.length();
+        }
+        start = 0;
+        while (start < end && Character.isWhitespace(cmnd.charAt(start))) {
+            start += 1;
+        }
+        while (end > start && Character.isWhitespace(cmnd.charAt(end - 1))) {
+            end -= 1;
+        }
 
-        if (cmnd.isEmpty()) {
+        if (start == end) {
             return;
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
-                return;
-            }
+        if (Move.isGrammaticalMove(cmnd, start, end)) {
+            doMove(Move.mv(cmnd, start, end));
+            return;
         }
-        throw error("Bad command: %s", cmnd);
+        String text = cmnd.substring(start, end).toLowerCase();
+        String[] words = words(text);
+        Command command = _commands.get(words[0]);
+        if (command == null || !command.accepts(words)) {
+            throw error("Bad command: %s", text);
+        }
+        command._processor.accept(words);
     }
 
     /** Command "new". */
-    private void doNew(Matcher unused) {
+    private void doNew(String[] unused) {
         _board.init();
         _winner = null;
+        _history.reset();
+        publish(NEW_GAME, null);
     }
 
-    /** Command "manual <color>", where <color> is COLOR.group(1). */
-    private void doManual(Matcher color) {
-        switch (color.group(1)) {
+    /** Command "manual <color>", where <color> is WORDS[1]. */
+    private void doManual(String[] words) {
+        switch (words[1]) {
         case "black":
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
@@ -222,12 +401,12 @@ final class Controller {
         default:
             assert false;
         }
-        _view.update(this);
+        publish(PLAYERS, null);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
-    private void doAuto(Matcher color) {
-        switch (color.group(1)) {
+    /** Command "auto <color>", where <color> is WORDS[1]. */
+    private void doAuto(String[] words) {
+        switch (words[1]) {
         case "black":
             _black = _autoPlayerTemplate.create(BLACK, this);
             break;
@@ -237,14 +416,14 @@ final class Controller {
         default:
             assert false;
         }
-        _view.update(this);
+        publish(PLAYERS, null);
     }
 
-    /** Command "toggle". The first group of MAT is a square designation.
+    /** Command "toggle". WORDS[1] is a square designation.
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
+    private void doToggle(String[] words) {
+        Square sq = sq(words[1]);
         Piece piece;
         switch (_board.get(sq)) {
         case EMPTY: piece = WHITE; break;
@@ -255,62 +434,211 @@ final class Controller {
         }
         _board.put(piece, sq);
         _board.clearUndo();
+        _history.reset();
+        publish(EDIT, null);
+    }
+
+    /** Command "setup POSITION SIDE", where POSITION and SIDE are WORDS[1]
+     *  and WORDS[2]: set up the position they describe (as for
+     *  Board.setFen), starting a new game from it. */
+    private void doSetup(String[] words) {
+        _board.setFen(words[1] + " " + words[2]);
+        _winner = _board.winner();
+        _history.reset();
+        publish(EDIT, null);
+        if (_winner != null) {
+            publish(WINNER, null);
+            _reporter.reportNote("%s wins.", _winner.toName());
+        }
+    }
+
+    /** Command "fen": print the current position (as for Board.fen). */
+    private void doFen(String[] unused) {
+        _output.println(_board.fen());
     }
 
     /** Command "quit". */
-    private void doQuit(Matcher unused) {
+    private void doQuit(String[] unused) {
         _playing = false;
     }
 
-    /** Command "seed N" where N is the first group of MAT. */
-    private void doSeed(Matcher mat) {
+    /** Command "seed N" where N is WORDS[1]. */
+    private void doSeed(String[] words) {
         try {
-            setSeed(Long.parseLong(mat.group(1)));
+            setSeed(Long.parseLong(words[1]));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Command "limit N" where N is the first captured group of MAT. */
-    private void doLimit(Matcher mat) {
+    /** Command "limit N" where N is WORDS[1]. */
+    private void doLimit(String[] words) {
         try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+            int limit = Integer.parseInt(words[1]);
+            if (2 * (long) limit <= _board.moveCount()) {
+                throw error("move limit too small");
+            }
+            _board.setMoveLimit(limit);
+            _history.truncate();
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Execute a move command matched in MAT. */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+    /** Execute the move command MOVE (null if it was a null move, such
+     *  as a1-a). */
+    private void doMove(Move move) {
+        if (move == null) {
+            throw error("invalid move");
+        }
+        _board.makeMove(move);
+        _history.add(move);
+        publish(MOVE, move);
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
-                _view.update(this);
+                publish(WINNER, null);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
         }
     }
 
-    /** Dump the contents of the board on standard output. */
-    private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+    /** Dump the contents of the board on my output. */
+    private void doDump(String[] unused) {
+        _output.printf("===%n%s===%n", _board);
     }
 
-    /** Undo back to before my last move, if there was one (otherwise does
-     *  nothing). */
-    private void doUndo(Matcher unused) {
-        if (_board.moveCount() > 1) {
-            _board.undo();
-            _board.undo();
-            _winner = null;
-            _view.update(this);
+    /** Command "bench" or "bench N": run the search benchmark (to depth
+     *  N, WORDS[1], if present) on standard output. */
+    private void doBench(String[] words) {
+        int depth;
+        try {
+            depth = words.length == 1 ? Bench.DEFAULT_DEPTH
+                : Integer.parseInt(words[1]);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (depth < 1) {
+            throw error("depth must be positive");
+        }
+        runSearch(() -> Bench.run(_output, depth));
+    }
+
+    /** Command "hint" or "hint N": print the best N moves (the first
+     *  WORDS[1], or 1 if absent) for the side to move, best first,
+     *  with their values and expected continuations. */
+    private void doHint(String[] words) {
+        int count;
+        try {
+            count = words.length == 1 ? 1 : Integer.parseInt(words[1]);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (count < 1) {
+            throw error("number of hints must be positive");
+        }
+        if (_analyst == null) {
+            _analyst = _autoPlayerTemplate instanceof AI
+                ? ((AI) _autoPlayerTemplate).copy() : new AI();
+        }
+        SearchLimits limits =
+            SearchLimits.depth(Math.max(HINT_DEPTH, _analyst.depth()));
+        Board board = new Board(_board);
+        List<SearchInfo> lines =
+            runSearch(() -> _analyst.analyze(board, count, limits, null));
+        for (SearchInfo line : lines) {
+            StringBuilder pv = new StringBuilder();
+            for (Move move : line.pv()) {
+                pv.append(' ').append(move);
+            }
+            _output.printf("hint %d (%d):%s%n", line.multiPV(),
+                           line.score(), pv);
+        }
+    }
+
+    /** Command "uci": switch to the engine protocol (see Protocol) for the
+     *  rest of the input, then quit.  The "uci" command itself is
+     *  answered as in the protocol. */
+    private void doProtocol(String[] unused) {
+        AI ai = _autoPlayerTemplate instanceof AI
+            ? (AI) _autoPlayerTemplate : new AI();
+        Protocol protocol = new Protocol(new Engine(ai), _output);
+        protocol.execute("uci");
+        protocol.run(() -> readLine(false));
+        _playing = false;
+    }
+
+    /** Command "undo": undo back to before my last move, if there was
+     *  one (otherwise does nothing).  Command "undo N", N being WORDS[1]:
+     *  undo the last N moves. */
+    private void doUndo(String[] words) {
+        int current = _history.current();
+        if (words.length == 1) {
+            if (current > 1) {
+                jumpTo(current - 2, UNDO);
+            }
+        } else {
+            jumpTo(current - moveCount(words[1], current), UNDO);
+        }
+    }
+
+    /** Command "redo": redo the last two moves undone (or the last one,
+     *  if only one was).  Command "redo N", N being WORDS[1]: redo the
+     *  next N moves undone. */
+    private void doRedo(String[] words) {
+        int current = _history.current(),
+            available = _history.length() - current;
+        if (words.length == 1) {
+            if (available > 0) {
+                jumpTo(current + Math.min(2, available), GOTO);
+            }
+        } else {
+            jumpTo(current + moveCount(words[1], available), GOTO);
         }
     }
 
+    /** Command "goto N" or "goto end", where N or "end" is WORDS[1]: go to
+     *  the position after the first N moves of the game's history (or
+     *  after all of them). */
+    private void doGoto(String[] words) {
+        int ply = words[1].equals("end") ? _history.length()
+            : moveCount(words[1], _history.length());
+        jumpTo(ply, ply < _history.current() ? UNDO : GOTO);
+    }
+
+    /** Return the number of moves denoted by the numeral WORD, checking
+     *  that it is at most LIMIT. */
+    private int moveCount(String word, int limit) {
+        int n;
+        try {
+            n = Integer.parseInt(word);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (n > limit) {
+            throw error("only %d moves available", limit);
+        }
+        return n;
+    }
+
+    /** Make the position after the first PLY moves of the game's history
+     *  current, notifying my View with an event of kind KIND. */
+    private void jumpTo(int ply, ViewEvent.Kind kind) {
+        _history.position(ply, _board);
+        _winner = _board.winner();
+        publish(kind, null);
+    }
+
     /** The board. */
     private Board _board = new Board();
 
+    /** The position at the start of play (as for Board.setFen), or null
+     *  for the standard initial position. */
+    private String _startPosition;
+
+    /** The history of the current game. */
+    private final GameHistory _history = new GameHistory();
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -320,14 +648,31 @@ final class Controller {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** The board as last published to _view (null before the first
+     *  game). */
+    private volatile BoardSnapshot _snapshot;
+
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
     /** Log file, or null if absent. */
-    private PrintStream _logFile;
+    private LogWriter _logFile;
 
     /** Input source. */
-    private Scanner _input;
+    private BufferedReader _input;
+
+    /** Destination of prompts and other output. */
+    private PrintStream _output;
+
+    /** Minimum depth of the searches made by the "hint" command. */
+    static final int HINT_DEPTH = 3;
+
+    /** The AI that answers "hint" commands, or null if not yet
+     *  created.  It keeps its transposition table between hints. */
+    private AI _analyst;
+
+    /** Executor for searches, or null to search in the playing thread. */
+    private ExecutorService _searchExecutor;
 
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
@@ -343,8 +688,7 @@ final class Controller {
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
-    /** If true, command errors cause termination with error exit
-     *  code. */
+    /** If true, command errors end play with an exception. */
     private boolean _strict;
 
 }
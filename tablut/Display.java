@@ -0,0 +1,28 @@
+package tablut;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/** Sets up games played on a GUI.  Main refers to the GUI classes only
+ *  through this class, so that the GUI classes and the Swing library
+ *  they use are loaded (and verified) only when a display is requested,
+ *  rather than on every start of the program.
+ *  @author Osvaldo Valadez
+ */
+class Display {
+
+    /** Return a Controller for a game shown on a new GUI, logging to LOG
+     *  (if not null), reading commands from INPUT and writing to OUTPUT.
+     *  If MANUAL, manual players take their moves from the GUI; otherwise
+     *  from INPUT.  STRICT is as for the Controller.  AI players are
+     *  copies of AI. */
+    static Controller controller(PrintStream log, boolean manual,
+                                 boolean strict, AI ai,
+                                 InputStream input, PrintStream output) {
+        GUI gui = new GUI("Tablut 61B");
+        gui.display(true);
+        Player manualPlayer = manual ? new GUIPlayer(gui) : new TextPlayer();
+        return new Controller(gui, log, gui, manualPlayer, ai, strict,
+                              input, output);
+    }
+}
@@ -0,0 +1,247 @@
+package tablut;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** A self-contained Tablut engine: a game and an AI to analyze it, with
+ *  no dependence on the standard input, output, or System.exit, so that
+ *  any number of Engines may be used in one program.  All methods are
+ *  thread-safe.  In particular, stop() may be called from any thread to
+ *  end a search in progress, and the game may be queried while a search
+ *  is in progress, since searches work on a copy of the game's board.
+ *  @author Osvaldo Valadez
+ */
+class Engine {
+
+    /** A new Engine at the start of a game, using a default AI. */
+    Engine() {
+        this(new AI());
+    }
+
+    /** A new Engine at the start of a game that searches using a copy of
+     *  the AI template AI. */
+    Engine(AI ai) {
+        _ai = ai.copy();
+        _board = new Board();
+    }
+
+    /** Start a new game. */
+    synchronized void newGame() {
+        _board.init();
+    }
+
+    /** Start a new game and make MOVES (each as for applyMove(String)).
+     *  If a move is erroneous, the game is left just before it and an
+     *  IllegalArgumentException is thrown. */
+    synchronized void setPosition(List<String> moves) {
+        setPosition(null, moves);
+    }
+
+    /** As for setPosition(MOVES), but starting from the position described
+     *  by FEN (as for Board.setFen), or from the initial position if FEN
+     *  is null.  If FEN is malformed, throws IllegalArgumentException,
+     *  leaving the game unchanged. */
+    synchronized void setPosition(String fen, List<String> moves) {
+        if (fen == null) {
+            newGame();
+        } else {
+            _board.setFen(fen);
+        }
+        for (String move : moves) {
+            applyMove(move);
+        }
+    }
+
+    /** Set the move limit of the current game to LIMIT, as for
+     *  Board.setMoveLimit. */
+    synchronized void setMoveLimit(int limit) {
+        try {
+            _board.setMoveLimit(limit);
+        } catch (AssertionError excp) {
+            throw error("move limit too small");
+        }
+    }
+
+    /** Make the move denoted by MOVE (as in Move.mv(String)) in the current
+     *  game.  Throws IllegalArgumentException if it is not a legal move for
+     *  the side to move. */
+    synchronized void applyMove(String move) {
+        Move mv = Move.mv(move.trim().toLowerCase());
+        if (mv == null) {
+            throw error("bad move: %s", move);
+        }
+        applyMove(mv);
+    }
+
+    /** Make MOVE in the current game.  Throws IllegalArgumentException if it
+     *  is not a legal move for the side to move. */
+    synchronized void applyMove(Move move) {
+        if (winner() != null) {
+            throw error("game is over");
+        }
+        if (!_board.isLegal(move.from()) || !_board.isLegal(move)) {
+            throw error("illegal move: %s", move);
+        }
+        _board.makeMove(move);
+    }
+
+    /** Undo the last move, if any.  Returns true iff there was one. */
+    synchronized boolean undo() {
+        int count = _board.moveCount();
+        _board.undo();
+        return _board.moveCount() < count;
+    }
+
+    /** Return a new list of the legal moves in the current position. */
+    synchronized List<Move> legalMoves() {
+        if (winner() != null) {
+            return new Move.MoveList();
+        }
+        return _board.legalMoves(_board.turn());
+    }
+
+    /** Return the side to move. */
+    synchronized Piece turn() {
+        return _board.turn();
+    }
+
+    /** Return the winner of the current game, or null if it is not over.
+     *  A side with no legal move has lost. */
+    synchronized Piece winner() {
+        Piece winner = _board.winner();
+        if (winner == null && !_board.hasMove(_board.turn())) {
+            winner = _board.turn().opponent();
+        }
+        return winner;
+    }
+
+    /** Return the number of moves made in the current game. */
+    synchronized int moveCount() {
+        return _board.moveCount();
+    }
+
+    /** Return a copy of the current board. */
+    synchronized Board board() {
+        return new Board(_board);
+    }
+
+    /** Return a printable diagram of the current position. */
+    synchronized String position() {
+        return _board.toString();
+    }
+
+    /** Search the current position within LIMITS and return the best move
+     *  found, or null if the game is over.  Does not make the move.  Only
+     *  one search runs at a time; other callers wait for it to finish. */
+    Move search(SearchLimits limits) {
+        return search(limits, null);
+    }
+
+    /** As for search(LIMITS), also reporting each completed iteration of
+     *  the search to LISTENER, if not null (see AI.findMove). */
+    Move search(SearchLimits limits, Consumer<SearchInfo> listener) {
+        synchronized (_searchLock) {
+            Board board;
+            synchronized (this) {
+                if (winner() != null) {
+                    return null;
+                }
+                board = new Board(_board);
+            }
+            Move move = _ai.findMove(board, limits, listener);
+            _lastNodes = _ai.nodeCount();
+            return move;
+        }
+    }
+
+    /** Analyze the current position within LIMITS, returning reports on
+     *  the best COUNT moves, best first, and passing each report to
+     *  LISTENER, if not null, as it is found (see AI.analyze).  Returns an
+     *  empty list if the game is over.  Searches are serialized as for
+     *  search. */
+    List<SearchInfo> analyze(int count, SearchLimits limits,
+                             Consumer<SearchInfo> listener) {
+        return analyze(count, limits, listener, newGeneration());
+    }
+
+    /** As for analyze(COUNT, LIMITS, LISTENER), as the search numbered
+     *  GENERATION, which must have been returned by newGeneration() and
+     *  not used for another search. */
+    List<SearchInfo> analyze(int count, SearchLimits limits,
+                             Consumer<SearchInfo> listener,
+                             long generation) {
+        synchronized (_searchLock) {
+            Board board;
+            synchronized (this) {
+                if (winner() != null) {
+                    return List.of();
+                }
+                board = new Board(_board);
+            }
+            List<SearchInfo> lines =
+                _ai.analyze(board, count, limits, listener, generation);
+            _lastNodes = _ai.nodeCount();
+            return lines;
+        }
+    }
+
+    /** Use a transposition table of about MEGABYTES megabytes for
+     *  searches.  Waits for any search in progress. */
+    void setHashSize(int megabytes) {
+        synchronized (_searchLock) {
+            _ai.setHashSize(megabytes);
+        }
+    }
+
+    /** Evaluate positions with NETWORK (or the built-in evaluation, if
+     *  it is null) in searches.  Waits for any search in progress. */
+    void setNetwork(Network network) {
+        synchronized (_searchLock) {
+            _ai.setNetwork(network);
+        }
+    }
+
+    /** Forget the results of previous searches.  Waits for any search in
+     *  progress. */
+    void clearHash() {
+        synchronized (_searchLock) {
+            _ai.clearHash();
+        }
+    }
+
+    /** Return a new search number for a search that has yet to begin
+     *  (see AI.newGeneration). */
+    long newGeneration() {
+        return _ai.newGeneration();
+    }
+
+    /** Ask any search in progress to stop as soon as possible and return
+     *  its best move so far.  Searches begun later are unaffected. */
+    void stop() {
+        _ai.stop();
+    }
+
+    /** Ask the search numbered GENERATION to stop as soon as possible,
+     *  even if it has yet to begin (see AI.stop). */
+    void stop(long generation) {
+        _ai.stop(generation);
+    }
+
+    /** Return the number of positions visited by the last completed
+     *  search. */
+    long lastSearchNodes() {
+        return _lastNodes;
+    }
+
+    /** The current game. */
+    private final Board _board;
+    /** The AI used for searches. */
+    private final AI _ai;
+    /** Lock held during searches. */
+    private final Object _searchLock = new Object();
+    /** Positions visited by the last search. */
+    private volatile long _lastNodes;
+}
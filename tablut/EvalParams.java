@@ -0,0 +1,228 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static tablut.Board.SIZE;
+import static tablut.Piece.*;
+
+/** The weights of the built-in evaluation (AI.staticScore), which is a
+ *  weighted sum of COUNT features of a position (see features).  The
+ *  pieces are counted as the squares are scanned by column, then by row,
+ *  up to the king, if it is present; the remaining features concern the
+ *  king, and are 0 if it has been captured.  DEFAULT gives the original
+ *  hand-picked evaluation, in which each counted piece is worth 1 and the
+ *  king 7.  Weights can be tuned by Tuner and are stored in text files
+ *  with one "NAME VALUE" line per weight (blank lines and lines starting
+ *  with "#" are ignored).  EvalParams are immutable.
+ *  @author Osvaldo Valadez
+ */
+final class EvalParams {
+
+    /** Indices of the features. */
+    static final int
+        WHITE_PIECES = 0,
+        BLACK_PIECES = 1,
+        KING_PRESENT = 2,
+        KING_EDGE = 3,
+        KING_ATTACKERS = 4;
+
+    /** Names of the weights of the features, by index. */
+    static final String[] NAMES = {
+        "white", "black", "king", "kingEdge", "kingAttackers",
+    };
+
+    /** Number of features. */
+    static final int COUNT = NAMES.length;
+
+    /** The original weights. */
+    static final EvalParams DEFAULT = new EvalParams(1, 1, 7, 0, 0);
+
+    /** Parameters with weights WEIGHTS, by feature index. */
+    EvalParams(int... weights) {
+        if (weights.length != COUNT) {
+            throw Utils.error("need %d weights", COUNT);
+        }
+        _weights = weights.clone();
+    }
+
+    /** Return the parameters in FILE. */
+    static EvalParams load(Path file) throws IOException {
+        int[] weights = new int[COUNT];
+        boolean[] present = new boolean[COUNT];
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            int k = List.of(NAMES).indexOf(words[0]);
+            if (words.length != 2 || k < 0 || present[k]) {
+                throw new IOException(String.format("bad parameter in %s: "
+                                                    + "%s", file, line));
+            }
+            try {
+                weights[k] = Integer.parseInt(words[1]);
+            } catch (NumberFormatException excp) {
+                throw new IOException(String.format("bad parameter in %s: "
+                                                    + "%s", file, line));
+            }
+            present[k] = true;
+        }
+        for (int k = 0; k < COUNT; k += 1) {
+            if (!present[k]) {
+                throw new IOException(String.format("missing parameter in "
+                                                    + "%s: %s", file,
+                                                    NAMES[k]));
+            }
+        }
+        return new EvalParams(weights);
+    }
+
+    /** Write me to FILE, in the format read by load, preceded by the
+     *  comment lines COMMENTS. */
+    void save(Path file, String... comments) throws IOException {
+        ArrayList<String> lines = new ArrayList<>();
+        for (String comment : comments) {
+            lines.add("# " + comment);
+        }
+        for (int k = 0; k < COUNT; k += 1) {
+            lines.add(NAMES[k] + " " + _weights[k]);
+        }
+        Files.write(file, lines);
+    }
+
+    /** Return the weight of feature K. */
+    int weight(int k) {
+        return _weights[k];
+    }
+
+    /** Return a copy of my weights, by feature index. */
+    int[] weights() {
+        return _weights.clone();
+    }
+
+    /** Set FEATURES[0 .. COUNT-1] to the features of the position on
+     *  BOARD. */
+    static void features(Board board, int[] features) {
+        Piece[][] brd = board.returnBoard();
+        int white, black;
+        white = black = 0;
+        for (int col = 0; col < SIZE; col += 1) {
+            for (int row = 0; row < SIZE; row += 1) {
+                Piece piece = brd[col][row];
+                if (piece == KING) {
+                    features[WHITE_PIECES] = white;
+                    features[BLACK_PIECES] = black;
+                    features[KING_PRESENT] = 1;
+                    features[KING_EDGE] =
+                        Math.min(Math.min(col, SIZE - 1 - col),
+                                 Math.min(row, SIZE - 1 - row));
+                    features[KING_ATTACKERS] =
+                        attacker(brd, col - 1, row)
+                        + attacker(brd, col + 1, row)
+                        + attacker(brd, col, row - 1)
+                        + attacker(brd, col, row + 1);
+                    return;
+                } else if (piece == WHITE) {
+                    white += 1;
+                } else if (piece == BLACK) {
+                    black += 1;
+                }
+            }
+        }
+        features[WHITE_PIECES] = white;
+        features[BLACK_PIECES] = black;
+        features[KING_PRESENT] = 0;
+        features[KING_EDGE] = features[KING_ATTACKERS] = 0;
+    }
+
+    /** Set FEATURES[0 .. COUNT-1] to the features of the position stored
+     *  at BASE in POSITIONS, one byte per square, as by
+     *  BatchEvaluator.pack. */
+    static void features(byte[] positions, int base, int[] features) {
+        int white, black;
+        white = black = 0;
+        for (int col = 0; col < SIZE; col += 1) {
+            for (int row = 0; row < SIZE; row += 1) {
+                int index = row * SIZE + col;
+                int piece = positions[base + index];
+                if (piece == KING.ordinal()) {
+                    features[WHITE_PIECES] = white;
+                    features[BLACK_PIECES] = black;
+                    kingFeatures(positions, base, index, features);
+                    return;
+                } else if (piece == WHITE.ordinal()) {
+                    white += 1;
+                } else if (piece == BLACK.ordinal()) {
+                    black += 1;
+                }
+            }
+        }
+        features[WHITE_PIECES] = white;
+        features[BLACK_PIECES] = black;
+        kingFeatures(positions, base, -1, features);
+    }
+
+    /** Set the features of FEATURES that concern the king for the
+     *  position stored at BASE in POSITIONS (as for
+     *  features(POSITIONS, BASE, FEATURES)), whose king is on the square
+     *  with index KING, or which has no king if KING is -1. */
+    static void kingFeatures(byte[] positions, int base, int king,
+                             int[] features) {
+        if (king < 0) {
+            features[KING_PRESENT] = 0;
+            features[KING_EDGE] = features[KING_ATTACKERS] = 0;
+            return;
+        }
+        int col = king % SIZE, row = king / SIZE;
+        features[KING_PRESENT] = 1;
+        features[KING_EDGE] = Math.min(Math.min(col, SIZE - 1 - col),
+                                       Math.min(row, SIZE - 1 - row));
+        features[KING_ATTACKERS] =
+            attacker(positions, base, col - 1, row)
+            + attacker(positions, base, col + 1, row)
+            + attacker(positions, base, col, row - 1)
+            + attacker(positions, base, col, row + 1);
+    }
+
+    /** Return 1 if COL ROW is a square of the position stored at BASE in
+     *  POSITIONS holding a black piece, and otherwise 0. */
+    private static int attacker(byte[] positions, int base, int col,
+                                int row) {
+        return col >= 0 && col < SIZE && row >= 0 && row < SIZE
+            && positions[base + row * SIZE + col] == BLACK.ordinal() ? 1 : 0;
+    }
+
+    /** Return 1 if COL ROW is a square of BRD holding a black piece, and
+     *  otherwise 0. */
+    private static int attacker(Piece[][] brd, int col, int row) {
+        return col >= 0 && col < SIZE && row >= 0 && row < SIZE
+            && brd[col][row] == BLACK ? 1 : 0;
+    }
+
+    /** Return the value of a position with features FEATURES. */
+    int evaluate(int[] features) {
+        int result = 0;
+        for (int k = 0; k < COUNT; k += 1) {
+            result += _weights[k] * features[k];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < COUNT; k += 1) {
+            result.append(k == 0 ? "" : " ").append(NAMES[k]).append('=')
+                .append(_weights[k]);
+        }
+        return result.toString();
+    }
+
+    /** The weights, by feature index. */
+    private final int[] _weights;
+}
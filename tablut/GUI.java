@@ -14,6 +14,7 @@ import java.io.StringWriter;
 
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
 
 /** The GUI controller for a Tablut board and buttons.
  *  @author Osvaldo Valadez
@@ -36,6 +37,13 @@ class GUI extends TopLevel implements View, Reporter {
     GUI(String title) {
         super(title, true);
         addMenuButton("Game->Quit", this::quit);
+        addMenuButton("History->Start", s -> _pendingCommands.offer("goto 0"));
+        addMenuButton("History->Back", s -> _pendingCommands.offer("undo 1"));
+        addMenuButton("History->Forward",
+                      s -> _pendingCommands.offer("redo 1"));
+        addMenuButton("History->End",
+                      s -> _pendingCommands.offer("goto end"));
+        addMenuCheckBox("Options->Show search", false, this::showSearch);
         _widget = new BoardWidget(_pendingCommands);
         add(_widget,
             new LayoutSpec("y", 1,
@@ -48,6 +56,17 @@ class GUI extends TopLevel implements View, Reporter {
 
     }
 
+    /** Response to "Show search" check box click. */
+    private void showSearch(String label) {
+        _showSearch = isSelected(label);
+        _widget.setSearchOverlay(_showSearch);
+    }
+
+    @Override
+    public Consumer<SearchProgress> searchMonitor() {
+        return _showSearch ? _widget::showSearch : null;
+    }
+
     /** Response to "Quit" button click. */
     private void quit(String dummy) {
         _pendingCommands.offer("quit");
@@ -70,8 +89,11 @@ class GUI extends TopLevel implements View, Reporter {
     }
 
     @Override
-    public void update(Controller controller) {
-        Board board = controller.board();
+    public void update(ViewEvent event) {
+        if (event.kind() == ViewEvent.Kind.PLAYERS) {
+            return;
+        }
+        BoardSnapshot board = event.snapshot();
 
         _widget.update(board);
         if (board.winner() != null) {
@@ -141,6 +163,9 @@ class GUI extends TopLevel implements View, Reporter {
     /** The board widget. */
     private BoardWidget _widget;
 
+    /** True iff the progress of AI searches is to be displayed. */
+    private volatile boolean _showSearch;
+
     /** Queue of pending commands resulting from menu clicks and moves on the
      *  board.  We use a blocking queue because the responses to clicks
      *  on the board and on menus happen in parallel to the methods that
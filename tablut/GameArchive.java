@@ -0,0 +1,337 @@
+package tablut;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
+import static tablut.Square.sq;
+
+/** A compact binary file format for collections of games (GameRecords),
+ *  with a Writer and Reader that stream games to and from files.
+ *  <p>
+ *  An archive is a header (the 4 bytes MAGIC and the 2-byte VERSION)
+ *  followed by the games.  Each game is
+ *  <ul>
+ *  <li> a byte of flags: the winner in the low 2 bits (0 for none, 1 for
+ *       White, 2 for Black), then HAS_INITIAL if the game starts from a
+ *       position other than the standard one, and WHITE_FIRST if that
+ *       position has White to move;
+ *  <li> the move limit (2 bytes, 0 for none);
+ *  <li> the number of moves (2 bytes);
+ *  <li> if HAS_INITIAL, the starting position, at 2 bits per square
+ *       (the ordinal of its Piece), in square-index order, in
+ *       POSITION_SIZE bytes;
+ *  <li> the moves, 2 bytes each: the indices of the from and to
+ *       squares.
+ *  </ul>
+ *  All multi-byte quantities are unsigned and big-endian.
+ *  @author Osvaldo Valadez
+ */
+class GameArchive {
+
+    /** The first bytes of an archive ("TBLA"). */
+    static final int MAGIC = 0x54424c41;
+
+    /** The format version written by Writers. */
+    static final short VERSION = 1;
+
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 6;
+
+    /** Flag bits of a game. */
+    static final int
+        WINNER_MASK = 0x3,
+        HAS_INITIAL = 0x4,
+        WHITE_FIRST = 0x8;
+
+    /** Size in bytes of an encoded position. */
+    static final int POSITION_SIZE = (2 * NUM_SQUARES + 7) / 8;
+
+    /** Size in bytes of the fixed part of a game. */
+    static final int GAME_HEADER_SIZE = 5;
+
+    /** Maximum number of moves in one game. */
+    static final int MAX_MOVES = 0xffff;
+
+    /** Maximum move limit of a game. */
+    static final int MAX_MOVE_LIMIT = 0xffff;
+
+    /** Size of the buffers used for reading and writing (enough for any
+     *  game). */
+    static final int BUFFER_SIZE = 1 << 18;
+
+    /** Usage: java tablut.GameArchive FILE ...
+     *  Prints the games in each FILE, one per line, as their winners
+     *  followed by their moves. */
+    public static void main(String... args) {
+        try {
+            for (String name : args) {
+                try (Reader reader = new Reader(Paths.get(name))) {
+                    for (GameRecord game = reader.next(); game != null;
+                         game = reader.next()) {
+                        System.out.println(game);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Writes games to an archive file. */
+    static class Writer implements AutoCloseable {
+
+        /** A Writer that creates or replaces the archive FILE. */
+        Writer(Path file) throws IOException {
+            this(file, false);
+        }
+
+        /** A Writer that writes to the archive FILE.  If APPEND and FILE
+         *  already exists, new games are added to the end of those already
+         *  there; otherwise FILE is created or replaced. */
+        Writer(Path file, boolean append) throws IOException {
+            _channel = FileChannel.open(file, CREATE, WRITE, READ);
+            _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            if (append && _channel.size() > 0) {
+                checkHeader(_channel, file);
+                _channel.position(_channel.size());
+            } else {
+                _channel.truncate(0);
+                _buffer.putInt(MAGIC).putShort(VERSION);
+            }
+        }
+
+        /** Add GAME to the archive.  May be called by several threads at
+         *  once. */
+        synchronized void write(GameRecord game) throws IOException {
+            List<Move> moves = game.moves();
+            if (moves.size() > MAX_MOVES) {
+                throw new IOException("game too long to archive");
+            }
+            if (game.moveLimit() < 0 || game.moveLimit() > MAX_MOVE_LIMIT) {
+                throw new IOException("move limit too large to archive");
+            }
+            int size = GAME_HEADER_SIZE + 2 * moves.size()
+                + (game.initial() == null ? 0 : POSITION_SIZE);
+            if (size > _buffer.remaining()) {
+                drain();
+            }
+            int flags = game.winner() == WHITE ? 1
+                : game.winner() == BLACK ? 2 : 0;
+            if (game.initial() != null) {
+                flags |= HAS_INITIAL;
+                if (game.initial().charAt(0) == 'W') {
+                    flags |= WHITE_FIRST;
+                }
+            }
+            _buffer.put((byte) flags);
+            _buffer.putShort((short) game.moveLimit());
+            _buffer.putShort((short) moves.size());
+            if (game.initial() != null) {
+                putPosition(game.initial());
+            }
+            for (Move move : moves) {
+                _buffer.put((byte) move.from().index());
+                _buffer.put((byte) move.to().index());
+            }
+        }
+
+        /** Write out any buffered games. */
+        synchronized void flush() throws IOException {
+            drain();
+            _channel.force(false);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                _channel.close();
+            }
+        }
+
+        /** Append the position encoded by INITIAL (as for
+         *  Board.encodedBoard) to my buffer. */
+        private void putPosition(String initial) {
+            int bits, nbits;
+            bits = nbits = 0;
+            for (Square sq : SQUARE_LIST) {
+                char c = initial.charAt(sq.index() + 1);
+                int piece = c == 'W' ? WHITE.ordinal()
+                    : c == 'B' ? BLACK.ordinal()
+                    : c == 'K' ? KING.ordinal() : EMPTY.ordinal();
+                bits = (bits << 2) | piece;
+                nbits += 2;
+                if (nbits == 8) {
+                    _buffer.put((byte) bits);
+                    bits = nbits = 0;
+                }
+            }
+            if (nbits > 0) {
+                _buffer.put((byte) (bits << (8 - nbits)));
+            }
+        }
+
+        /** Write the contents of my buffer to my file and empty it. */
+        private void drain() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** The archive file. */
+        private final FileChannel _channel;
+        /** Bytes waiting to be written. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** Reads games, in order, from an archive file. */
+    static class Reader implements AutoCloseable {
+
+        /** A Reader for the archive FILE. */
+        Reader(Path file) throws IOException {
+            _file = file;
+            _channel = FileChannel.open(file, READ);
+            checkHeader(_channel, file);
+            _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            _buffer.flip();
+        }
+
+        /** Return the next game in the archive, or null if there are no
+         *  more. */
+        GameRecord next() throws IOException {
+            if (!fill(1)) {
+                return null;
+            }
+            if (!fill(GAME_HEADER_SIZE)) {
+                throw truncated();
+            }
+            int flags = _buffer.get();
+            int moveLimit = _buffer.getShort() & 0xffff;
+            int numMoves = _buffer.getShort() & 0xffff;
+            String initial = null;
+            if ((flags & HAS_INITIAL) != 0) {
+                if (!fill(POSITION_SIZE)) {
+                    throw truncated();
+                }
+                initial = getPosition((flags & WHITE_FIRST) != 0);
+            }
+            if (!fill(2 * numMoves)) {
+                throw truncated();
+            }
+            ArrayList<Move> moves = new ArrayList<>(numMoves);
+            for (int i = 0; i < numMoves; i += 1) {
+                int from = _buffer.get() & 0xff, to = _buffer.get() & 0xff;
+                Move move = from < NUM_SQUARES && to < NUM_SQUARES
+                    ? Move.mv(sq(from), sq(to)) : null;
+                if (move == null) {
+                    throw new IOException(String.format("bad move in %s",
+                                                        _file));
+                }
+                moves.add(move);
+            }
+            Piece winner;
+            switch (flags & WINNER_MASK) {
+            case 1:
+                winner = WHITE;
+                break;
+            case 2:
+                winner = BLACK;
+                break;
+            default:
+                winner = null;
+                break;
+            }
+            return new GameRecord(initial, moveLimit, moves, winner);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** Return the position (as for Board.encodedBoard) encoded at the
+         *  front of my buffer, with White to move iff WHITEFIRST. */
+        private String getPosition(boolean whiteFirst) {
+            char[] result = new char[NUM_SQUARES + 1];
+            result[0] = whiteFirst ? 'W' : 'B';
+            int bits, nbits;
+            bits = nbits = 0;
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                if (nbits == 0) {
+                    bits = _buffer.get() & 0xff;
+                    nbits = 8;
+                }
+                nbits -= 2;
+                Piece piece = Piece.values()[(bits >> nbits) & 3];
+                result[i + 1] = piece.toString().charAt(0);
+            }
+            return new String(result);
+        }
+
+        /** Ensure that at least N bytes (at most BUFFER_SIZE) are
+         *  available in my buffer, reading more from my file as needed.
+         *  Return false if the file ends first. */
+        private boolean fill(int n) throws IOException {
+            if (_buffer.remaining() >= n) {
+                return true;
+            }
+            _buffer.compact();
+            while (_buffer.position() < n) {
+                if (_channel.read(_buffer) < 0) {
+                    break;
+                }
+            }
+            _buffer.flip();
+            return _buffer.remaining() >= n;
+        }
+
+        /** Return an exception reporting that my file is truncated. */
+        private IOException truncated() {
+            return new EOFException(String.format("truncated archive: %s",
+                                                  _file));
+        }
+
+        /** The archive file's name. */
+        private final Path _file;
+        /** The archive file. */
+        private final FileChannel _channel;
+        /** Bytes read but not yet decoded. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** Read and check the header at the start of CHANNEL, an archive
+     *  named FILE. */
+    private static void checkHeader(FileChannel channel, Path file)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(String.format("not an archive: %s",
+                                                    file));
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException(String.format("not an archive: %s", file));
+        }
+        if (header.getShort() != VERSION) {
+            throw new IOException(String.format("unsupported archive "
+                                                + "version: %s", file));
+        }
+        channel.position(HEADER_SIZE);
+    }
+}
@@ -0,0 +1,84 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The history of a game: the moves made from its starting position.
+ *  The history does not keep positions itself; instead, it moves a Board
+ *  holding its current position to any other position in it by undoing
+ *  or replaying just the moves between the two, so that going back or
+ *  forward N moves takes time proportional to N, however long the game.
+ *  Moves undone (by going back to an earlier position) are kept, so that
+ *  they may be redone, until a different move is made in their place.
+ *  @author Osvaldo Valadez
+ */
+class GameHistory {
+
+    /** An empty history. */
+    GameHistory() {
+        reset();
+    }
+
+    /** Discard all history, and start again from the current position
+     *  of the board whose moves are to be recorded.  That board's undo
+     *  stack must contain just that position. */
+    void reset() {
+        _moves.clear();
+        _current = 0;
+    }
+
+    /** Return the number of moves recorded, including any that may be
+     *  redone. */
+    int length() {
+        return _moves.size();
+    }
+
+    /** Return the number of moves made to reach the current position. */
+    int current() {
+        return _current;
+    }
+
+    /** Return the moves recorded, in order. */
+    List<Move> moves() {
+        return Collections.unmodifiableList(_moves);
+    }
+
+    /** Record that MOVE was made from the current position.  Discards
+     *  any moves that might have been redone, unless MOVE is the first of
+     *  them. */
+    void add(Move move) {
+        if (_current < _moves.size() && _moves.get(_current) == move) {
+            _current += 1;
+            return;
+        }
+        truncate();
+        _moves.add(move);
+        _current += 1;
+    }
+
+    /** Discard the moves after the current position, so that they can no
+     *  longer be redone. */
+    void truncate() {
+        _moves.subList(_current, _moves.size()).clear();
+    }
+
+    /** Set BOARD, which must hold my current position (having reached it
+     *  from my starting position by making my moves and undoing them
+     *  with Board.undo), to the position after the first PLY moves, and
+     *  make that the current position.  Requires 0 <= PLY <= length(). */
+    void position(int ply, Board board) {
+        assert 0 <= ply && ply <= _moves.size();
+        for (; _current > ply; _current -= 1) {
+            board.undo();
+        }
+        for (; _current < ply; _current += 1) {
+            board.makeMove(_moves.get(_current));
+        }
+    }
+
+    /** The moves recorded. */
+    private final ArrayList<Move> _moves = new ArrayList<>();
+    /** The number of moves made to reach the current position. */
+    private int _current;
+}
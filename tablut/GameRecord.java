@@ -0,0 +1,109 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The record of one game: its starting position, move limit, moves, and
+ *  result.  GameRecords are immutable.
+ *  @author Osvaldo Valadez
+ */
+final class GameRecord {
+
+    /** A record of a game starting from the position encoded by INITIAL
+     *  (as by Board.encodedBoard), or from the standard initial position
+     *  if INITIAL is null, with move limit MOVELIMIT (0 for none),
+     *  consisting of MOVES and won by WINNER (null if the game was not
+     *  finished). */
+    GameRecord(String initial, int moveLimit, List<Move> moves,
+               Piece winner) {
+        _initial = initial;
+        _moveLimit = moveLimit;
+        _moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        _winner = winner;
+    }
+
+    /** Return the encoded starting position (see Board.encodedBoard), or
+     *  null if the game started from the standard initial position. */
+    String initial() {
+        return _initial;
+    }
+
+    /** Return the move limit, or 0 if there was none. */
+    int moveLimit() {
+        return _moveLimit;
+    }
+
+    /** Return the moves of the game, in order. */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /** Return the winner, or null if the game was not finished. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return a new Board set to the starting position of this game,
+     *  with its move limit. */
+    Board start() {
+        Board board = new Board();
+        if (_initial != null) {
+            board.uncodeBoard(_initial);
+            board.clearUndo();
+        }
+        if (_moveLimit > 0) {
+            board.setMoveLimit(_moveLimit);
+        }
+        return board;
+    }
+
+    /** Return a new Board set to the final position of this game. */
+    Board end() {
+        Board board = start();
+        for (Move move : _moves) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GameRecord)) {
+            return false;
+        }
+        GameRecord other = (GameRecord) obj;
+        return _moveLimit == other._moveLimit && _winner == other._winner
+            && _moves.equals(other._moves)
+            && (_initial == null ? other._initial == null
+                : _initial.equals(other._initial));
+    }
+
+    @Override
+    public int hashCode() {
+        return _moves.hashCode() * 31 + _moveLimit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Move move : _moves) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(move);
+        }
+        return String.format("[%s] %s",
+                             _winner == null ? "*" : _winner.toName(),
+                             result);
+    }
+
+    /** Encoded starting position, or null for the standard one. */
+    private final String _initial;
+    /** Move limit. */
+    private final int _moveLimit;
+    /** The moves. */
+    private final List<Move> _moves;
+    /** The winner, or null. */
+    private final Piece _winner;
+}
@@ -0,0 +1,192 @@
+package tablut;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** A writer of log lines that does its writing in the background.
+ *  Callers only add lines to a bounded queue (waiting only if it is
+ *  full).  One background thread, shared by all LogWriters, writes the
+ *  lines of each queue in batches, flushing its destination once per
+ *  group of lines: when at least GROUP_SIZE lines have been written since
+ *  the last flush, or when FLUSH_INTERVAL milliseconds have passed since
+ *  the oldest unflushed line was written.  An idle LogWriter thus costs
+ *  only its queue.  Everything added before a call to flush() or close()
+ *  has been written and flushed when the call returns, and LogWriters
+ *  that have not been closed when the program exits are closed then (by
+ *  one shutdown hook, shared by all).
+ *  @author Osvaldo Valadez
+ */
+class LogWriter implements AutoCloseable {
+
+    /** Maximum number of lines waiting to be written. */
+    static final int QUEUE_SIZE = 4096;
+
+    /** Number of lines written that forces a flush. */
+    static final int GROUP_SIZE = 256;
+
+    /** Maximum time in milliseconds for which a line may stay unflushed. */
+    static final long FLUSH_INTERVAL = 100;
+
+    /** Executor whose one (daemon) thread does the writing of all
+     *  LogWriters. */
+    private static final ScheduledExecutorService WRITER =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "log-writer");
+            th.setDaemon(true);
+            return th;
+        });
+
+    /** The LogWriters not yet closed. */
+    private static final Set<LogWriter> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(LogWriter::closeAll, "log-writer-shutdown"));
+    }
+
+    /** A LogWriter writing lines to OUT, which should be buffered (and
+     *  should not flush automatically). */
+    LogWriter(PrintStream out) {
+        _out = out;
+        _queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        OPEN.add(this);
+    }
+
+    /** Add LINE to the log. */
+    void println(String line) {
+        put(line);
+    }
+
+    /** Add the line formed from FORMAT and ARGS, as for String.format, to
+     *  the log. */
+    void printf(String format, Object... args) {
+        put(String.format(format, args));
+    }
+
+    /** Wait until all lines added so far have been written and
+     *  flushed. */
+    void flush() {
+        Barrier barrier = new Barrier();
+        put(barrier);
+        barrier.await();
+    }
+
+    /** Flush all lines added so far and close my destination.  Has no
+     *  effect if I am already closed. */
+    @Override
+    public synchronized void close() {
+        if (_closed) {
+            return;
+        }
+        flush();
+        _closed = true;
+        OPEN.remove(this);
+        _out.close();
+    }
+
+    /** Close all LogWriters not yet closed. */
+    private static void closeAll() {
+        for (LogWriter log : OPEN) {
+            log.close();
+        }
+    }
+
+    /** Add ITEM (a line or a Barrier) to the queue, waiting for room if
+     *  necessary, and make sure that the writer thread will drain it. */
+    private void put(Object item) {
+        if (_closed) {
+            throw new IllegalStateException("log is closed");
+        }
+        try {
+            _queue.put(item);
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("interrupted while logging");
+        }
+        if (_drainPending.compareAndSet(false, true)) {
+            WRITER.execute(this::drain);
+        }
+    }
+
+    /** Write the items in my queue.  Runs on the writer thread. */
+    private void drain() {
+        _drainPending.set(false);
+        ArrayList<Object> batch = new ArrayList<>();
+        _queue.drainTo(batch);
+        for (Object item : batch) {
+            if (item instanceof Barrier) {
+                flushLines();
+                ((Barrier) item).release();
+            } else {
+                _out.println((String) item);
+                _unflushed += 1;
+                if (_unflushed >= GROUP_SIZE) {
+                    flushLines();
+                }
+            }
+        }
+        if (_unflushed > 0 && !_flushPending) {
+            _flushPending = true;
+            WRITER.schedule(() -> {
+                _flushPending = false;
+                if (_unflushed > 0) {
+                    flushLines();
+                }
+            }, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Flush my destination.  Runs on the writer thread. */
+    private void flushLines() {
+        _out.flush();
+        _unflushed = 0;
+    }
+
+    /** A marker placed in the queue by flush(), which is released when
+     *  all preceding lines have been flushed. */
+    private static class Barrier {
+        /** Wait until I am released. */
+        synchronized void await() {
+            while (!_released) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    throw new IllegalStateException("interrupted while "
+                                                    + "flushing log");
+                }
+            }
+        }
+
+        /** Release threads waiting on me. */
+        synchronized void release() {
+            _released = true;
+            notifyAll();
+        }
+
+        /** True once released. */
+        private boolean _released;
+    }
+
+    /** Destination of the log. */
+    private final PrintStream _out;
+    /** Lines (Strings) and Barriers waiting to be written. */
+    private final BlockingQueue<Object> _queue;
+    /** True iff a call of drain has been submitted to WRITER and has not
+     *  yet begun. */
+    private final AtomicBoolean _drainPending = new AtomicBoolean();
+    /** Number of lines written since the last flush.  Used only on the
+     *  writer thread. */
+    private int _unflushed;
+    /** True iff a flush of my destination has been scheduled.  Used only
+     *  on the writer thread. */
+    private boolean _flushPending;
+    /** True once I am closed. */
+    private volatile boolean _closed;
+}
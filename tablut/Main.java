@@ -1,10 +1,17 @@
 package tablut;
 
 import java.util.List;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static tablut.Utils.error;
 
@@ -19,21 +26,94 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --bench --warmup "
+                            + "--protocol --serve={0,1} --daemon={0,1} "
+                            + "--log={0,1} --position={0,1} --nnue={0,1} "
+                            + "--params={0,1} --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--warmup]");
+            System.err.println("                        "
+                               + " [--position=FEN] [--nnue=FILE]");
+            System.err.println("                        "
+                               + " [--params=FILE] [INPUT [OUTPUT]]");
+            System.err.println("       java tablut.Main --bench");
+            System.err.println("       java tablut.Main --serve=PORT"
+                               + " | --serve=unix:PATH [--log=DIR] [--warmup]");
+            System.err.println("       java tablut.Main --daemon=PATH"
+                               + " [--log=DIR]");
+            System.err.println("       java tablut.Main --protocol"
+                               + " [--warmup] [--nnue=FILE]"
+                               + " [--params=FILE]");
             System.exit(1);
         }
 
+        AI ai = new AI();
+        if (options.contains("--nnue")) {
+            try {
+                ai.setNetwork(Network.load(Paths.get(
+                    options.getFirst("--nnue"))));
+            } catch (IOException excp) {
+                System.err.printf("Could not load network: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        if (options.contains("--params")) {
+            try {
+                ai.setParams(EvalParams.load(Paths.get(
+                    options.getFirst("--params"))));
+            } catch (IOException excp) {
+                System.err.printf("Could not load parameters: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--warmup") || options.contains("--daemon")) {
+            Warmup.run(System.err, Warmup.DEFAULT_BUDGET);
+        }
+
+        if (options.contains("--serve")) {
+            serve(options.getFirst("--serve"),
+                  options.contains("--log") ? options.getFirst("--log")
+                  : null, ai);
+        }
+
+        if (options.contains("--daemon")) {
+            serve(Server.UNIX_PREFIX + options.getFirst("--daemon"),
+                  options.contains("--log") ? options.getFirst("--log")
+                  : null, ai);
+        }
+
+        if (options.contains("--protocol")) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(System.in));
+            new Protocol(new Engine(ai), System.out).run(() -> {
+                try {
+                    return in.readLine();
+                } catch (IOException excp) {
+                    return null;
+                }
+            });
+            System.exit(0);
+        }
+
+        if (options.contains("--bench")) {
+            Bench.run(System.out, Bench.DEFAULT_DEPTH);
+            System.exit(0);
+        }
+
+        InputStream input = System.in;
+        PrintStream output = System.out;
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
-                System.setIn(new FileInputStream(files.get(0)));
+                input = new FileInputStream(files.get(0));
                 if (files.size() > 1) {
                     FileOutputStream out = new FileOutputStream(files.get(1));
-                    System.setOut(new PrintStream(out, true));
+                    output = new PrintStream(out, true);
                 }
             } catch (IOException excp) {
                 System.err.printf("Could not open file: %s%n",
@@ -48,14 +128,24 @@ public class Main {
             }
         }
 
-        Controller control = getController(options);
-        System.out.println("Tablut 61B, staff version 1.0");
+        Controller control = getController(options, input, output, ai);
+        if (options.contains("--position")) {
+            try {
+                control.setStartPosition(options.getFirst("--position"));
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+        output.println("Tablut 61B, staff version 1.0");
 
         try {
             control.play();
             if (!options.contains("--display")) {
                 System.exit(0);
             }
+        } catch (IllegalArgumentException excp) {
+            System.exit(1);
         } catch (IllegalStateException excp) {
             System.err.printf("Internal error: %s%n", excp.getMessage());
             System.exit(1);
@@ -63,40 +153,54 @@ public class Main {
 
     }
 
-    /** Return an appropriate Controller as indicated by OPTIONS. */
-    private static Controller getController(CommandArgs options) {
-        Player manualPlayer;
-        GUI gui;
-        PrintStream log;
-        View view;
-        Reporter reporter;
-
-        if (options.contains("--display")) {
-            gui = new GUI("Tablut 61B");
-            reporter = gui;
-            gui.display(true);
-            view = gui;
-        } else {
-            gui = null;
-            reporter = new TextReporter();
-            view = new NullView();
-        }
-        if (!options.contains("--testing") && options.contains("--display")) {
-            manualPlayer = new GUIPlayer(gui);
-        } else {
-            manualPlayer = new TextPlayer();
+    /** Run a server for many simultaneous games at ADDRESS (see
+     *  Server.address) until killed, logging each session in directory
+     *  LOGDIR, unless it is null, with AI players copied from AI. */
+    private static void serve(String address, String logDir, AI ai) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            Server server = new Server(ai, threads);
+            if (logDir != null) {
+                Path dir = Paths.get(logDir);
+                Files.createDirectories(dir);
+                server.setLogDirectory(dir);
+            }
+            server.serve(Server.address(address), System.err);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not run server: %s%n",
+                              excp.getMessage());
+            System.exit(1);
         }
+        System.exit(0);
+    }
+
+    /** Return an appropriate Controller as indicated by OPTIONS, reading
+     *  commands from INPUT and writing to OUTPUT, whose AI players are
+     *  copies of AI.  The GUI classes (and Swing) are loaded only with
+     *  --display, through Display. */
+    private static Controller getController(CommandArgs options,
+                                            InputStream input,
+                                            PrintStream output, AI ai) {
+        PrintStream log;
 
         log = null;
         if (options.contains("--log")) {
             try {
-                log = new PrintStream(options.getFirst("--log"));
+                log = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream(options.getFirst("--log"))));
             } catch (IOException excp) {
                 throw error("Could not open log file");
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        if (options.contains("--display")) {
+            return Display.controller(log, !options.contains("--testing"),
+                                      options.contains("--strict"), ai,
+                                      input, output);
+        }
+        return new Controller(new NullView(), log,
+                              new TextReporter(output, System.err),
+                              new TextPlayer(), ai,
+                              options.contains("--strict"), input, output);
     }
 }
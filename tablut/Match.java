@@ -0,0 +1,513 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/** A headless match between two AI configurations, played in-process on a
+ *  pool of threads.  Games are played in pairs from the same randomly
+ *  chosen opening, with colors reversed in the second game of each pair.
+ *  The match ends after a fixed number of games or, earlier, as soon as a
+ *  sequential probability ratio test (SPRT) accepts either the hypothesis
+ *  that the first configuration is ELO0 Elo points stronger than the
+ *  second or that it is ELO1 points stronger.  A match may instead be
+ *  played in any Variant, between VariantAIs searching to the depths of
+ *  the two configurations.
+ *  @author Osvaldo Valadez
+ */
+class Match {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 1000;
+
+    /** Default number of random plies played to vary the openings. */
+    static final int DEFAULT_OPENING_PLIES = 4;
+
+    /** Default move limit for each game. */
+    static final int DEFAULT_MOVE_LIMIT = 200;
+
+    /** Default SPRT hypotheses, in Elo. */
+    static final double DEFAULT_ELO0 = 0, DEFAULT_ELO1 = 10;
+
+    /** False-positive and false-negative rates of the SPRT. */
+    static final double ALPHA = 0.05, BETA = 0.05;
+
+    /** Number of games between progress reports. */
+    static final int REPORT_INTERVAL = 50;
+
+    /** Usage: java tablut.Match [--first=DEPTH] [--second=DEPTH]
+     *  [--games=N] [--threads=N] [--seed=N] [--elo0=E] [--elo1=E]
+     *  [--variant=NAME | --archive=FILE].
+     *  Plays a match between an AI searching to DEPTH given by
+     *  --first and one searching to the DEPTH given by --second, as
+     *  described by ARGS, and prints the result.  With --variant, the
+     *  match is played in the Variant NAME (see Variant.get).  With
+     *  --archive, the games played are also written to FILE (see
+     *  GameArchive). */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--first={0,1} --second={0,1} --games={0,1} "
+                            + "--threads={0,1} --seed={0,1} "
+                            + "--elo0={0,1} --elo1={0,1} --archive={0,1} "
+                            + "--variant={0,1}",
+                            args);
+        if (!options.ok()) {
+            usage();
+        }
+        Match match;
+        try {
+            match = new Match(new AI(intOption(options, "--first",
+                                               AI.DEFAULT_DEPTH)),
+                              new AI(intOption(options, "--second",
+                                               AI.DEFAULT_DEPTH)));
+            match.setGames(intOption(options, "--games", DEFAULT_GAMES));
+            match.setThreads(intOption(options, "--threads",
+                                       Runtime.getRuntime()
+                                       .availableProcessors()));
+            match.setSeed(intOption(options, "--seed", 0));
+            match.setHypotheses(doubleOption(options, "--elo0",
+                                             DEFAULT_ELO0),
+                                doubleOption(options, "--elo1",
+                                             DEFAULT_ELO1));
+            if (options.contains("--variant")) {
+                match.setVariant(Variant.get(options.getFirst("--variant")));
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+            return;
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        try {
+            if (options.contains("--archive")) {
+                match.setArchive(new GameArchive.Writer(
+                    Paths.get(options.getFirst("--archive"))));
+            }
+            match.run(System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.Match [--first=DEPTH]"
+                           + " [--second=DEPTH] [--games=N] [--threads=N]"
+                           + " [--seed=N] [--elo0=E] [--elo1=E]"
+                           + " [--variant=NAME | --archive=FILE]");
+        System.exit(1);
+    }
+
+    /** Return the integer value of option NAME in OPTIONS, or DFLT if
+     *  absent. */
+    private static int intOption(CommandArgs options, String name, int dflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : dflt;
+    }
+
+    /** Return the numeric value of option NAME in OPTIONS, or DFLT if
+     *  absent. */
+    private static double doubleOption(CommandArgs options, String name,
+                                       double dflt) {
+        return options.contains(name)
+            ? Double.parseDouble(options.getFirst(name)) : dflt;
+    }
+
+    /** A match between players made from the templates FIRST and
+     *  SECOND. */
+    Match(AI first, AI second) {
+        _first = first;
+        _second = second;
+        _games = DEFAULT_GAMES;
+        _threads = Runtime.getRuntime().availableProcessors();
+        _openingPlies = DEFAULT_OPENING_PLIES;
+        _moveLimit = DEFAULT_MOVE_LIMIT;
+        setHypotheses(DEFAULT_ELO0, DEFAULT_ELO1);
+    }
+
+    /** Play at most GAMES games (rounded up to an even number). */
+    void setGames(int games) {
+        _games = games + (games & 1);
+    }
+
+    /** Play games on THREADS threads. */
+    void setThreads(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Use SEED to choose the openings. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Test the hypothesis that the first player is ELO0 Elo points
+     *  stronger than the second against the hypothesis that it is ELO1
+     *  points stronger. */
+    void setHypotheses(double elo0, double elo1) {
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Write each finished game to ARCHIVE, which is closed at the end of
+     *  the match.  Games of a Variant cannot be archived. */
+    void setArchive(GameArchive.Writer archive) {
+        _archive = archive;
+        _archiveClosed = false;
+    }
+
+    /** Play the games in VARIANT, or with Board's rules if it is null.
+     *  The players are then VariantAIs searching to the depths of my
+     *  two templates. */
+    void setVariant(Variant variant) {
+        _variant = variant;
+    }
+
+    /** Play the match, reporting progress and the result on OUT, and
+     *  return the result.  Throws IOException if a game cannot be
+     *  archived.  A match may be run again, but since its archive is
+     *  closed at the end of each run, it must first be given a new one
+     *  (if it had one). */
+    Result run(PrintStream out) throws IOException {
+        if (_variant != null && _archive != null) {
+            throw Utils.error("games of a variant cannot be archived");
+        }
+        if (_archiveClosed) {
+            throw new IllegalStateException("match archive already closed");
+        }
+        _stopped = false;
+        Result result = new Result(_elo0, _elo1);
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread th = new Thread(r, "match");
+            th.setDaemon(true);
+            return th;
+        });
+        CompletionService<Piece> done = new ExecutorCompletionService<>(pool);
+        int submitted, finished;
+        submitted = finished = 0;
+        try {
+            while (finished < submitted || submitted < _games) {
+                while (submitted < _games && !result.decided()
+                       && submitted - finished < 2 * _threads) {
+                    submitGame(done, submitted);
+                    submitted += 1;
+                }
+                if (finished == submitted) {
+                    break;
+                }
+                Piece winner = done.take().get();
+                finished += 1;
+                if (winner != null) {
+                    result.add(winner);
+                    if (result.games() % REPORT_INTERVAL == 0) {
+                        out.println(result);
+                    }
+                }
+                if (result.decided()) {
+                    _stopped = true;
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            _stopped = true;
+            pool.shutdownNow();
+            if (_archive != null) {
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                }
+                _archiveClosed = true;
+                _archive.close();
+            }
+        }
+        out.println(result);
+        out.printf("Result: %s%n", result.verdict());
+        return result;
+    }
+
+    /** Submit game number GAME to DONE.  The game's winner is reported
+     *  from the point of view of the first player: WHITE if it won,
+     *  BLACK if it lost, or null if the game was abandoned. */
+    private void submitGame(CompletionService<Piece> done, int game) {
+        boolean firstIsWhite = firstIsWhite(game);
+        if (_variant != null) {
+            int[] opening = variantOpening(_seed + game / 2);
+            VariantAI first = new VariantAI(_first.depth()),
+                second = new VariantAI(_second.depth());
+            done.submit(() -> {
+                Piece winner =
+                    playVariant(opening, firstIsWhite ? first : second,
+                                firstIsWhite ? second : first, _moveLimit);
+                if (winner == null) {
+                    return null;
+                }
+                return (winner == WHITE) == firstIsWhite ? WHITE : BLACK;
+            });
+            return;
+        }
+        List<Move> opening = gameOpening(game);
+        done.submit(() -> {
+            AI white = firstIsWhite ? _first.copy() : _second.copy(),
+                black = firstIsWhite ? _second.copy() : _first.copy();
+            ArrayList<Move> moves = new ArrayList<>();
+            Piece winner = play(opening, white, black, _moveLimit, moves);
+            if (winner == null) {
+                return null;
+            }
+            if (_archive != null) {
+                _archive.write(new GameRecord(null, _moveLimit, moves,
+                                              winner));
+            }
+            return (winner == WHITE) == firstIsWhite ? WHITE : BLACK;
+        });
+    }
+
+    /** Return the opening of game number GAME.  Games are played in
+     *  pairs, 2k and 2k+1, from the same opening. */
+    List<Move> gameOpening(int game) {
+        return opening(_seed + game / 2);
+    }
+
+    /** Return true iff the first player is White in game number GAME.
+     *  The players swap colors within each pair of games. */
+    static boolean firstIsWhite(int game) {
+        return (game & 1) == 0;
+    }
+
+    /** Return a random opening of _openingPlies plies chosen using
+     *  SEED. */
+    List<Move> opening(long seed) {
+        Random random = new Random(seed);
+        Board board = new Board();
+        ArrayList<Move> result = new ArrayList<>();
+        while (result.size() < _openingPlies && board.winner() == null) {
+            List<Move> moves = board.legalMoves(board.turn());
+            if (moves.isEmpty()) {
+                break;
+            }
+            Move move = moves.get(random.nextInt(moves.size()));
+            board.makeMove(move);
+            result.add(move);
+        }
+        return result;
+    }
+
+    /** Play a game on a new Board, starting with the moves in OPENING and
+     *  continuing with WHITE and BLACK choosing moves, and return the
+     *  winner, or null if the match was stopped first.  MOVELIMIT is as
+     *  for Board.setMoveLimit. */
+    Piece play(List<Move> opening, AI white, AI black, int moveLimit) {
+        return play(opening, white, black, moveLimit, new ArrayList<>());
+    }
+
+    /** As for play(OPENING, WHITE, BLACK, MOVELIMIT), also adding all
+     *  the moves of the game, including OPENING, to MOVES. */
+    Piece play(List<Move> opening, AI white, AI black, int moveLimit,
+               List<Move> moves) {
+        Board board = new Board();
+        board.setMoveLimit(moveLimit);
+        for (Move move : opening) {
+            board.makeMove(move);
+            moves.add(move);
+        }
+        while (board.winner() == null) {
+            if (_stopped) {
+                return null;
+            }
+            if (!board.hasMove(board.turn())) {
+                return board.turn().opponent();
+            }
+            AI player = board.turn() == WHITE ? white : black;
+            Move move = player.findMove(board, player.depth());
+            board.makeMove(move);
+            moves.add(move);
+        }
+        return board.winner();
+    }
+
+    /** Return a random opening of _openingPlies plies in my variant
+     *  chosen using SEED, as moves in the sense of VariantBoard.move. */
+    int[] variantOpening(long seed) {
+        Random random = new Random(seed);
+        VariantBoard board = new VariantBoard(_variant);
+        int[] moves = new int[board.maxMoves()];
+        int[] result = new int[_openingPlies];
+        int plies;
+        for (plies = 0; plies < _openingPlies; plies += 1) {
+            int n = board.legalMoves(moves);
+            if (n == 0) {
+                break;
+            }
+            result[plies] = moves[random.nextInt(n)];
+            board.makeMove(result[plies]);
+        }
+        return Arrays.copyOf(result, plies);
+    }
+
+    /** Play a game of my variant on a new VariantBoard, starting with the
+     *  moves in OPENING and continuing with WHITE and BLACK choosing
+     *  moves, and return the winner, or null if the match was stopped
+     *  first.  A side with no legal moves loses.  As on a Board, once
+     *  more than MOVELIMIT moves have been made, the side to move wins. */
+    Piece playVariant(int[] opening, VariantAI white, VariantAI black,
+                      int moveLimit) {
+        VariantBoard board = new VariantBoard(_variant);
+        int[] moves = new int[board.maxMoves()];
+        int count;
+        for (count = 0; count < opening.length; count += 1) {
+            board.makeMove(opening[count]);
+        }
+        while (board.winner() == Variant.EMPTY_CELL) {
+            if (_stopped) {
+                return null;
+            }
+            boolean whiteToMove = board.turn() == Variant.WHITE_CELL;
+            if (moveLimit != 0 && count > moveLimit) {
+                return whiteToMove ? WHITE : BLACK;
+            }
+            if (board.legalMoves(moves) == 0) {
+                return whiteToMove ? BLACK : WHITE;
+            }
+            board.makeMove((whiteToMove ? white : black).findMove(board));
+            count += 1;
+        }
+        return board.winner() == Variant.WHITE_CELL ? WHITE : BLACK;
+    }
+
+    /** The cumulative result of a match, with the state of its SPRT. */
+    static class Result {
+
+        /** An empty result for an SPRT of ELO0 against ELO1. */
+        Result(double elo0, double elo1) {
+            double p0 = expectedScore(elo0), p1 = expectedScore(elo1);
+            _winWeight = Math.log(p1 / p0);
+            _lossWeight = Math.log((1 - p1) / (1 - p0));
+            _lower = Math.log(BETA / (1 - ALPHA));
+            _upper = Math.log((1 - BETA) / ALPHA);
+        }
+
+        /** Return the expected score of a player ELO points stronger
+         *  than its opponent. */
+        static double expectedScore(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        /** Record a game won by WINNER (WHITE for the first player). */
+        void add(Piece winner) {
+            if (winner == WHITE) {
+                _wins += 1;
+                _llr += _winWeight;
+            } else {
+                _losses += 1;
+                _llr += _lossWeight;
+            }
+        }
+
+        /** Return the number of games recorded. */
+        int games() {
+            return _wins + _losses;
+        }
+
+        /** Return the number of games won by the first player. */
+        int wins() {
+            return _wins;
+        }
+
+        /** Return the number of games lost by the first player. */
+        int losses() {
+            return _losses;
+        }
+
+        /** Return the log-likelihood ratio of the hypotheses. */
+        double llr() {
+            return _llr;
+        }
+
+        /** Return true iff the SPRT has accepted one of its hypotheses. */
+        boolean decided() {
+            return _llr <= _lower || _llr >= _upper;
+        }
+
+        /** Return a description of the SPRT's outcome. */
+        String verdict() {
+            if (_llr >= _upper) {
+                return "H1 accepted (first player is stronger)";
+            } else if (_llr <= _lower) {
+                return "H0 accepted (first player is not stronger)";
+            } else {
+                return "inconclusive";
+            }
+        }
+
+        /** Return the estimated Elo difference between the players. */
+        double elo() {
+            double score = (_wins + 0.5) / (games() + 1.0);
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Games: %d  Wins: %d  Losses: %d  "
+                                 + "Elo: %+.1f  LLR: %.2f [%.2f, %.2f]",
+                                 games(), _wins, _losses, elo(), _llr,
+                                 _lower, _upper);
+        }
+
+        /** Games won and lost by the first player. */
+        private int _wins, _losses;
+        /** Current log-likelihood ratio. */
+        private double _llr;
+        /** Change in _llr for each win and loss. */
+        private final double _winWeight, _lossWeight;
+        /** Bounds on _llr at which the test stops. */
+        private final double _lower, _upper;
+    }
+
+    /** Templates for the two players. */
+    private final AI _first, _second;
+    /** Maximum number of games. */
+    private int _games;
+    /** Number of threads. */
+    private int _threads;
+    /** Seed for choosing openings. */
+    private long _seed;
+    /** Number of random plies at the start of each game. */
+    private int _openingPlies;
+    /** Move limit for each game. */
+    private int _moveLimit;
+    /** SPRT hypotheses. */
+    private double _elo0, _elo1;
+    /** Destination of finished games, or null if they are not
+     *  archived. */
+    private GameArchive.Writer _archive;
+    /** True iff _archive was closed by an earlier run. */
+    private boolean _archiveClosed;
+    /** The variant played, or null for Board's rules. */
+    private Variant _variant;
+    /** Set when remaining games should be abandoned. */
+    private volatile boolean _stopped;
+}
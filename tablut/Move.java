@@ -3,8 +3,8 @@ package tablut;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
+import static tablut.Board.SIZE;
 import static tablut.Square.sq;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
@@ -23,7 +23,8 @@ final class Move {
      *  or CR-R (vertical moves), where C is a column letter (a-i or A-I) and
      *  R is a row number (1-9). */
     static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
+        Pattern.compile("(([a-i])([1-9]))-(?:([a-i])|([1-9]))",
+                        Pattern.CASE_INSENSITIVE);
 
     /** Return the square moved from. */
     Square from() {
@@ -38,37 +39,64 @@ final class Move {
     /** Return the unique Move FROM-TO, or null if this is not a valid
      *  move. */
     static Move mv(Square from, Square to) {
-        if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
-            return null;
-        }
-
-        if (MOVES[from.index()][to.index()] == null) {
-            MOVES[from.index()][to.index()] = new Move(from, to);
-        }
         return MOVES[from.index()][to.index()];
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
+        return mv(str, 0, str.length());
+    }
+
+    /** Return the Move denoted by characters START .. END-1 of STR, if
+     *  they denote a move with valid syntax (as for MOVE_PATTERN), and
+     *  null otherwise.  Allocates nothing. */
+    static Move mv(CharSequence str, int start, int end) {
+        if (end - start != 4 || str.charAt(start + 2) != '-') {
+            return null;
+        }
+        int col0 = column(str.charAt(start)),
+            row0 = row(str.charAt(start + 1));
+        char last = str.charAt(start + 3);
+        int col1 = column(last), row1 = row(last);
+        if (col0 < 0 || row0 < 0) {
+            return null;
+        } else if (col1 >= 0) {
+            return mv(sq(col0, row0), sq(col1, row0));
+        } else if (row1 >= 0) {
+            return mv(sq(col0, row0), sq(col0, row1));
+        } else {
+            return null;
         }
-        return null;
     }
 
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return isGrammaticalMove(str, 0, str.length());
+    }
+
+    /** Return true iff characters START .. END-1 of STR have the right
+     *  format for a Move (which may still be a null move, such as
+     *  a1-a). */
+    static boolean isGrammaticalMove(CharSequence str, int start, int end) {
+        return end - start == 4 && str.charAt(start + 2) == '-'
+            && column(str.charAt(start)) >= 0 && row(str.charAt(start + 1)) >= 0
+            && (column(str.charAt(start + 3)) >= 0
+                || row(str.charAt(start + 3)) >= 0);
+    }
+
+    /** Return the column number denoted by C (a-i or A-I), or -1 if it
+     *  denotes none. */
+    private static int column(char c) {
+        int col = (c | 0x20) - 'a';
+        return col >= 0 && col < SIZE ? col : -1;
+    }
+
+    /** Return the row number denoted by C (1-9), or -1 if it denotes
+     *  none. */
+    private static int row(char c) {
+        int row = c - '1';
+        return row >= 0 && row < SIZE ? row : -1;
     }
 
     @Override
@@ -92,11 +120,11 @@ final class Move {
     /** Construct the Move FROM-TO. */
     Move(Square from, Square to) {
         _from = from; _to = to;
-        if (_from.col() == _to.col()) {
-            _str = String.format("%s-%c", from, (char) to.row() + '1');
-        } else {
-            _str = String.format("%s-%c", from, (char) to.col() + 'a');
-        }
+        String start = from.toString();
+        char end = _from.col() == _to.col() ? (char) ('1' + to.row())
+            : (char) ('a' + to.col());
+        _str = new String(new char[] { start.charAt(0), start.charAt(1),
+                                       '-', end });
     }
 
     @Override
@@ -109,9 +137,21 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
-    /** The cache of all Moves created. */
+    /** The cache of all Moves created.  It is filled in completely when
+     *  this class is initialized, so that mv may be used concurrently from
+     *  several threads and still return unique Moves. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
+    static {
+        for (Square from : SQUARE_LIST) {
+            for (Square to : SQUARE_LIST) {
+                if (from.isRookMove(to)) {
+                    MOVES[from.index()][to.index()] = new Move(from, to);
+                }
+            }
+        }
+    }
+
     /** ROOK_MOVES[i][d] is a list of all rook moves in direction
      *  d from the square with index i. Direction displacements are defined
      *  as in Square. Lists are in order of increasing distance from
@@ -135,6 +175,4 @@ final class Move {
     private final Square _from, _to;
     /** The printed form of this Move. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
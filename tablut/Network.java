@@ -0,0 +1,250 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.error;
+
+/** A small neural network for evaluating positions, in the style of an
+ *  "efficiently updatable" network (NNUE).  Its inputs are FEATURES
+ *  binary features, one for each kind of piece (white, black, king) on
+ *  each square.  Its one hidden layer has hidden() units, whose inputs
+ *  (the accumulator) are each a bias plus the sum of the weights of the
+ *  features present.  Since a move changes only a few features, an
+ *  Accumulator attached to a Board keeps these sums up to date as pieces
+ *  move, are captured, and are restored by undo, at a cost proportional
+ *  to the number of squares changed.  The output is the sum of the
+ *  hidden units, each clipped to [0, clip()], times their output
+ *  weights, plus an output bias, shifted right by shift().  It is a
+ *  value for White (larger is better for White), like AI.staticScore.
+ *  All weights are quantized to 16-bit integers, and all arithmetic is
+ *  on integers.  Networks are immutable.
+ *  <p>
+ *  A network file is the 4 bytes MAGIC, followed by the number of hidden
+ *  units, the clip and shift values, and the output bias (4 bytes each),
+ *  then the hidden biases, the feature weights (hidden() weights for
+ *  each feature, in feature order), and the output weights (2 bytes
+ *  each).  All quantities are signed and big-endian.
+ *  @author Osvaldo Valadez
+ */
+final class Network {
+
+    /** The first bytes of a network file ("TNN1"). */
+    static final int MAGIC = 0x544e4e31;
+
+    /** Number of input features. */
+    static final int FEATURES = 3 * NUM_SQUARES;
+
+    /** Largest permitted number of hidden units. */
+    static final int MAX_HIDDEN = 4096;
+
+    /** Largest magnitude of an output, well clear of the values the search
+     *  uses for wins. */
+    static final int MAX_SCORE = 1_000_000;
+
+    /** Return the index of the feature for PIECE (not EMPTY) on the square
+     *  with index INDEX. */
+    static int feature(Piece piece, int index) {
+        return (piece.ordinal() - WHITE.ordinal()) * NUM_SQUARES + index;
+    }
+
+    /** A network with HIDDEN hidden units, whose activations are clipped to
+     *  CLIP and whose output is shifted right by SHIFT, with hidden biases
+     *  BIASES, feature weights WEIGHTS (HIDDEN per feature, in feature
+     *  order), output weights OUTPUTWEIGHTS, and output bias OUTPUTBIAS.
+     *  The arrays are copied. */
+    Network(int hidden, int clip, int shift, short[] biases,
+            short[] weights, short[] outputWeights, int outputBias) {
+        if (hidden < 1 || hidden > MAX_HIDDEN || clip < 1 || shift < 0
+            || shift > Integer.SIZE - 1 || biases.length != hidden
+            || weights.length != FEATURES * hidden
+            || outputWeights.length != hidden) {
+            throw error("bad network dimensions");
+        }
+        _hidden = hidden;
+        _clip = clip;
+        _shift = shift;
+        _biases = biases.clone();
+        _weights = weights.clone();
+        _outputWeights = outputWeights.clone();
+        _outputBias = outputBias;
+    }
+
+    /** Return the network in FILE. */
+    static Network load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("not a network: %s",
+                                                    file));
+            }
+            int hidden = in.readInt();
+            if (hidden < 1 || hidden > MAX_HIDDEN) {
+                throw new IOException(String.format("bad network: %s",
+                                                    file));
+            }
+            int clip = in.readInt(), shift = in.readInt(),
+                outputBias = in.readInt();
+            short[] biases = readShorts(in, hidden);
+            short[] weights = readShorts(in, FEATURES * hidden);
+            short[] outputWeights = readShorts(in, hidden);
+            if (in.read() != -1) {
+                throw new IOException(String.format("bad network: %s",
+                                                    file));
+            }
+            return new Network(hidden, clip, shift, biases, weights,
+                               outputWeights, outputBias);
+        } catch (EOFException | IllegalArgumentException excp) {
+            throw new IOException(String.format("bad network: %s", file));
+        }
+    }
+
+    /** Write me to FILE, in the format read by load. */
+    void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_hidden);
+            out.writeInt(_clip);
+            out.writeInt(_shift);
+            out.writeInt(_outputBias);
+            writeShorts(out, _biases);
+            writeShorts(out, _weights);
+            writeShorts(out, _outputWeights);
+        }
+    }
+
+    /** Return the number of hidden units. */
+    int hidden() {
+        return _hidden;
+    }
+
+    /** Return the value at which hidden units are clipped. */
+    int clip() {
+        return _clip;
+    }
+
+    /** Return the right shift applied to the output. */
+    int shift() {
+        return _shift;
+    }
+
+    /** Return the output bias. */
+    int outputBias() {
+        return _outputBias;
+    }
+
+    /** Return a copy of the hidden-unit biases. */
+    short[] biases() {
+        return _biases.clone();
+    }
+
+    /** Return a copy of the feature weights (hidden() per feature, in
+     *  feature order). */
+    short[] weights() {
+        return _weights.clone();
+    }
+
+    /** Return a copy of the output weights. */
+    short[] outputWeights() {
+        return _outputWeights.clone();
+    }
+
+    /** Set ACCUMULATOR to the hidden-unit inputs for the position on
+     *  BOARD. */
+    void refresh(int[] accumulator, Board board) {
+        clear(accumulator);
+        for (int index = 0; index < NUM_SQUARES; index += 1) {
+            Piece piece = board.get(index % Board.SIZE, index / Board.SIZE);
+            if (piece != EMPTY) {
+                add(accumulator, feature(piece, index), 1);
+            }
+        }
+    }
+
+    /** Set ACCUMULATOR to the hidden-unit inputs for an empty board (the
+     *  biases). */
+    void clear(int[] accumulator) {
+        for (int h = 0; h < _hidden; h += 1) {
+            accumulator[h] = _biases[h];
+        }
+    }
+
+    /** Add SIGN (1 or -1) times the weights of FEATURE to ACCUMULATOR. */
+    void add(int[] accumulator, int feature, int sign) {
+        short[] weights = _weights;
+        int base = feature * _hidden;
+        if (sign > 0) {
+            for (int h = 0; h < _hidden; h += 1) {
+                accumulator[h] += weights[base + h];
+            }
+        } else {
+            for (int h = 0; h < _hidden; h += 1) {
+                accumulator[h] -= weights[base + h];
+            }
+        }
+    }
+
+    /** Return my output for the hidden-unit inputs ACCUMULATOR. */
+    int evaluate(int[] accumulator) {
+        int clip = _clip;
+        long sum = _outputBias;
+        for (int h = 0; h < _hidden; h += 1) {
+            int x = accumulator[h];
+            x = x < 0 ? 0 : x > clip ? clip : x;
+            sum += (long) x * _outputWeights[h];
+        }
+        sum >>= _shift;
+        return (int) Math.max(-MAX_SCORE, Math.min(MAX_SCORE, sum));
+    }
+
+    /** Return my output for the position on BOARD, computed from
+     *  scratch. */
+    int evaluate(Board board) {
+        int[] accumulator = new int[_hidden];
+        refresh(accumulator, board);
+        return evaluate(accumulator);
+    }
+
+    /** Return an array of N shorts read from IN. */
+    private static short[] readShorts(DataInputStream in, int n)
+        throws IOException {
+        short[] result = new short[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = in.readShort();
+        }
+        return result;
+    }
+
+    /** Write the elements of DATA to OUT. */
+    private static void writeShorts(DataOutputStream out, short[] data)
+        throws IOException {
+        for (short x : data) {
+            out.writeShort(x);
+        }
+    }
+
+    /** Number of hidden units. */
+    private final int _hidden;
+    /** Clipping value of hidden units. */
+    private final int _clip;
+    /** Right shift of the output. */
+    private final int _shift;
+    /** Hidden-unit biases. */
+    private final short[] _biases;
+    /** Feature weights: _weights[f * _hidden + h] is the weight of feature
+     *  f in hidden unit h. */
+    private final short[] _weights;
+    /** Output weights of the hidden units. */
+    private final short[] _outputWeights;
+    /** Output bias. */
+    private final int _outputBias;
+}
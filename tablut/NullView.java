@@ -1,11 +1,18 @@
 package tablut;
 
+import java.util.function.Consumer;
+
 /** A View that does nothing.
  *  @author P. N. Hilfinger
  */
 class NullView implements View {
 
     @Override
-    public void update(Controller controller) {
+    public void update(ViewEvent event) {
+    }
+
+    @Override
+    public Consumer<SearchProgress> searchMonitor() {
+        return null;
     }
 }
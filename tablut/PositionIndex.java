@@ -0,0 +1,677 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static java.nio.file.StandardOpenOption.*;
+import static tablut.Piece.*;
+
+/** An on-disk index from positions (by Board.hash()) to the games in
+ *  which they occur, built from game archives (see GameArchive).
+ *  <p>
+ *  The index is a directory of segments, each a file of entries sorted
+ *  by hash.  An entry is a position's hash (8 bytes) and a long
+ *  containing the number of the game in which it occurred (numbering all
+ *  games ever added from 0), the ply at which it occurred (0 for the
+ *  starting position), and the game's result (0 for none, 1 if White
+ *  won, 2 if Black won).  New entries accumulate in memory until there
+ *  are SEGMENT_ENTRIES of them, and are then sorted and written as a new
+ *  segment.  Whenever there are more than MAX_SEGMENTS segments, they are
+ *  merged into one; the meta file then records that older segments are
+ *  obsolete, so that they are ignored (and deleted when possible) even if
+ *  deleting them at once fails.  Segments are memory-mapped, so that
+ *  looking up a position is a binary search in each segment that touches
+ *  only a few pages, and the index need not fit in the heap.  An index
+ *  may be opened read-only, in which case nothing on disk is changed.
+ *  @author Osvaldo Valadez
+ */
+class PositionIndex implements AutoCloseable {
+
+    /** Number of entries buffered in memory before being written as a
+     *  segment. */
+    static final int SEGMENT_ENTRIES = 1 << 20;
+
+    /** Maximum number of segments before they are merged. */
+    static final int MAX_SEGMENTS = 8;
+
+    /** The first bytes of a segment ("TBLX"). */
+    static final int MAGIC = 0x54424c58;
+
+    /** Size of a segment's header: MAGIC, 4 unused bytes, and the number
+     *  of entries. */
+    static final int HEADER_SIZE = 16;
+
+    /** Size of an entry. */
+    static final int ENTRY_SIZE = 16;
+
+    /** Beginning and ending of the names of segment files, around the
+     *  segment's number. */
+    static final String SEGMENT_PREFIX = "segment-", SEGMENT_SUFFIX = ".idx";
+
+    /** Name of the file recording the number of games and segments. */
+    static final String META_FILE = "index.properties";
+
+    /** Usage: java tablut.PositionIndex DIR add ARCHIVE ...
+     *         java tablut.PositionIndex DIR merge
+     *         java tablut.PositionIndex DIR lookup [MOVE ...]
+     *  Adds the games in the archives ARCHIVE ... to the index in DIR
+     *  (creating it if needed), merges its segments into one, or prints
+     *  statistics for the position reached from the initial position by
+     *  MOVE ..., as directed by ARGS.  Merging and lookup require an
+     *  existing index. */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            usage();
+        }
+        Path dir = Paths.get(args[0]);
+        try (PositionIndex index =
+             args[1].equals("add") ? new PositionIndex(dir)
+             : open(dir, args[1].equals("lookup"))) {
+            switch (args[1]) {
+            case "add":
+                for (int i = 2; i < args.length; i += 1) {
+                    index.addArchive(Paths.get(args[i]));
+                }
+                index.flush();
+                System.out.printf("%d games indexed%n", index.games());
+                break;
+            case "merge":
+                index.merge();
+                break;
+            case "lookup":
+                Board board = new Board();
+                for (int i = 2; i < args.length; i += 1) {
+                    Move move = Move.mv(args[i]);
+                    if (move == null || !board.isLegal(move.from())
+                        || !board.isLegal(move)) {
+                        throw Utils.error("illegal move: %s", args[i]);
+                    }
+                    board.makeMove(move);
+                }
+                long start = System.nanoTime();
+                Stats stats = index.lookup(board.hash());
+                long micros = (System.nanoTime() - start) / 1000;
+                System.out.printf("%s  (%d us)%n", stats, micros);
+                break;
+            default:
+                usage();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.PositionIndex DIR add"
+                           + " ARCHIVE ...");
+        System.err.println("       java tablut.PositionIndex DIR merge");
+        System.err.println("       java tablut.PositionIndex DIR lookup"
+                           + " [MOVE ...]");
+        System.exit(1);
+    }
+
+    /** The index in directory DIR, which is created if necessary, opened
+     *  for reading and writing. */
+    PositionIndex(Path dir) throws IOException {
+        this(dir, false, false);
+    }
+
+    /** Return the existing index in directory DIR, opened read-only iff
+     *  READONLY.  Throws IOException if DIR holds no index. */
+    static PositionIndex open(Path dir, boolean readOnly) throws IOException {
+        return new PositionIndex(dir, true, readOnly);
+    }
+
+    /** The index in directory DIR, opened read-only iff READONLY.  If
+     *  MUSTEXIST, DIR must already hold an index; otherwise, it is
+     *  created if necessary. */
+    private PositionIndex(Path dir, boolean mustExist, boolean readOnly)
+        throws IOException {
+        _dir = dir;
+        _readOnly = readOnly;
+        Path metaFile = dir.resolve(META_FILE);
+        if (mustExist && !Files.exists(metaFile)) {
+            throw new IOException(String.format("no index in %s", dir));
+        }
+        if (!readOnly) {
+            Files.createDirectories(dir);
+        }
+        Properties meta = new Properties();
+        if (Files.exists(metaFile)) {
+            try (InputStream in = Files.newInputStream(metaFile)) {
+                meta.load(in);
+            }
+        } else {
+            _metaChanged = true;
+        }
+        _games = Long.parseLong(meta.getProperty("games", "0"));
+        _segmentCount = Long.parseLong(meta.getProperty("segments", "0"));
+        _firstSegment = Long.parseLong(meta.getProperty("first", "0"));
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+             Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*"
+                                      + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            long number = segmentNumber(file);
+            _segmentCount = Math.max(_segmentCount, number);
+            if (number >= _firstSegment) {
+                _segments.add(new Segment(file));
+            } else if (!readOnly) {
+                deleteObsolete(file);
+            }
+        }
+    }
+
+    /** Return the number of games added to the index. */
+    long games() {
+        return _games;
+    }
+
+    /** Add all games in the archive FILE. */
+    void addArchive(Path file) throws IOException {
+        try (GameArchive.Reader reader = new GameArchive.Reader(file)) {
+            for (GameRecord game = reader.next(); game != null;
+                 game = reader.next()) {
+                add(game);
+            }
+        }
+    }
+
+    /** Add the positions of GAME, replaying its moves. */
+    void add(GameRecord game) throws IOException {
+        checkWritable();
+        long id = _games;
+        _metaChanged = true;
+        _games += 1;
+        int result = game.winner() == WHITE ? 1
+            : game.winner() == BLACK ? 2 : 0;
+        Board board = game.start();
+        addEntry(board.hash(), entry(id, 0, result));
+        int ply;
+        ply = 0;
+        for (Move move : game.moves()) {
+            board.makeMove(move);
+            ply += 1;
+            addEntry(board.hash(), entry(id, ply, result));
+        }
+    }
+
+    /** Write any entries held in memory to a new segment, merging
+     *  segments if there are too many, and record the state of the index
+     *  on disk if it has changed.  Does nothing if I am read-only. */
+    void flush() throws IOException {
+        if (_readOnly) {
+            return;
+        }
+        if (_size > 0) {
+            sort(_hashes, _data, 0, _size - 1);
+            Path file = segmentFile();
+            try (SegmentWriter out = new SegmentWriter(file)) {
+                for (int i = 0; i < _size; i += 1) {
+                    out.add(_hashes[i], _data[i]);
+                }
+            }
+            _size = 0;
+            _segments.add(new Segment(file));
+            _metaChanged = true;
+            if (_segments.size() > MAX_SEGMENTS) {
+                merge();
+            }
+        }
+        if (_metaChanged) {
+            saveMeta();
+        }
+    }
+
+    /** Merge all segments into one.  The old segments become obsolete as
+     *  soon as the merged one is recorded in the meta file; they are then
+     *  released and deleted. */
+    void merge() throws IOException {
+        checkWritable();
+        if (_segments.size() <= 1) {
+            return;
+        }
+        Path file = segmentFile();
+        int k = _segments.size();
+        long[] next = new long[k];
+        try (SegmentWriter out = new SegmentWriter(file)) {
+            while (true) {
+                int min = -1;
+                for (int i = 0; i < k; i += 1) {
+                    Segment seg = _segments.get(i);
+                    if (next[i] < seg.size()
+                        && (min < 0 || compare(seg, next[i],
+                                               _segments.get(min),
+                                               next[min]) < 0)) {
+                        min = i;
+                    }
+                }
+                if (min < 0) {
+                    break;
+                }
+                Segment seg = _segments.get(min);
+                out.add(seg.hash(next[min]), seg.data(next[min]));
+                next[min] += 1;
+            }
+        }
+        ArrayList<Segment> obsolete = new ArrayList<>(_segments);
+        _segments.clear();
+        _segments.add(new Segment(file));
+        _firstSegment = _segmentCount;
+        saveMeta();
+        for (Segment seg : obsolete) {
+            seg.release();
+            deleteObsolete(seg.file());
+        }
+    }
+
+    /** Return statistics on the games in which the position with hash
+     *  KEY occurs.  Games added since the last flush are not
+     *  included. */
+    Stats lookup(long key) {
+        Stats result = new Stats();
+        for (Segment seg : _segments) {
+            for (long i = seg.lowerBound(key);
+                 i < seg.size() && seg.hash(i) == key; i += 1) {
+                result.add(seg.data(i));
+            }
+        }
+        return result;
+    }
+
+    /** Flush the index (if it is not read-only). */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /** Statistics on the occurrences of a position. */
+    static class Stats {
+
+        /** Record an occurrence described by the entry data DATA. */
+        void add(long data) {
+            _count += 1;
+            switch ((int) (data & RESULT_MASK)) {
+            case 1:
+                _whiteWins += 1;
+                break;
+            case 2:
+                _blackWins += 1;
+                break;
+            default:
+                break;
+            }
+        }
+
+        /** Return the number of occurrences of the position. */
+        long count() {
+            return _count;
+        }
+
+        /** Return the number of those occurrences in games won by
+         *  White. */
+        long whiteWins() {
+            return _whiteWins;
+        }
+
+        /** Return the number of those occurrences in games won by
+         *  Black. */
+        long blackWins() {
+            return _blackWins;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Occurrences: %d  White wins: %d  "
+                                 + "Black wins: %d  Unfinished: %d",
+                                 _count, _whiteWins, _blackWins,
+                                 _count - _whiteWins - _blackWins);
+        }
+
+        /** Counts of occurrences, in all and by result. */
+        private long _count, _whiteWins, _blackWins;
+    }
+
+    /** Layout of an entry's data: the result in the low 8 bits, then the
+     *  ply (16 bits), then the game number. */
+    private static final int PLY_SHIFT = 8, GAME_SHIFT = 24;
+
+    /** Mask for the result in an entry's data. */
+    private static final long RESULT_MASK = 0xff;
+
+    /** Return the data of an entry for ply PLY of game GAME, with result
+     *  RESULT. */
+    private static long entry(long game, int ply, int result) {
+        return (game << GAME_SHIFT) | ((long) (ply & 0xffff) << PLY_SHIFT)
+            | result;
+    }
+
+    /** Add the entry (HASH, DATA) to those in memory, writing a segment if
+     *  they fill the buffer. */
+    private void addEntry(long hash, long data) throws IOException {
+        if (_hashes == null) {
+            _hashes = new long[SEGMENT_ENTRIES];
+            _data = new long[SEGMENT_ENTRIES];
+        }
+        _hashes[_size] = hash;
+        _data[_size] = data;
+        _size += 1;
+        if (_size == SEGMENT_ENTRIES) {
+            flush();
+        }
+    }
+
+    /** Return the number in the name of the segment FILE. */
+    private static long segmentNumber(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                 name.length()
+                                                 - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException excp) {
+            throw new IOException(String.format("bad segment name: %s",
+                                                file));
+        }
+    }
+
+    /** Return the name of a new segment file, numbered after all those
+     *  recorded in the meta file or present on disk. */
+    private Path segmentFile() {
+        _segmentCount += 1;
+        return _dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX,
+                                          _segmentCount, SEGMENT_SUFFIX));
+    }
+
+    /** Throw IllegalStateException if I am read-only. */
+    private void checkWritable() {
+        if (_readOnly) {
+            throw new IllegalStateException("index is read-only");
+        }
+    }
+
+    /** Delete FILE, an obsolete segment, if possible.  If that fails (as
+     *  it may on systems that do not delete mapped files), FILE is
+     *  deleted when the index is next opened for writing. */
+    private static void deleteObsolete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException excp) {
+            /* Ignored: FILE is obsolete, and so is never used again. */
+            return;
+        }
+    }
+
+    /** Record the number of games and segments, and the number of the
+     *  oldest segment in use, in my meta file. */
+    private void saveMeta() throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("games", Long.toString(_games));
+        meta.setProperty("segments", Long.toString(_segmentCount));
+        meta.setProperty("first", Long.toString(_firstSegment));
+        Path tmp = _dir.resolve(META_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            meta.store(out, "Tablut position index");
+        }
+        Files.move(tmp, _dir.resolve(META_FILE),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        _metaChanged = false;
+    }
+
+    /** Compare entry I of segment S with entry J of segment T, by hash and
+     *  then by data. */
+    private static int compare(Segment s, long i, Segment t, long j) {
+        int c = Long.compare(s.hash(i), t.hash(j));
+        return c != 0 ? c : Long.compare(s.data(i), t.data(j));
+    }
+
+    /** Sort entries LOW .. HIGH of the parallel arrays HASHES and DATA by
+     *  hash, and then by data. */
+    private static void sort(long[] hashes, long[] data, int low, int high) {
+        while (high - low > INSERTION_SORT_SIZE) {
+            int mid = (low + high) >>> 1;
+            long pivotHash = hashes[mid], pivotData = data[mid];
+            int i = low, j = high;
+            while (i <= j) {
+                while (less(hashes[i], data[i], pivotHash, pivotData)) {
+                    i += 1;
+                }
+                while (less(pivotHash, pivotData, hashes[j], data[j])) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(hashes, data, i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - low < high - i) {
+                sort(hashes, data, low, j);
+                low = i;
+            } else {
+                sort(hashes, data, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i += 1) {
+            for (int j = i; j > low && less(hashes[j], data[j],
+                                            hashes[j - 1], data[j - 1]);
+                 j -= 1) {
+                swap(hashes, data, j, j - 1);
+            }
+        }
+    }
+
+    /** Size of ranges sorted by insertion sort. */
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    /** Return true iff entry (H0, D0) precedes entry (H1, D1). */
+    private static boolean less(long h0, long d0, long h1, long d1) {
+        return h0 < h1 || (h0 == h1 && d0 < d1);
+    }
+
+    /** Swap entries I and J of HASHES and DATA. */
+    private static void swap(long[] hashes, long[] data, int i, int j) {
+        long t = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = t;
+        t = data[i];
+        data[i] = data[j];
+        data[j] = t;
+    }
+
+    /** A sorted, memory-mapped file of entries. */
+    private static class Segment {
+
+        /** Size of the pieces in which a segment is mapped (a multiple of
+         *  ENTRY_SIZE, so that no entry spans two pieces). */
+        static final int CHUNK_SIZE = 1 << 30;
+
+        /** The segment in FILE. */
+        Segment(Path file) throws IOException {
+            _file = file;
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                long length = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header) < 0) {
+                        break;
+                    }
+                }
+                header.flip();
+                if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC) {
+                    throw new IOException(String.format("bad segment: %s",
+                                                        file));
+                }
+                header.getInt();
+                _size = header.getLong();
+                if (HEADER_SIZE + _size * ENTRY_SIZE != length) {
+                    throw new IOException(String.format("bad segment: %s",
+                                                        file));
+                }
+                int n = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+                _chunks = new MappedByteBuffer[n];
+                for (int i = 0; i < n; i += 1) {
+                    long start = (long) i * CHUNK_SIZE;
+                    _chunks[i] =
+                        channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                    Math.min(CHUNK_SIZE, length - start));
+                }
+            }
+        }
+
+        /** Return my file. */
+        Path file() {
+            return _file;
+        }
+
+        /** Return my number of entries. */
+        long size() {
+            return _size;
+        }
+
+        /** Return the hash of entry I. */
+        long hash(long i) {
+            return getLong(HEADER_SIZE + i * ENTRY_SIZE);
+        }
+
+        /** Return the data of entry I. */
+        long data(long i) {
+            return getLong(HEADER_SIZE + i * ENTRY_SIZE + Long.BYTES);
+        }
+
+        /** Return the index of my first entry with hash at least KEY (or
+         *  size() if there is none). */
+        long lowerBound(long key) {
+            long low = 0, high = _size;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (hash(mid) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Drop my mappings of my file, which may no longer be read.
+         *  (The mappings themselves are released when they are
+         *  garbage-collected.) */
+        void release() {
+            Arrays.fill(_chunks, null);
+        }
+
+        /** Return the long at byte offset POSN of my file. */
+        private long getLong(long posn) {
+            return _chunks[(int) (posn / CHUNK_SIZE)]
+                .getLong((int) (posn % CHUNK_SIZE));
+        }
+
+        /** My file. */
+        private final Path _file;
+        /** Number of entries. */
+        private final long _size;
+        /** The mapped contents of my file. */
+        private final MappedByteBuffer[] _chunks;
+    }
+
+    /** Writes a new segment, whose entries must be added in order.  The
+     *  segment is written to a temporary file and renamed when complete,
+     *  so that a segment file is never seen partly written. */
+    private static class SegmentWriter implements AutoCloseable {
+
+        /** A writer of the segment FILE. */
+        SegmentWriter(Path file) throws IOException {
+            _file = file;
+            _tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            _channel = FileChannel.open(_tmp, CREATE, WRITE,
+                                        TRUNCATE_EXISTING);
+            _buffer = ByteBuffer.allocateDirect(1 << 20);
+            _buffer.putInt(MAGIC).putInt(0).putLong(0);
+        }
+
+        /** Add the entry (HASH, DATA). */
+        void add(long hash, long data) throws IOException {
+            if (_buffer.remaining() < ENTRY_SIZE) {
+                drain();
+            }
+            _buffer.putLong(hash).putLong(data);
+            _count += 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                ByteBuffer count = ByteBuffer.allocate(Long.BYTES);
+                count.putLong(_count).flip();
+                _channel.write(count, HEADER_SIZE - Long.BYTES);
+                _channel.force(false);
+            } finally {
+                _channel.close();
+            }
+            Files.move(_tmp, _file, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /** Write out my buffer. */
+        private void drain() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** Final and temporary names of my file. */
+        private final Path _file, _tmp;
+        /** The temporary file. */
+        private final FileChannel _channel;
+        /** Bytes waiting to be written. */
+        private final ByteBuffer _buffer;
+        /** Number of entries added. */
+        private long _count;
+    }
+
+    /** Directory holding the index. */
+    private final Path _dir;
+    /** True iff I may not be changed. */
+    private final boolean _readOnly;
+    /** True iff my meta file is out of date. */
+    private boolean _metaChanged;
+    /** Number of the oldest segment in use; older ones are obsolete. */
+    private long _firstSegment;
+    /** Current segments, oldest first. */
+    private final List<Segment> _segments = new ArrayList<>();
+    /** Number of games added. */
+    private long _games;
+    /** Number of segment files ever created (used to name them). */
+    private long _segmentCount;
+    /** Hashes and data of entries not yet written to a segment (null
+     *  until the first is added). */
+    private long[] _hashes, _data;
+    /** Number of entries in _hashes and _data. */
+    private int _size;
+}
@@ -0,0 +1,99 @@
+package tablut;
+
+import static tablut.Square.SQUARE_LIST;
+import static tablut.Utils.*;
+
+/** A curated set of fixed positions, used by the benchmarks to get
+ *  reproducible measurements on typical opening, middlegame, and endgame
+ *  boards.  Positions are written as diagrams in the same format as
+ *  Board.toString(false), with row 9 at the top.
+ *  @author Osvaldo Valadez
+ */
+class Positions {
+
+    /** Names of the positions in the curated set, in order. */
+    static final String[] NAMES = { "opening", "middlegame", "endgame" };
+
+    /** The middlegame position (Black to move). */
+    static final String MIDDLEGAME =
+        "B"
+        + "- - - B - B - - -"
+        + "- - - - B - - - -"
+        + "- - B - W - - - -"
+        + "B - - - - W - B B"
+        + "B - W W K - - - B"
+        + "B - - - W - W - B"
+        + "- - B - W - - - -"
+        + "- - - - B - - - -"
+        + "- - - B B B - - -";
+
+    /** The endgame position (White to move). */
+    static final String ENDGAME =
+        "W"
+        + "- - - - - - - - -"
+        + "- - B - - - - - -"
+        + "- - - - - - B - -"
+        + "- - - W - - - - -"
+        + "- B - - - K - - -"
+        + "- - - - - - - B -"
+        + "- - - B - W - - -"
+        + "- - - - - - - - -"
+        + "- - - - - - - - -";
+
+    /** A position in which Black captures d6 by CAPTURE_MOVE. */
+    static final String CAPTURE =
+        "B"
+        + "- - - B B B - - -"
+        + "- - - - B - - - -"
+        + "- - - - W - - - -"
+        + "- - B W - - - B -"
+        + "B B W - K W W - B"
+        + "B - - - W - - - B"
+        + "- - - - W - - - -"
+        + "- - - - B - - - -"
+        + "- - - B B B - - -";
+
+    /** The capturing move in CAPTURE. */
+    static final String CAPTURE_MOVE = "h6-e";
+
+    /** Return a new Board set to the position named NAME, one of NAMES
+     *  or "capture". */
+    static Board get(String name) {
+        Board board = new Board();
+        switch (name) {
+        case "opening":
+            break;
+        case "middlegame":
+            setUp(board, MIDDLEGAME);
+            break;
+        case "endgame":
+            setUp(board, ENDGAME);
+            break;
+        case "capture":
+            setUp(board, CAPTURE);
+            break;
+        default:
+            throw error("unknown position: %s", name);
+        }
+        return board;
+    }
+
+    /** Set BOARD to the position described by DIAGRAM: the side to move
+     *  ("W" or "B") followed by the contents of the rows from top to
+     *  bottom. */
+    static void setUp(Board board, String diagram) {
+        String cells = diagram.substring(1).replace(" ", "");
+        if (cells.length() != SQUARE_LIST.size()) {
+            throw error("bad diagram");
+        }
+        char[] code = new char[cells.length() + 1];
+        code[0] = diagram.charAt(0);
+        for (Square sq : SQUARE_LIST) {
+            int r = Board.SIZE - 1 - sq.row();
+            code[sq.index() + 1] = cells.charAt(r * Board.SIZE + sq.col());
+        }
+        board.uncodeBoard(new String(code));
+        board.clearUndo();
+    }
+
+}
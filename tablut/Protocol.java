@@ -0,0 +1,325 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static tablut.Utils.*;
+
+/** A line-oriented protocol for driving an Engine from another program,
+ *  modeled on the Universal Chess Interface.  Commands are:
+ *  <pre>
+ *    uci                       Identify; answered by "id" and "option"
+ *                              lines, then "uciok".
+ *    isready                   Answered by "readyok".
+ *    setoption name N value V  Set option N (see OPTIONS) to V.
+ *    ucinewgame                Start a new game, forgetting past searches.
+ *    position startpos [moves M1 M2 ...]
+ *                              Set up the initial position followed by
+ *                              moves M1, M2, ....
+ *    position fen POSITION SIDE [moves M1 M2 ...]
+ *                              Set up the position described by POSITION
+ *                              and SIDE (as for Board.setFen), followed
+ *                              by moves M1, M2, ....
+ *    go [depth D] [nodes N] [movetime MS] [infinite]
+ *                              Search the current position within the
+ *                              given limits (all unlimited by default) in
+ *                              the background.
+ *    stop                      End the current search early.
+ *    quit                      Stop any search and exit.
+ *  </pre>
+ *  During a search, an "info" line is written after each completed
+ *  depth, giving the depth, the rank of the line among those requested by
+ *  the MultiPV option, score (for the side to move), nodes searched,
+ *  nodes per second, table fullness in thousandths, elapsed time in
+ *  milliseconds, and principal variation, e.g.
+ *  <pre>
+ *    info depth 3 multipv 1 score 19 nodes 14691 nps 201246 hashfull 12
+ *        time 73 pv h6-e a5-c e6-f
+ *  </pre>
+ *  (on one line).  With MultiPV set to K, there are K such lines per
+ *  depth, for the best K moves, best first.  They are followed when the
+ *  search ends by "bestmove M" (or "bestmove none" if there is no legal
+ *  move).  Errors are reported as "info string error: MESSAGE".
+ *  @author Osvaldo Valadez
+ */
+class Protocol {
+
+    /** Largest permissible value of the MultiPV option. */
+    static final int MAX_MULTIPV = 256;
+
+    /** Largest permissible value of the Hash option, in megabytes. */
+    static final int MAX_HASH = 4096;
+
+    /** Names of the options settable with setoption, with their default
+     *  and limiting values, as written in response to "uci". */
+    static final String[] OPTIONS = {
+        "option name Hash type spin default " + AI.DEFAULT_HASH_SIZE
+        + " min 1 max " + MAX_HASH,
+        "option name MultiPV type spin default 1 min 1 max " + MAX_MULTIPV,
+        "option name EvalFile type string default <empty>",
+    };
+
+    /** A protocol handler driving ENGINE and writing responses on OUT. */
+    Protocol(Engine engine, PrintStream out) {
+        _engine = engine;
+        _out = out;
+    }
+
+    /** Process commands, one per line, obtained from INPUT (which returns
+     *  null at the end of input) until "quit" or the end of input. */
+    void run(Supplier<String> input) {
+        while (true) {
+            String line = input.get();
+            if (line == null) {
+                break;
+            }
+            try {
+                if (!execute(line)) {
+                    break;
+                }
+            } catch (IllegalArgumentException excp) {
+                send("info string error: %s", excp.getMessage());
+            }
+        }
+        stopSearch();
+    }
+
+    /** Execute the single command LINE, returning false iff it is
+     *  "quit". */
+    boolean execute(String line) {
+        String[] words = words(line);
+        if (words.length == 0) {
+            return true;
+        }
+        switch (words[0]) {
+        case "uci":
+            send("id name Tablut 61B");
+            send("id author Osvaldo Valadez");
+            for (String option : OPTIONS) {
+                send(option);
+            }
+            send("uciok");
+            break;
+        case "isready":
+            send("readyok");
+            break;
+        case "setoption":
+            checkIdle();
+            doSetOption(words);
+            break;
+        case "ucinewgame":
+            checkIdle();
+            _engine.newGame();
+            _engine.clearHash();
+            break;
+        case "position":
+            checkIdle();
+            doPosition(words);
+            break;
+        case "go":
+            checkIdle();
+            doGo(words);
+            break;
+        case "stop":
+            stopSearch();
+            break;
+        case "quit":
+            return false;
+        default:
+            throw error("unknown command: %s", words[0]);
+        }
+        return true;
+    }
+
+    /** Command "setoption name NAME value VALUE", in WORDS. */
+    private void doSetOption(String[] words) {
+        if (words.length != 5 || !words[1].equals("name")
+            || !words[3].equals("value")) {
+            throw error("usage: setoption name NAME value VALUE");
+        }
+        switch (words[2].toLowerCase()) {
+        case "hash":
+            int megabytes = number(words[4]);
+            if (megabytes < 1 || megabytes > MAX_HASH) {
+                throw error("Hash out of range: %s", words[4]);
+            }
+            _engine.setHashSize(megabytes);
+            break;
+        case "multipv":
+            int count = number(words[4]);
+            if (count < 1 || count > MAX_MULTIPV) {
+                throw error("MultiPV out of range: %s", words[4]);
+            }
+            _multiPV = count;
+            break;
+        case "evalfile":
+            _engine.setNetwork(network(words[4]));
+            break;
+        default:
+            throw error("unknown option: %s", words[2]);
+        }
+    }
+
+    /** Command "position startpos [moves ...]" or "position fen POSITION
+     *  SIDE [moves ...]", in WORDS. */
+    private void doPosition(String[] words) {
+        String fen;
+        int next;
+        if (words.length >= 2 && words[1].equals("startpos")) {
+            fen = null;
+            next = 2;
+        } else if (words.length >= 4 && words[1].equals("fen")) {
+            fen = words[2] + " " + words[3];
+            next = 4;
+        } else {
+            throw error("usage: position startpos|fen POSITION SIDE "
+                        + "[moves M ...]");
+        }
+        if (words.length > next && !words[next].equals("moves")) {
+            throw error("usage: position startpos|fen POSITION SIDE "
+                        + "[moves M ...]");
+        }
+        List<String> moves = new ArrayList<>();
+        if (words.length > next) {
+            moves.addAll(Arrays.asList(words).subList(next + 1,
+                                                      words.length));
+        }
+        _engine.setPosition(fen, moves);
+    }
+
+    /** Command "go ...", in WORDS. */
+    private void doGo(String[] words) {
+        int depth = 0;
+        long nodes = 0, millis = 0;
+        for (int i = 1; i < words.length; i += 1) {
+            switch (words[i]) {
+            case "infinite":
+                break;
+            case "depth":
+                depth = number(argument(words, i));
+                i += 1;
+                break;
+            case "nodes":
+                nodes = number(argument(words, i));
+                i += 1;
+                break;
+            case "movetime":
+                millis = number(argument(words, i));
+                i += 1;
+                break;
+            default:
+                throw error("unknown search limit: %s", words[i]);
+            }
+        }
+        SearchLimits limits = new SearchLimits(depth, nodes, millis);
+        long generation = _engine.newGeneration();
+        _searchGeneration = generation;
+        _searcher = new Thread(() -> {
+            List<SearchInfo> lines =
+                _engine.analyze(_multiPV, limits, this::sendInfo,
+                                generation);
+            send("bestmove %s",
+                 lines.isEmpty() ? "none" : lines.get(0).pv().get(0));
+        }, "protocol-search");
+        _searcher.setDaemon(true);
+        _searcher.start();
+    }
+
+    /** Write INFO as an "info" line. */
+    private void sendInfo(SearchInfo info) {
+        StringBuilder pv = new StringBuilder();
+        for (Move move : info.pv()) {
+            pv.append(' ').append(move);
+        }
+        send("info depth %d multipv %d score %d nodes %d nps %d hashfull %d"
+             + " time %d pv%s",
+             info.depth(), info.multiPV(), info.score(), info.nodes(),
+             info.nps(), info.hashfull(), info.millis(), pv);
+    }
+
+    /** Stop any search in progress and wait for it to report its best
+     *  move. */
+    private void stopSearch() {
+        if (_searcher != null) {
+            _engine.stop(_searchGeneration);
+            try {
+                _searcher.join();
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException("interrupted");
+            }
+            _searcher = null;
+        }
+    }
+
+    /** Throw an exception if a search is in progress; otherwise forget
+     *  any finished search. */
+    private void checkIdle() {
+        if (_searcher != null) {
+            if (_searcher.isAlive()) {
+                throw error("search in progress");
+            }
+            _searcher = null;
+        }
+    }
+
+    /** Return the argument of WORDS[K], which must exist. */
+    private static String argument(String[] words, int k) {
+        if (k + 1 >= words.length) {
+            throw error("missing value for %s", words[k]);
+        }
+        return words[k + 1];
+    }
+
+    /** Return the network in the file named NAME, or null (the built-in
+     *  evaluation) if NAME is "<empty>". */
+    private static Network network(String name) {
+        if (name.equals("<empty>")) {
+            return null;
+        }
+        try {
+            return Network.load(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not load network: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the non-negative integer denoted by WORD. */
+    private static int number(String word) {
+        try {
+            int n = Integer.parseInt(word);
+            if (n < 0) {
+                throw error("negative number: %s", word);
+            }
+            return n;
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", word);
+        }
+    }
+
+    /** Write a line formed from FORMAT and ARGS as for String.format.
+     *  Lines are written whole, even when several threads write at once. */
+    private void send(String format, Object... args) {
+        String line = String.format(format, args);
+        synchronized (_out) {
+            _out.println(line);
+            _out.flush();
+        }
+    }
+
+    /** The engine I control. */
+    private final Engine _engine;
+    /** Destination of my responses. */
+    private final PrintStream _out;
+    /** Number of moves reported on by each search (the MultiPV
+     *  option). */
+    private int _multiPV = 1;
+    /** Thread running the current search, or null if none. */
+    private Thread _searcher;
+    /** The search number (see Engine.newGeneration) of _searcher. */
+    private long _searchGeneration;
+}
@@ -0,0 +1,658 @@
+package tablut;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Runs the integration tests in testing/ (scripts F-1.in, each possibly
+ *  paired with F-2.in) as testing/tester.py and testing/test-tablut do,
+ *  but all in one JVM and in parallel.  Each script drives its own
+ *  Controller, which reads the script's commands and writes its output
+ *  through in-memory streams, rather than a separate java process.  The
+ *  board dumps and win messages collected from each Controller are
+ *  written to F-1.out (and F-2.out), compared with F-1.std (and F-2.std)
+ *  after removing comments, trailing blanks, and blank lines, and the
+ *  results reported in the same form as tester.py.
+ *  <p>
+ *  The script directives of test-tablut (lines starting "#*") are
+ *  supported: the first gives the command line (of which only --strict
+ *  matters here), and later ones are "move/win", "move/win+",
+ *  "remote move/win", "remote move/win+", "move", "win+", and
+ *  "time MOVE GAME".
+ *  @author Osvaldo Valadez
+ */
+class ScriptRunner {
+
+    /** Default time limits, in milliseconds, for one move and one game,
+     *  and the time allowed for a win message or for a program to end. */
+    static final long MOVE_TIME = 10_000, GAME_TIME = 60_000,
+        SHORT_WAIT = 5_000;
+
+    /** Usage: java tablut.ScriptRunner [--threads=N] F-1.in ...
+     *  Run the tests F-1.in ... in ARGS on N threads (by default, one per
+     *  processor), and exit with status 1 if any failed. */
+    public static void main(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<Path> tests = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring(10));
+            } else {
+                tests.add(Paths.get(arg));
+            }
+        }
+        boolean passed = new ScriptRunner(threads).run(tests, System.out);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /** A runner that runs up to THREADS tests at once. */
+    ScriptRunner(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Run TESTS (F-1.in files), reporting on OUT, and return true iff all
+     *  passed. */
+    boolean run(List<Path> tests, PrintStream out) {
+        ExecutorService pool =
+            Executors.newFixedThreadPool(_threads,
+                                         Server.daemonThreads("script"));
+        ArrayList<Future<String>> results = new ArrayList<>();
+        for (Path test : tests) {
+            results.add(pool.submit(() -> runTest(test)));
+        }
+        int passed;
+        passed = 0;
+        try {
+            for (int i = 0; i < tests.size(); i += 1) {
+                String reason;
+                try {
+                    reason = results.get(i).get();
+                } catch (ExecutionException excp) {
+                    reason = String.valueOf(excp.getCause());
+                }
+                String name = baseName(tests.get(i));
+                if (reason == null) {
+                    out.printf("** %s PASSED.%n", name);
+                    passed += 1;
+                } else {
+                    out.printf("** %s FAILED (%s)%n", name, reason);
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        out.println();
+        if (passed == tests.size()) {
+            out.printf("Passed all %d tests.%n", tests.size());
+        } else {
+            out.printf("Passed %d out of %d tests.%n", passed, tests.size());
+        }
+        return passed == tests.size();
+    }
+
+    /** Run the test whose first script is FIRST, writing its outputs to
+     *  .out and .err files, and return null if it passes, or the reason
+     *  it fails. */
+    String runTest(Path first) throws IOException {
+        Path second = sibling(first, "-1.in", "-2.in");
+        Program prog1 = new Program("1", first);
+        if (prog1.endMessage() != null) {
+            return prog1.endMessage();
+        }
+        Program prog2 = null;
+        if (Files.exists(second)) {
+            prog2 = new Program("2", second);
+            if (prog2.endMessage() != null) {
+                return prog2.endMessage();
+            }
+            prog1.setOther(prog2);
+            prog2.setOther(prog1);
+        }
+        Thread driver2 = null;
+        if (prog2 != null) {
+            driver2 = new Thread(prog2::drive, "script-driver");
+            driver2.setDaemon(true);
+            driver2.start();
+        }
+        prog1.drive();
+        if (driver2 != null) {
+            try {
+                driver2.join();
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException("interrupted");
+            }
+        }
+        String reason = null;
+        for (Program prog : Arrays.asList(prog1, prog2)) {
+            if (prog == null) {
+                continue;
+            }
+            prog.writeOutputs();
+            if (reason == null && prog.endMessage() != null) {
+                reason = String.format("Program %s ended with: %s",
+                                       prog.id(), prog.endMessage());
+            }
+        }
+        if (reason != null) {
+            return reason;
+        }
+        for (Program prog : Arrays.asList(prog1, prog2)) {
+            if (prog != null && !prog.outputMatches()) {
+                return "Output(s) do not all match expected output(s).";
+            }
+        }
+        return null;
+    }
+
+    /** Return the name of TEST without its directory or extension. */
+    private static String baseName(Path test) {
+        String name = test.getFileName().toString();
+        return name.endsWith(".in")
+            ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /** Return FILE with the suffix SUFFIX of its name replaced by
+     *  REPLACEMENT (or with REPLACEMENT appended, if it lacks SUFFIX). */
+    private static Path sibling(Path file, String suffix,
+                                String replacement) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(suffix)) {
+            name = name.substring(0, name.length() - suffix.length());
+        }
+        return file.resolveSibling(name + replacement);
+    }
+
+    /** Return TEXT with comments, trailing blanks, and blank lines
+     *  removed, as tester.py does before comparing outputs. */
+    static String filter(String text) {
+        text = COMMENT_OR_TRAILING_BLANKS.matcher(text).replaceAll("");
+        return BLANK_LINE.matcher(text).replaceAll("");
+    }
+
+    /** Comments and trailing blanks in output. */
+    private static final Pattern COMMENT_OR_TRAILING_BLANKS =
+        Pattern.compile("(?m)(?:#.*|[ \\t]+$)");
+
+    /** Blank lines in output. */
+    private static final Pattern BLANK_LINE =
+        Pattern.compile("(?m)^\\r?\\n");
+
+    /** Pattern of a script directive. */
+    private static final Pattern DIRECTIVE =
+        Pattern.compile("\\s*#\\*\\s*(.*?)\\s*");
+
+    /** The directives following the command line. */
+    private static final Pattern COMMAND =
+        Pattern.compile("(move/win(\\+?))|(remote\\s+move/win(\\+?))|(move)"
+                        + "|(win\\+)|time\\s+([\\d.]+)\\s+([\\d/]+)");
+
+    /** A win message. */
+    private static final Pattern WIN =
+        Pattern.compile("\\s*\\*\\s*((?:Black|White)\\s+wins\\.)\\s*");
+
+    /** A move message (possibly followed by other text). */
+    private static final Pattern MOVE =
+        Pattern.compile("\\s*\\*\\s*(?<move>[a-i][1-9]-[a-i1-9]).*");
+
+    /** Marks the end of a program's messages. */
+    private static final String EOS = new String("<end of stream>");
+
+    /** Thrown to end the running of a script. */
+    private static class Terminate extends RuntimeException {
+    }
+
+    /** One program of a test: a Controller running in its own thread
+     *  under the direction of a script. */
+    private static class Program {
+
+        /** The program numbered ID run by the script in FILE. */
+        Program(String id, Path file) throws IOException {
+            _id = id;
+            _file = file;
+            _script = Files.readAllLines(file);
+            String command = null;
+            while (_next < _script.size()) {
+                Matcher mat = DIRECTIVE.matcher(_script.get(_next));
+                _next += 1;
+                if (mat.matches()) {
+                    command = mat.group(1);
+                    break;
+                }
+            }
+            if (command == null) {
+                _endMessage = String.format("Error: Could not find initial "
+                                            + "command line in %s",
+                                            file.getFileName());
+                return;
+            }
+            boolean strict = Arrays.asList(command.split("\\s+"))
+                .contains("--strict");
+            PrintStream output =
+                new PrintStream(new LineSink(this::outputLine), true);
+            PrintStream errors = new PrintStream(_errors, true);
+            _controller =
+                new Controller(new NullView(), null,
+                               new TextReporter(output, errors),
+                               new TextPlayer(), new AI(), strict, _input,
+                               output);
+            _thread = new Thread(this::play, "script-" + id);
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        /** Return my id. */
+        String id() {
+            return _id;
+        }
+
+        /** Return the reason I failed, or null if I have not. */
+        String endMessage() {
+            return _endMessage;
+        }
+
+        /** Exchange moves with OTHER in remote games. */
+        void setOther(Program other) {
+            _other = other;
+        }
+
+        /** Run my script to the end, then wait for my Controller to
+         *  finish. */
+        void drive() {
+            try {
+                while (_next < _script.size()) {
+                    String line = _script.get(_next);
+                    _next += 1;
+                    Matcher mat = DIRECTIVE.matcher(line);
+                    if (mat.matches()) {
+                        directive(mat.group(1), line);
+                    } else {
+                        _input.add(line);
+                    }
+                }
+            } catch (Terminate excp) {
+                /* Fall through to stop. */
+                _input.close();
+            }
+            stop();
+        }
+
+        /** Perform the directive TEXT, which appeared on LINE. */
+        private void directive(String text, String line) {
+            Matcher mat = COMMAND.matcher(text);
+            if (!mat.matches()) {
+                _input.close();
+                error("Invalid command in testing file: %s", line.trim());
+            } else if (mat.group(1) != null) {
+                localGame(!mat.group(2).isEmpty());
+            } else if (mat.group(3) != null) {
+                remoteGame();
+            } else if (mat.group(5) != null) {
+                _timeRemaining = _gameTime;
+                ourMove(false);
+            } else if (mat.group(6) != null) {
+                win();
+            } else {
+                _moveTime = (long) (Double.parseDouble(mat.group(7)) * 1000);
+                _gameTime = (long) (Double.parseDouble(mat.group(8)) * 1000);
+            }
+        }
+
+        /** Let my Controller play until it announces a win, recording the
+         *  win message iff PRINTWIN. */
+        private void localGame(boolean printWin) {
+            _timeRemaining = _gameTime;
+            while (true) {
+                String msg = ourMove(true);
+                if (WIN.matcher(msg).matches()) {
+                    if (printWin) {
+                        _output.append(msg.trim()).append('\n');
+                    }
+                    _timeRemaining = _moveTime;
+                    return;
+                }
+            }
+        }
+
+        /** Play a game against my other program, passing its moves to my
+         *  Controller, until both announce the same win. */
+        private void remoteGame() {
+            if (_other == null) {
+                error("invalid remote command in testing file"
+                      + " (no opponent)");
+            }
+            _timeRemaining = _gameTime;
+            String prevWin = null;
+            while (true) {
+                String rmsg = timedGet(_moves, "waiting for opponent");
+                String currWin = win(rmsg);
+                if (currWin != null) {
+                    if (prevWin != null) {
+                        if (!prevWin.equals(currWin)) {
+                            error("received conflicting win");
+                        }
+                        return;
+                    }
+                    prevWin = currWin;
+                } else if (prevWin != null) {
+                    error("received move; expected win");
+                } else {
+                    Matcher mat = MOVE.matcher(rmsg);
+                    if (!mat.matches()) {
+                        error("malformed move or win message: %s", rmsg);
+                    }
+                    _input.add(mat.group("move"));
+                }
+                String msg = ourMove(true);
+                currWin = win(msg);
+                if (currWin != null) {
+                    if (prevWin != null) {
+                        if (!prevWin.equals(currWin)) {
+                            error("received conflicting win");
+                        }
+                        return;
+                    }
+                    prevWin = currWin;
+                } else if (prevWin != null) {
+                    error("made local move; expected win");
+                }
+            }
+        }
+
+        /** Wait briefly for my Controller to announce a win, and record
+         *  it. */
+        private void win() {
+            _timeRemaining = SHORT_WAIT;
+            String msg = ourMove(true);
+            if (win(msg) == null) {
+                error("expected win; received move");
+            }
+            _output.append(msg.trim()).append('\n');
+        }
+
+        /** Return the text of the win announced by MSG, or null if it is
+         *  not a win message. */
+        private String win(String msg) {
+            Matcher mat = WIN.matcher(msg);
+            return mat.matches() ? mat.group(1) : null;
+        }
+
+        /** Wait for my Controller's next move or win message, pass it on
+         *  to my other program, if any, and return it.  It is an error if
+         *  it is a win and WINALLOWED is false. */
+        private String ourMove(boolean winAllowed) {
+            String msg = timedGet(_messages, "waiting for my move")
+                .replaceAll(" +", " ");
+            boolean isWin = WIN.matcher(msg).matches();
+            if (!isWin && !MOVE.matcher(msg).matches()) {
+                error("malformed move or win message: %s", msg);
+            }
+            if (_other != null) {
+                _other._moves.add(msg);
+            }
+            if (isWin && !winAllowed) {
+                error("unexpected win message");
+            }
+            return msg;
+        }
+
+        /** Return the next item from QUEUE, waiting no longer than the
+         *  time remaining for the current move or game.  WHERE describes
+         *  what is being waited for. */
+        private String timedGet(BlockingQueue<String> queue, String where) {
+            long start = System.currentTimeMillis();
+            String result;
+            try {
+                result = queue.poll(Math.min(_moveTime, _timeRemaining),
+                                    TimeUnit.MILLISECONDS);
+            } catch (InterruptedException excp) {
+                result = null;
+            }
+            _timeRemaining -= System.currentTimeMillis() - start;
+            if (result == null) {
+                error("time limit exceeded %s", where);
+            } else if (result == EOS) {
+                throw new Terminate();
+            }
+            return result;
+        }
+
+        /** Record the failure described by FORMAT and ARGS (as for
+         *  String.format), stop my other program, and end my script. */
+        private void error(String format, Object... args) {
+            stopWith(String.format(format, args));
+            if (_other != null) {
+                _other._moves.add(EOS);
+                _other.stopWith(null);
+            }
+            throw new Terminate();
+        }
+
+        /** Record REASON as the reason I failed, unless I have failed
+         *  already, and end my input. */
+        private synchronized void stopWith(String reason) {
+            if (_endMessage == null) {
+                _endMessage = reason;
+            }
+            _input.close();
+        }
+
+        /** End my input and wait for my Controller to finish. */
+        private void stop() {
+            _input.close();
+            try {
+                _thread.join(SHORT_WAIT);
+            } catch (InterruptedException excp) {
+                /* Treat as not having finished. */
+                _thread.interrupt();
+            }
+            if (_thread.isAlive() || !_exitedNormally) {
+                stopWith("process did not exit normally.");
+            }
+        }
+
+        /** Body of my Controller's thread. */
+        private void play() {
+            try {
+                _controller.play();
+                _exitedNormally = true;
+            } catch (IllegalArgumentException excp) {
+                _exitedNormally = false;
+            } catch (RuntimeException | AssertionError excp) {
+                stopWith("terminated with " + excp);
+            } finally {
+                _messages.add(EOS);
+            }
+        }
+
+        /** Handle LINE of my Controller's output, as test-tablut does:
+         *  board dumps are recorded, and move and win messages are queued
+         *  for my script. */
+        private void outputLine(String line) {
+            int prompt = line.lastIndexOf('>');
+            if (prompt >= 0) {
+                line = line.substring(prompt + 1).replaceFirst("^ +", "");
+            }
+            if (_dumping) {
+                _output.append(line).append('\n');
+                if (line.startsWith("===")) {
+                    _dumping = false;
+                }
+            } else if (line.trim().startsWith("*")) {
+                _messages.add(line);
+            } else if (line.startsWith("===")) {
+                _output.append(line).append('\n');
+                _dumping = true;
+            }
+        }
+
+        /** Write my recorded output and errors to my .out and .err
+         *  files. */
+        void writeOutputs() throws IOException {
+            Files.writeString(sibling(_file, ".in", ".out"), _output);
+            Files.write(sibling(_file, ".in", ".err"), _errors.toByteArray());
+        }
+
+        /** Return true iff my recorded output matches my .std file. */
+        boolean outputMatches() throws IOException {
+            Path std = sibling(_file, ".in", ".std");
+            return Files.exists(std)
+                && filter(_output.toString())
+                       .equals(filter(Files.readString(std)));
+        }
+
+        /** My program number. */
+        private final String _id;
+        /** My script file. */
+        private final Path _file;
+        /** The lines of my script. */
+        private final List<String> _script;
+        /** Index of the next line of _script to process. */
+        private int _next;
+        /** My Controller. */
+        private Controller _controller;
+        /** The thread running my Controller. */
+        private Thread _thread;
+        /** Set if my Controller returned normally. */
+        private volatile boolean _exitedNormally;
+        /** My Controller's input. */
+        private final ScriptInput _input = new ScriptInput();
+        /** Dumps and wins recorded from my Controller's output. */
+        private final StringBuffer _output = new StringBuffer();
+        /** My Controller's error output. */
+        private final ByteArrayOutputStream _errors =
+            new ByteArrayOutputStream();
+        /** True while recording a board dump. */
+        private boolean _dumping;
+        /** Move and win messages from my Controller. */
+        private final BlockingQueue<String> _messages =
+            new LinkedBlockingQueue<>();
+        /** Move and win messages from my other program. */
+        private final BlockingQueue<String> _moves =
+            new LinkedBlockingQueue<>();
+        /** My other program, or null. */
+        private Program _other;
+        /** Time limits for a move and a game. */
+        private long _moveTime = MOVE_TIME, _gameTime = GAME_TIME;
+        /** Time remaining for the current game. */
+        private long _timeRemaining = GAME_TIME;
+        /** The reason I failed, or null. */
+        private volatile String _endMessage;
+    }
+
+    /** An input stream of lines added by another thread, which ends when
+     *  closed. */
+    private static class ScriptInput extends InputStream {
+
+        /** Add LINE, followed by a newline, to my contents.  Ignored if I
+         *  am closed. */
+        synchronized void add(String line) {
+            if (!_closed) {
+                byte[] bytes = (line + "\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+                if (_posn == _size) {
+                    _posn = _size = 0;
+                }
+                if (_size + bytes.length > _buffer.length) {
+                    _buffer = Arrays.copyOf(_buffer,
+                                            Math.max(2 * _buffer.length,
+                                                     _size + bytes.length));
+                }
+                System.arraycopy(bytes, 0, _buffer, _size, bytes.length);
+                _size += bytes.length;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            _closed = true;
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+            throws IOException {
+            while (_posn == _size && !_closed) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    throw new IOException("interrupted");
+                }
+            }
+            if (_posn == _size) {
+                return -1;
+            }
+            int n = Math.min(len, _size - _posn);
+            System.arraycopy(_buffer, _posn, b, off, n);
+            _posn += n;
+            return n;
+        }
+
+        /** Bytes added and not yet read are _buffer[_posn .. _size-1]. */
+        private byte[] _buffer = new byte[1024];
+        /** Bounds of the unread bytes in _buffer. */
+        private int _posn, _size;
+        /** True once closed. */
+        private boolean _closed;
+    }
+
+    /** An output stream that passes each complete line written to it
+     *  (without its line terminator) to a consumer. */
+    private static class LineSink extends OutputStream {
+
+        /** A stream passing lines to CONSUMER. */
+        LineSink(Consumer<String> consumer) {
+            _consumer = consumer;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                String line = _line.toString(StandardCharsets.US_ASCII);
+                _line.reset();
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                _consumer.accept(line);
+            } else {
+                _line.write(b);
+            }
+        }
+
+        /** The current incomplete line. */
+        private final ByteArrayOutputStream _line =
+            new ByteArrayOutputStream();
+        /** Destination of lines. */
+        private final Consumer<String> _consumer;
+    }
+
+    /** Maximum number of tests run at once. */
+    private final int _threads;
+}
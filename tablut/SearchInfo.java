@@ -0,0 +1,92 @@
+package tablut;
+
+import java.util.Collections;
+import java.util.List;
+
+/** A report on a completed iteration of a search by an AI: the depth
+ *  searched, the rank of the move reported among the moves searched (in
+ *  a multi-PV search; otherwise 1), the value found (from the point of
+ *  view of the side to move, so that larger is better for it), the number
+ *  of positions visited and time taken so far, how full the transposition
+ *  table is, and the principal variation: the sequence of moves the
+ *  search expects to be played.  SearchInfos are immutable.
+ *  @author Osvaldo Valadez
+ */
+final class SearchInfo {
+
+    /** A report of a search to DEPTH with value SCORE that has visited
+     *  NODES positions in MILLIS milliseconds, with a transposition table
+     *  HASHFULL thousandths full and principal variation PV. */
+    SearchInfo(int depth, int score, long nodes, long millis, int hashfull,
+               List<Move> pv) {
+        this(depth, 1, score, nodes, millis, hashfull, pv);
+    }
+
+    /** As for the constructor above, for the move ranked RANK (from 1)
+     *  in a multi-PV search. */
+    SearchInfo(int depth, int rank, int score, long nodes, long millis,
+               int hashfull, List<Move> pv) {
+        _depth = depth;
+        _rank = rank;
+        _score = score;
+        _nodes = nodes;
+        _millis = millis;
+        _hashfull = hashfull;
+        _pv = Collections.unmodifiableList(pv);
+    }
+
+    /** Return the depth searched. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the rank of my move (1 for the best). */
+    int multiPV() {
+        return _rank;
+    }
+
+    /** Return the value of the position for the side to move. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the elapsed time in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return the number of positions visited per second. */
+    long nps() {
+        return _nodes * 1000 / Math.max(1, _millis);
+    }
+
+    /** Return the fullness of the transposition table, in thousandths. */
+    int hashfull() {
+        return _hashfull;
+    }
+
+    /** Return the principal variation, starting with the best move. */
+    List<Move> pv() {
+        return _pv;
+    }
+
+    /** Depth searched. */
+    private final int _depth;
+    /** Rank of my move. */
+    private final int _rank;
+    /** Value for the side to move. */
+    private final int _score;
+    /** Positions visited. */
+    private final long _nodes;
+    /** Elapsed time. */
+    private final long _millis;
+    /** Table fullness. */
+    private final int _hashfull;
+    /** Principal variation. */
+    private final List<Move> _pv;
+}
@@ -0,0 +1,69 @@
+package tablut;
+
+/** Limits on a search by an AI: a maximum depth in plies, a maximum number
+ *  of positions visited, and a maximum time.  A limit of 0 means that
+ *  there is no limit of that kind (except that depth never exceeds
+ *  MAX_DEPTH).  SearchLimits are immutable.
+ *  @author Osvaldo Valadez
+ */
+final class SearchLimits {
+
+    /** The greatest depth to which any search goes. */
+    static final int MAX_DEPTH = 64;
+
+    /** No limits: search until stopped. */
+    static final SearchLimits INFINITE = new SearchLimits(0, 0, 0);
+
+    /** Limits of DEPTH plies, NODES positions, and MILLIS milliseconds. */
+    SearchLimits(int depth, long nodes, long millis) {
+        if (depth < 0 || nodes < 0 || millis < 0) {
+            throw Utils.error("negative search limit");
+        }
+        _depth = depth == 0 ? MAX_DEPTH : Math.min(depth, MAX_DEPTH);
+        _nodes = nodes;
+        _millis = millis;
+    }
+
+    /** Return limits of DEPTH plies only. */
+    static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+
+    /** Return limits of NODES positions only. */
+    static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, nodes, 0);
+    }
+
+    /** Return limits of MILLIS milliseconds only. */
+    static SearchLimits millis(long millis) {
+        return new SearchLimits(0, 0, millis);
+    }
+
+    /** Return the maximum depth. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the maximum number of positions, or 0 if unlimited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the maximum time in milliseconds, or 0 if unlimited. */
+    long millis() {
+        return _millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d nodes %d millis %d",
+                             _depth, _nodes, _millis);
+    }
+
+    /** Maximum depth. */
+    private final int _depth;
+    /** Maximum positions visited, or 0. */
+    private final long _nodes;
+    /** Maximum time in milliseconds, or 0. */
+    private final long _millis;
+}
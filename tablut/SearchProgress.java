@@ -0,0 +1,90 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** A report on a search by an AI player while it is in progress: the
+ *  depth being searched, the number of positions visited and the time
+ *  taken so far, the best move found so far and its value, and the values
+ *  found so far for each of the moves searched at the root.  Values are
+ *  from the point of view of the side to move (larger is better for it).
+ *  As usual in alpha-beta search, the value of a move other than the best
+ *  is only an upper bound.  SearchProgress reports are immutable, so that
+ *  searching threads may hand them to displays without locking.
+ *  @author Osvaldo Valadez
+ */
+final class SearchProgress {
+
+    /** A report on a search to DEPTH that has visited NODES positions in
+     *  MILLIS milliseconds, whose best move so far is BEST, and that has
+     *  found values SCORES[k] for MOVES[k] at the root.  BEST is one of
+     *  MOVES. */
+    SearchProgress(int depth, long nodes, long millis, Move best,
+                   List<Move> moves, int[] scores) {
+        _depth = depth;
+        _nodes = nodes;
+        _millis = millis;
+        _best = best;
+        _moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        _scores = Arrays.copyOf(scores, moves.size());
+        _bestScore = _scores[moves.indexOf(best)];
+    }
+
+    /** Return the depth being searched. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the elapsed time in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return the best move found so far. */
+    Move best() {
+        return _best;
+    }
+
+    /** Return the value of best(). */
+    int bestScore() {
+        return _bestScore;
+    }
+
+    /** Return the root moves searched so far. */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /** Return the value found for moves().get(K). */
+    int score(int k) {
+        return _scores[k];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d nodes %d time %d best %s (%d)",
+                             _depth, _nodes, _millis, _best, _bestScore);
+    }
+
+    /** Depth being searched. */
+    private final int _depth;
+    /** Positions visited. */
+    private final long _nodes;
+    /** Elapsed milliseconds. */
+    private final long _millis;
+    /** Best move so far. */
+    private final Move _best;
+    /** Value of _best. */
+    private final int _bestScore;
+    /** Root moves searched so far. */
+    private final List<Move> _moves;
+    /** Their values. */
+    private final int[] _scores;
+}
@@ -0,0 +1,261 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/** Generates training data for evaluations by self-play.  Games between
+ *  copies of one AI are played concurrently on a pool of threads, each
+ *  from a random opening.  Positions are sampled from each game with the
+ *  value its search found for them, labelled with the game's result when
+ *  it ends, and streamed to shards (see TrainingData) by one writer, in
+ *  the order in which the games were started.  Each game starts with an
+ *  empty transposition table, so that the games, and so the shards, depend
+ *  only on the seed and the other settings, not on the number of threads
+ *  or their timing.  At most twice as many games as threads are in
+ *  progress or awaiting their turn to be written at once, so memory use
+ *  does not grow with the number of games.
+ *  @author Osvaldo Valadez
+ */
+class SelfPlay {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 1000;
+
+    /** Default search depth. */
+    static final int DEFAULT_DEPTH = 2;
+
+    /** Default number of random plies played to vary the openings. */
+    static final int DEFAULT_OPENING_PLIES = 8;
+
+    /** Default move limit for each game. */
+    static final int DEFAULT_MOVE_LIMIT = 200;
+
+    /** By default, one position in this many is sampled. */
+    static final int DEFAULT_SAMPLE_RATE = 4;
+
+    /** Prefix of the names of shards. */
+    static final String SHARD_PREFIX = "selfplay";
+
+    /** Number of games between progress reports. */
+    static final int REPORT_INTERVAL = 50;
+
+    /** Usage: java tablut.SelfPlay [--games=N] [--threads=N] [--depth=N]
+     *  [--seed=N] [--sample=K] [--shard=N] [--nnue=FILE] --out=DIR.
+     *  Plays N games between AIs searching to the given depth (using the
+     *  network in FILE, if given), sampling one position in K, and writes
+     *  the samples to shards of N samples in DIR, as described by
+     *  ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games={0,1} --threads={0,1} --depth={0,1} "
+                            + "--seed={0,1} --sample={0,1} --shard={0,1} "
+                            + "--nnue={0,1} --out={1}", args);
+        if (!options.ok()) {
+            usage();
+        }
+        SelfPlay selfPlay;
+        int shardSize;
+        try {
+            AI player = new AI(intOption(options, "--depth",
+                                         DEFAULT_DEPTH));
+            if (options.contains("--nnue")) {
+                player.setNetwork(Network.load(
+                    Paths.get(options.getFirst("--nnue"))));
+            }
+            selfPlay = new SelfPlay(player);
+            selfPlay.setGames(intOption(options, "--games", DEFAULT_GAMES));
+            selfPlay.setThreads(intOption(options, "--threads",
+                                          Runtime.getRuntime()
+                                          .availableProcessors()));
+            selfPlay.setSeed(intOption(options, "--seed", 0));
+            selfPlay.setSampleRate(intOption(options, "--sample",
+                                             DEFAULT_SAMPLE_RATE));
+            shardSize = intOption(options, "--shard",
+                                  TrainingData.DEFAULT_SHARD_SIZE);
+        } catch (NumberFormatException excp) {
+            usage();
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        Path dir = Paths.get(options.getFirst("--out"));
+        try (TrainingData.Writer out =
+             new TrainingData.Writer(dir, SHARD_PREFIX, shardSize)) {
+            selfPlay.run(out, System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.SelfPlay [--games=N]"
+                           + " [--threads=N] [--depth=N] [--seed=N]"
+                           + " [--sample=K] [--shard=N] [--nnue=FILE]"
+                           + " --out=DIR");
+        System.exit(1);
+    }
+
+    /** Return the integer value of option NAME in OPTIONS, or DFLT if
+     *  absent. */
+    private static int intOption(CommandArgs options, String name, int dflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : dflt;
+    }
+
+    /** Self-play by copies of PLAYER, which searches to PLAYER.depth(). */
+    SelfPlay(AI player) {
+        _player = player;
+        _games = DEFAULT_GAMES;
+        _threads = Runtime.getRuntime().availableProcessors();
+        _openingPlies = DEFAULT_OPENING_PLIES;
+        _moveLimit = DEFAULT_MOVE_LIMIT;
+        _sampleRate = DEFAULT_SAMPLE_RATE;
+    }
+
+    /** Play GAMES games. */
+    void setGames(int games) {
+        _games = games;
+    }
+
+    /** Play games on THREADS threads. */
+    void setThreads(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Use SEED to choose openings and samples. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Sample about one position in RATE. */
+    void setSampleRate(int rate) {
+        _sampleRate = Math.max(1, rate);
+    }
+
+    /** Play the games, writing their samples to OUT (which is not closed)
+     *  and reporting progress on REPORT. */
+    void run(TrainingData.Writer out, PrintStream report)
+        throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread th = new Thread(r, "selfplay");
+            th.setDaemon(true);
+            return th;
+        });
+        ThreadLocal<AI> players = ThreadLocal.withInitial(_player::copy);
+        ArrayDeque<Future<List<TrainingData.Sample>>> games =
+            new ArrayDeque<>();
+        long start = System.nanoTime();
+        int submitted, finished;
+        submitted = finished = 0;
+        try {
+            while (finished < _games) {
+                while (submitted < _games
+                       && submitted - finished < 2 * _threads) {
+                    long seed = _seed + submitted;
+                    games.add(pool.submit(() -> play(players.get(), seed)));
+                    submitted += 1;
+                }
+                for (TrainingData.Sample sample : games.remove().get()) {
+                    out.write(sample);
+                }
+                finished += 1;
+                if (finished % REPORT_INTERVAL == 0 || finished == _games) {
+                    report.println(progress(out, finished, start));
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return a report of the progress of OUT after FINISHED games,
+     *  begun at START (as System.nanoTime). */
+    private String progress(TrainingData.Writer out, int finished,
+                            long start) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+        return String.format("Games: %d  Samples: %d  Duplicates: %d  "
+                             + "Shards: %d  Samples/s: %.0f",
+                             finished, out.written(), out.duplicates(),
+                             out.shards(), out.written() / seconds);
+    }
+
+    /** Play a game with PLAYER choosing both sides' moves after a random
+     *  opening chosen using SEED, and return the positions sampled from
+     *  it (also using SEED), labelled with its result, in order.  Clears
+     *  PLAYER's transposition table first. */
+    List<TrainingData.Sample> play(AI player, long seed) {
+        player.clearHash();
+        Random random = new Random(seed);
+        Board board = new Board();
+        board.setMoveLimit(_moveLimit);
+        while (board.moveCount() < _openingPlies && board.winner() == null) {
+            List<Move> moves = board.legalMoves(board.turn());
+            if (moves.isEmpty()) {
+                break;
+            }
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+        SearchLimits limits = SearchLimits.depth(player.depth());
+        ArrayList<TrainingData.Sample> samples = new ArrayList<>();
+        Piece winner = board.winner();
+        while (winner == null) {
+            List<SearchInfo> lines = player.analyze(board, 1, limits, null);
+            if (lines.isEmpty()) {
+                winner = board.turn().opponent();
+                break;
+            }
+            SearchInfo best = lines.get(0);
+            if (random.nextInt(_sampleRate) == 0) {
+                int score = board.turn() == WHITE
+                    ? best.score() : -best.score();
+                samples.add(new TrainingData.Sample(board,
+                                                    board.moveCount(),
+                                                    score, null));
+            }
+            board.makeMove(best.pv().get(0));
+            winner = board.winner();
+        }
+        for (int i = 0; i < samples.size(); i += 1) {
+            samples.set(i, samples.get(i).withResult(winner));
+        }
+        return samples;
+    }
+
+    /** Template for the players. */
+    private final AI _player;
+    /** Number of games. */
+    private int _games;
+    /** Number of threads. */
+    private int _threads;
+    /** Seed for choosing openings and samples. */
+    private long _seed;
+    /** Number of random plies at the start of each game. */
+    private int _openingPlies;
+    /** Move limit for each game. */
+    private int _moveLimit;
+    /** One position in this many is sampled. */
+    private int _sampleRate;
+}
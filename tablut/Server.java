@@ -0,0 +1,215 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static tablut.Utils.*;
+
+/** A server hosting any number of independent games at once.  Each
+ *  connection is a session with its own Controller, which reads the
+ *  usual text commands from the connection and writes its responses back
+ *  on it, exactly as it does with the standard input and output.
+ *  Sessions spend most of their time waiting for input, so each runs on
+ *  its own (virtual, if the JVM supports them) thread, while the AI's
+ *  searches run on a shared pool with one platform thread per processor,
+ *  so that many simultaneous searches do not oversubscribe the CPUs.
+ *  @author Osvaldo Valadez
+ */
+class Server {
+
+    /** Prefix of an address denoting a Unix domain socket. */
+    static final String UNIX_PREFIX = "unix:";
+
+    /** A server whose AI players search using copies of AUTOPLAYER on
+     *  SEARCHTHREADS threads. */
+    Server(AI autoPlayer, int searchThreads) {
+        _autoPlayer = autoPlayer;
+        _searches =
+            Executors.newFixedThreadPool(searchThreads,
+                                         daemonThreads("tablut-search"));
+        _sessions = sessionExecutor();
+    }
+
+    /** Return the address denoted by ADDRESS, which is either a port
+     *  number, to listen on all interfaces, or "unix:" followed by the
+     *  path of a Unix domain socket. */
+    static SocketAddress address(String address) {
+        if (address.startsWith(UNIX_PREFIX)) {
+            return UnixDomainSocketAddress.of(
+                address.substring(UNIX_PREFIX.length()));
+        }
+        try {
+            return new InetSocketAddress(Integer.parseInt(address));
+        } catch (IllegalArgumentException excp) {
+            throw error("bad server address: %s", address);
+        }
+    }
+
+    /** Log the commands of each session to its own file in DIRECTORY
+     *  (see Controller), rather than not at all. */
+    void setLogDirectory(Path directory) {
+        _logDirectory = directory;
+    }
+
+    /** Accept connections on ADDRESS, starting a session for each, until
+     *  the program is terminated.  Messages about the server itself go to
+     *  LOG. */
+    void serve(SocketAddress address, PrintStream log) throws IOException {
+        ServerSocketChannel listener;
+        if (address instanceof UnixDomainSocketAddress) {
+            Path path = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(path);
+            path.toFile().deleteOnExit();
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            listener = ServerSocketChannel.open();
+        }
+        try (ServerSocketChannel server = listener) {
+            server.bind(address);
+            log.printf("Tablut server listening on %s%n",
+                       server.getLocalAddress());
+            while (true) {
+                SocketChannel client = server.accept();
+                long id = _sessionCount += 1;
+                _sessions.execute(() -> session(client, id, log));
+            }
+        }
+    }
+
+    /** Play games on the connection CLIENT, which is session number ID,
+     *  until it sends "quit" or closes, then close it.  Any unexpected
+     *  failure of the session is reported on SERVERLOG. */
+    private void session(SocketChannel client, long id,
+                         PrintStream serverLog) {
+        try (SocketChannel channel = client) {
+            InputStream input = new ChannelInput(channel);
+            PrintStream output =
+                new PrintStream(new BufferedOutputStream(
+                                    new ChannelOutput(channel)),
+                                true);
+            output.println("Tablut 61B, staff version 1.0");
+            PrintStream log = null;
+            if (_logDirectory != null) {
+                log = new PrintStream(new BufferedOutputStream(
+                    Files.newOutputStream(_logDirectory.resolve(
+                        String.format("session-%d.log", id)))));
+            }
+            Controller control =
+                new Controller(new NullView(), log,
+                               new TextReporter(output, output),
+                               new TextPlayer(), _autoPlayer.copy(), false,
+                               input, output);
+            control.setSearchExecutor(_searches);
+            control.play();
+            output.flush();
+        } catch (IOException | IllegalStateException excp) {
+            /* The client has gone away or the session failed; just
+             * drop it. */
+            return;
+        } catch (RuntimeException | Error excp) {
+            synchronized (serverLog) {
+                serverLog.printf("Session %d failed: %s%n", id, excp);
+                excp.printStackTrace(serverLog);
+            }
+        }
+    }
+
+    /** Return an executor that runs each task on its own new thread: a
+     *  virtual thread if the JVM supports them, and otherwise a daemon
+     *  platform thread. */
+    static ExecutorService sessionExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(daemonThreads("tablut"));
+        }
+    }
+
+    /** Return a factory for daemon threads named NAME. */
+    static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread th = new Thread(r, name);
+            th.setDaemon(true);
+            return th;
+        };
+    }
+
+    /** An input stream reading from a socket channel.  Unlike the
+     *  streams from Channels.newInputStream and newOutputStream, which
+     *  share a lock, it allows one thread to write to the channel while
+     *  another waits to read from it (as in Protocol sessions). */
+    private static class ChannelInput extends InputStream {
+        /** A stream reading from CHANNEL. */
+        ChannelInput(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0 ? 0 : _channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        /** My source. */
+        private final SocketChannel _channel;
+    }
+
+    /** An output stream writing to a socket channel (see ChannelInput). */
+    private static class ChannelOutput extends OutputStream {
+        /** A stream writing to CHANNEL. */
+        ChannelOutput(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+            while (bytes.hasRemaining()) {
+                _channel.write(bytes);
+            }
+        }
+
+        /** My destination. */
+        private final SocketChannel _channel;
+    }
+
+    /** Template for AI players. */
+    private final AI _autoPlayer;
+    /** Pool on which searches run. */
+    private final ExecutorService _searches;
+    /** Executor on which sessions run. */
+    private final ExecutorService _sessions;
+    /** Directory for session logs, or null if sessions are not
+     *  logged. */
+    private Path _logDirectory;
+    /** Number of sessions started. */
+    private long _sessionCount;
+}
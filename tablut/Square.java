@@ -164,7 +164,8 @@ public final class Square {
         _index = index;
         _row = index / BOARD_SIZE;
         _col = index % BOARD_SIZE;
-        _str = String.format("%c%d", (char) ('a' + _col), 1 + _row);
+        _str = new String(new char[] { (char) ('a' + _col),
+                                       (char) ('1' + _row) });
     }
 
     /** A convenience class to represent mutable lists of squares.  This
@@ -0,0 +1,448 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+
+/** A compressed binary file format for labelled positions (Samples), for
+ *  tuning evaluations, with a Writer that streams them to a directory of
+ *  shards and a Reader that reads a shard.
+ *  <p>
+ *  A shard is a gzip-compressed stream of a header (the 4 bytes MAGIC and
+ *  the 2-byte VERSION) followed by fixed-size records, one per sample:
+ *  <ul>
+ *  <li> the position, at 2 bits per square (the ordinal of its Piece), in
+ *       square-index order, in POSITION_SIZE bytes (as in GameArchive);
+ *  <li> a byte of flags: the result of the game in the low 2 bits (0 for
+ *       none, 1 for a White win, 2 for a Black win), then WHITE_TO_MOVE;
+ *  <li> the number of moves made in the game before the position (2
+ *       bytes, unsigned);
+ *  <li> the value found for the position by a search, for White (4
+ *       bytes, signed).
+ *  </ul>
+ *  All multi-byte quantities are big-endian.  No position (with its side
+ *  to move) appears twice in a shard.
+ *  @author Osvaldo Valadez
+ */
+class TrainingData {
+
+    /** The first bytes of a shard ("TBLT"). */
+    static final int MAGIC = 0x54424c54;
+
+    /** The format version written by Writers. */
+    static final short VERSION = 1;
+
+    /** Size in bytes of an encoded position. */
+    static final int POSITION_SIZE = GameArchive.POSITION_SIZE;
+
+    /** Size in bytes of a record. */
+    static final int RECORD_SIZE = POSITION_SIZE + 7;
+
+    /** Flag bits of a record. */
+    static final int
+        RESULT_MASK = 0x3,
+        WHITE_TO_MOVE = 0x4;
+
+    /** Default number of samples in a shard. */
+    static final int DEFAULT_SHARD_SIZE = 1 << 20;
+
+    /** Ending of the names of shard files. */
+    static final String SUFFIX = ".tbt.gz";
+
+    /** Size of the buffers of shard streams. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Usage: java tablut.TrainingData FILE ...
+     *  Prints the samples in each shard FILE, one per line, as their
+     *  positions (as for Board.setFen), plies, scores, and results. */
+    public static void main(String... args) {
+        try {
+            for (String name : args) {
+                try (Reader reader = new Reader(Paths.get(name))) {
+                    for (Sample sample = reader.next(); sample != null;
+                         sample = reader.next()) {
+                        System.out.println(sample);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the shards in directory DIR, in order of name. */
+    static List<Path> shards(Path dir) throws IOException {
+        ArrayList<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+             Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                result.add(file);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** A position from a game, with the value found for it by a search,
+     *  and the result of the game.  Samples are immutable (apart from
+     *  computing their hashes when first needed). */
+    static final class Sample {
+
+        /** A sample of the position on BOARD, reached after PLY moves of
+         *  a game won by RESULT (null if unknown), and given the value
+         *  SCORE (for White) by a search. */
+        Sample(Board board, int ply, int score, Piece result) {
+            _squares = new byte[NUM_SQUARES];
+            BatchEvaluator.pack(board, _squares, 0);
+            _turn = board.turn();
+            _ply = ply;
+            _score = score;
+            _result = result;
+            _hash = board.hash();
+            _hashed = true;
+        }
+
+        /** A sample of the position whose squares are SQUARES (as packed
+         *  by BatchEvaluator) with TURN to move, and the other values as
+         *  for Sample(BOARD, PLY, SCORE, RESULT).  SQUARES is not
+         *  copied. */
+        private Sample(byte[] squares, Piece turn, int ply, int score,
+                       Piece result) {
+            _squares = squares;
+            _turn = turn;
+            _ply = ply;
+            _score = score;
+            _result = result;
+        }
+
+        /** Return a copy of me, but with result RESULT. */
+        Sample withResult(Piece result) {
+            Sample sample = new Sample(_squares, _turn, _ply, _score, result);
+            sample._hash = _hash;
+            sample._hashed = _hashed;
+            return sample;
+        }
+
+        /** Return the side to move. */
+        Piece turn() {
+            return _turn;
+        }
+
+        /** Return the number of moves made before my position. */
+        int ply() {
+            return _ply;
+        }
+
+        /** Return my position's value (for White). */
+        int score() {
+            return _score;
+        }
+
+        /** Return the winner of the game, or null if unknown. */
+        Piece result() {
+            return _result;
+        }
+
+        /** Return the hash of my position (as Board.hash). */
+        long hash() {
+            if (!_hashed) {
+                _hash = board().hash();
+                _hashed = true;
+            }
+            return _hash;
+        }
+
+        /** Store my position as the Kth position of POSITIONS (as for
+         *  BatchEvaluator.pack). */
+        void pack(byte[] positions, int k) {
+            System.arraycopy(_squares, 0, positions, k * NUM_SQUARES,
+                             NUM_SQUARES);
+        }
+
+        /** Return a new Board set to my position. */
+        Board board() {
+            Board result = new Board();
+            result.setFen(fen());
+            return result;
+        }
+
+        /** Return my position in the notation of Board.setFen. */
+        String fen() {
+            StringBuilder result = new StringBuilder();
+            for (int row = Board.SIZE - 1; row >= 0; row -= 1) {
+                int empty = 0;
+                for (int col = 0; col < Board.SIZE; col += 1) {
+                    Piece piece =
+                        Piece.values()[_squares[row * Board.SIZE + col]];
+                    if (piece == EMPTY) {
+                        empty += 1;
+                        continue;
+                    }
+                    if (empty > 0) {
+                        result.append(empty);
+                        empty = 0;
+                    }
+                    result.append(piece.toString());
+                }
+                if (empty > 0) {
+                    result.append(empty);
+                }
+                result.append(row == 0 ? ' ' : '/');
+            }
+            result.append(_turn == WHITE ? 'w' : 'b');
+            return result.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d %d %s", fen(), _ply, _score,
+                                 _result == null ? "-"
+                                 : _result.toString());
+        }
+
+        /** Contents of the squares, as packed by BatchEvaluator.  Never
+         *  modified. */
+        private final byte[] _squares;
+        /** Side to move. */
+        private final Piece _turn;
+        /** Moves made before the position. */
+        private final int _ply;
+        /** Value for White. */
+        private final int _score;
+        /** Winner of the game, or null. */
+        private final Piece _result;
+        /** Hash of the position, if _hashed. */
+        private long _hash;
+        /** True iff _hash has been computed. */
+        private boolean _hashed;
+    }
+
+    /** Writes samples to a directory of shards, starting a new shard
+     *  whenever the current one is full, and skipping samples whose
+     *  positions are already in the current shard.  The memory used is
+     *  bounded by the shard size: a table of the hashes of the positions
+     *  in the current shard, and the stream's buffers. */
+    static class Writer implements AutoCloseable {
+
+        /** A Writer of shards of SHARDSIZE samples named PREFIX-N.tbt.gz,
+         *  for N = 00000, 00001, ..., in directory DIR, which is created if
+         *  necessary.  Numbering starts after any shards with the same
+         *  prefix already in DIR. */
+        Writer(Path dir, String prefix, int shardSize) throws IOException {
+            if (shardSize < 1) {
+                throw Utils.error("bad shard size: %d", shardSize);
+            }
+            Files.createDirectories(dir);
+            _dir = dir;
+            _prefix = prefix;
+            _shardSize = shardSize;
+            _hashes = new long[Integer.highestOneBit(2 * shardSize - 1) * 2];
+            while (Files.exists(shardName(_shardNumber))) {
+                _shardNumber += 1;
+            }
+        }
+
+        /** Add SAMPLE to the current shard and return true, unless its
+         *  position is already there, in which case return false. */
+        synchronized boolean write(Sample sample) throws IOException {
+            if (!addHash(sample.hash())) {
+                _duplicates += 1;
+                return false;
+            }
+            if (_out == null) {
+                _out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(
+                        Files.newOutputStream(shardName(_shardNumber)),
+                        BUFFER_SIZE)));
+                _out.writeInt(MAGIC);
+                _out.writeShort(VERSION);
+                _shards += 1;
+            }
+            int bits, nbits;
+            bits = nbits = 0;
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                bits = (bits << 2) | sample._squares[i];
+                nbits += 2;
+                if (nbits == 8) {
+                    _out.write(bits);
+                    bits = nbits = 0;
+                }
+            }
+            if (nbits > 0) {
+                _out.write(bits << (8 - nbits));
+            }
+            int flags = sample.result() == WHITE ? 1
+                : sample.result() == BLACK ? 2 : 0;
+            if (sample.turn() == WHITE) {
+                flags |= WHITE_TO_MOVE;
+            }
+            _out.write(flags);
+            _out.writeShort(Math.min(sample.ply(), 0xffff));
+            _out.writeInt(sample.score());
+            _written += 1;
+            _inShard += 1;
+            if (_inShard == _shardSize) {
+                endShard();
+            }
+            return true;
+        }
+
+        /** Return the number of samples written. */
+        synchronized long written() {
+            return _written;
+        }
+
+        /** Return the number of samples skipped as duplicates. */
+        synchronized long duplicates() {
+            return _duplicates;
+        }
+
+        /** Return the number of shards started. */
+        synchronized int shards() {
+            return _shards;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            endShard();
+        }
+
+        /** Return the file of shard number N. */
+        private Path shardName(int n) {
+            return _dir.resolve(String.format("%s-%05d%s", _prefix, n,
+                                              SUFFIX));
+        }
+
+        /** Finish the current shard, if any. */
+        private void endShard() throws IOException {
+            if (_out != null) {
+                _out.close();
+                _out = null;
+                _shardNumber += 1;
+            }
+            _inShard = 0;
+            Arrays.fill(_hashes, 0);
+        }
+
+        /** Add HASH to the hashes of the current shard and return true,
+         *  or return false if it is already there. */
+        private boolean addHash(long hash) {
+            long key = hash == 0 ? 1 : hash;
+            int mask = _hashes.length - 1;
+            for (int i = (int) (key ^ (key >>> 32)) & mask; true;
+                 i = (i + 1) & mask) {
+                if (_hashes[i] == key) {
+                    return false;
+                } else if (_hashes[i] == 0) {
+                    _hashes[i] = key;
+                    return true;
+                }
+            }
+        }
+
+        /** Directory of the shards. */
+        private final Path _dir;
+        /** Prefix of the names of the shards. */
+        private final String _prefix;
+        /** Number of samples in a full shard. */
+        private final int _shardSize;
+        /** Open-addressed table of the hashes of the positions in the
+         *  current shard (0 for an empty slot), at most half full. */
+        private final long[] _hashes;
+        /** The current shard, or null if none is open. */
+        private DataOutputStream _out;
+        /** Number of the current (or next) shard. */
+        private int _shardNumber;
+        /** Samples in the current shard. */
+        private int _inShard;
+        /** Numbers of samples written and skipped. */
+        private long _written, _duplicates;
+        /** Number of shards started. */
+        private int _shards;
+    }
+
+    /** Reads samples, in order, from a shard. */
+    static class Reader implements AutoCloseable {
+
+        /** A Reader for the shard FILE. */
+        Reader(Path file) throws IOException {
+            _file = file;
+            _in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file),
+                                    BUFFER_SIZE)));
+            try {
+                if (_in.readInt() != MAGIC) {
+                    throw new IOException(String.format("not a shard: %s",
+                                                        file));
+                }
+                if (_in.readShort() != VERSION) {
+                    throw new IOException(String.format("unsupported shard "
+                                                        + "version: %s",
+                                                        file));
+                }
+            } catch (IOException excp) {
+                _in.close();
+                throw excp;
+            }
+        }
+
+        /** Return the next sample in the shard, or null if there are no
+         *  more. */
+        Sample next() throws IOException {
+            int first = _in.read();
+            if (first < 0) {
+                return null;
+            }
+            try {
+                byte[] squares = new byte[NUM_SQUARES];
+                int bits = first, nbits = 8;
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    if (nbits == 0) {
+                        bits = _in.readUnsignedByte();
+                        nbits = 8;
+                    }
+                    nbits -= 2;
+                    squares[i] = (byte) ((bits >> nbits) & 3);
+                }
+                int flags = _in.readUnsignedByte();
+                int ply = _in.readUnsignedShort();
+                int score = _in.readInt();
+                Piece result = (flags & RESULT_MASK) == 1 ? WHITE
+                    : (flags & RESULT_MASK) == 2 ? BLACK : null;
+                return new Sample(squares,
+                                  (flags & WHITE_TO_MOVE) != 0 ? WHITE
+                                  : BLACK, ply, score, result);
+            } catch (EOFException excp) {
+                throw new EOFException(String.format("truncated shard: %s",
+                                                     _file));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** The shard's name. */
+        private final Path _file;
+        /** The decompressed contents of the shard. */
+        private final DataInputStream _in;
+    }
+}
@@ -0,0 +1,118 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.sq;
+
+/** A cache of search results, indexed by position hash (Board.hash()).
+ *  Each entry records the depth to which a position was searched, the
+ *  value found, whether that value is exact or only a bound, and the best
+ *  move found.  The table has a fixed number of entries; a new entry
+ *  simply replaces whatever was in its slot.
+ *  @author Osvaldo Valadez
+ */
+final class TranspositionTable {
+
+    /** Kinds of stored values: exact, a lower bound (the search failed
+     *  high), or an upper bound (the search failed low). */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Size in bytes of one entry. */
+    static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    /** Number of slots sampled by hashfull(). */
+    private static final int SAMPLE = 1000;
+
+    /** A table using about MEGABYTES megabytes (at least 1). */
+    TranspositionTable(int megabytes) {
+        long bytes = (long) Math.max(1, megabytes) << 20;
+        int size = Integer.highestOneBit((int) Math.min(bytes / ENTRY_SIZE,
+                                                         1 << 30));
+        _keys = new long[size];
+        _data = new long[size];
+        _mask = size - 1;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_data, 0);
+    }
+
+    /** Return the number of slots. */
+    int size() {
+        return _data.length;
+    }
+
+    /** Return the slot holding the entry for the position with hash KEY,
+     *  or -1 if there is none. */
+    int probe(long key) {
+        int slot = (int) key & _mask;
+        return _data[slot] != 0 && _keys[slot] == key ? slot : -1;
+    }
+
+    /** Return the value stored in SLOT. */
+    int score(int slot) {
+        return (int) _data[slot];
+    }
+
+    /** Return the depth stored in SLOT. */
+    int depth(int slot) {
+        return (int) (_data[slot] >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the kind of value (EXACT, LOWER, or UPPER) in SLOT. */
+    int bound(int slot) {
+        return (int) (_data[slot] >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the best move stored in SLOT, or null if none. */
+    Move move(int slot) {
+        int code = (int) (_data[slot] >>> MOVE_SHIFT) & MOVE_MASK;
+        if (code == 0) {
+            return null;
+        }
+        code -= 1;
+        return Move.mv(sq(code / NUM_SQUARES), sq(code % NUM_SQUARES));
+    }
+
+    /** Record that the position with hash KEY, searched to DEPTH > 0, has
+     *  value SCORE of kind BOUND, with best move MOVE (possibly null). */
+    void store(long key, int depth, int score, int bound, Move move) {
+        int slot = (int) key & _mask;
+        long code = move == null ? 0
+            : move.from().index() * NUM_SQUARES + move.to().index() + 1;
+        _keys[slot] = key;
+        _data[slot] = (score & 0xffffffffL)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | (code << MOVE_SHIFT);
+    }
+
+    /** Return the approximate number of slots in use per thousand. */
+    int hashfull() {
+        int n = Math.min(SAMPLE, _data.length), used;
+        used = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (_data[i] != 0) {
+                used += 1;
+            }
+        }
+        return used * 1000 / n;
+    }
+
+    /** Layout of the fields of an entry's data: the score is in the low 32
+     *  bits, followed by the depth, the kind of bound, and the move (as
+     *  1 + from * NUM_SQUARES + to, or 0 for none). */
+    private static final int
+        DEPTH_SHIFT = 32, DEPTH_MASK = 0xff,
+        BOUND_SHIFT = 40, BOUND_MASK = 0x3,
+        MOVE_SHIFT = 42, MOVE_MASK = 0x3fff;
+
+    /** Position hashes of the entries. */
+    private final long[] _keys;
+    /** Data of the entries, packed as described above (0 if empty). */
+    private final long[] _data;
+    /** Mask extracting a slot number from a hash. */
+    private final int _mask;
+}
@@ -0,0 +1,426 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+
+/** Tunes the weights of the built-in evaluation (EvalParams) by the
+ *  "Texel" method: labelled positions (see TrainingData) are given the
+ *  value sigmoid(K * SCORE), where SCORE is their evaluation and K is a
+ *  constant, as a prediction of the result of their game (1 for a White
+ *  win, 0 for a Black win), and the weights are chosen to minimize the
+ *  mean squared error of these predictions.  K is first chosen to
+ *  minimize the error of the initial weights; the weights are then
+ *  adjusted by gradient descent (with the Adam step rule).
+ *  <p>
+ *  Since the evaluation is linear in its weights, each position is
+ *  reduced to its features when loaded, at EvalParams.COUNT bytes per
+ *  position.  The error and its gradient are summed over the positions
+ *  in parallel on a ForkJoinPool, as are the shards when loaded.  The
+ *  evaluation's scale is arbitrary, so the initial weights are first
+ *  multiplied by a scale factor, giving room for the tuned weights to
+ *  differ by less than the original ones when they are rounded.
+ *  @author Osvaldo Valadez
+ */
+class Tuner {
+
+    /** Default number of descent steps. */
+    static final int DEFAULT_ITERATIONS = 1000;
+
+    /** Default factor applied to the initial weights. */
+    static final int DEFAULT_SCALE = 16;
+
+    /** Default size of a descent step, in units of the (scaled)
+     *  weights. */
+    static final double DEFAULT_RATE = 0.5;
+
+    /** Decay rates of the Adam rule's averages of gradients and of
+     *  their squares. */
+    static final double BETA1 = 0.9, BETA2 = 0.999;
+
+    /** Term of the Adam rule preventing division by 0. */
+    static final double EPSILON = 1e-8;
+
+    /** Bounds on log K searched by fitScale. */
+    static final double MIN_LOG_SCALE = Math.log(1e-5),
+        MAX_LOG_SCALE = Math.log(10);
+
+    /** Number of golden-section steps taken by fitScale. */
+    static final int SCALE_STEPS = 60;
+
+    /** Largest number of positions summed in one task. */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    /** Number of steps between progress reports. */
+    static final int REPORT_INTERVAL = 100;
+
+    /** Usage: java tablut.Tuner [--threads=N] [--iterations=N]
+     *  [--params=FILE] [--scale=N] [--rate=R] --out=FILE DATA ....
+     *  Tunes the weights in FILE given by --params (by default, the
+     *  original ones), times the scale factor N, on the labelled
+     *  positions in each DATA (a shard or a directory of shards), taking
+     *  N steps of size R, as described by ARGS, and writes the result
+     *  to the FILE given by --out. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--threads={0,1} --iterations={0,1} "
+                            + "--params={0,1} --scale={0,1} --rate={0,1} "
+                            + "--out={1} --={1,}", args);
+        if (!options.ok()) {
+            usage();
+        }
+        int threads, iterations, scale;
+        double rate;
+        try {
+            threads = intOption(options, "--threads",
+                                Runtime.getRuntime().availableProcessors());
+            iterations = intOption(options, "--iterations",
+                                   DEFAULT_ITERATIONS);
+            scale = intOption(options, "--scale", DEFAULT_SCALE);
+            rate = options.contains("--rate")
+                ? Double.parseDouble(options.getFirst("--rate"))
+                : DEFAULT_RATE;
+        } catch (NumberFormatException excp) {
+            usage();
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            EvalParams initial = options.contains("--params")
+                ? EvalParams.load(Paths.get(options.getFirst("--params")))
+                : EvalParams.DEFAULT;
+            ArrayList<Path> shards = new ArrayList<>();
+            for (String name : options.get("--")) {
+                Path path = Paths.get(name);
+                if (Files.isDirectory(path)) {
+                    shards.addAll(TrainingData.shards(path));
+                } else {
+                    shards.add(path);
+                }
+            }
+            Tuner tuner = new Tuner(pool);
+            long start = System.nanoTime();
+            tuner.load(shards);
+            System.out.printf("Loaded %d positions from %d shards in "
+                              + "%.1f s%n", tuner.size(), shards.size(),
+                              (System.nanoTime() - start) / 1e9);
+            if (tuner.size() == 0) {
+                throw new IOException("no labelled positions");
+            }
+            double[] weights = new double[EvalParams.COUNT];
+            for (int k = 0; k < weights.length; k += 1) {
+                weights[k] = (double) initial.weight(k) * scale;
+            }
+            double fit = tuner.fitScale(weights);
+            System.out.printf("K: %.6g  Error: %.6f%n", fit,
+                              tuner.error(weights, fit));
+            EvalParams result =
+                round(tuner.tune(weights, fit, iterations, rate,
+                                 System.out));
+            double error = tuner.error(doubles(result), fit);
+            System.out.printf("Result: %s  Error: %.6f  (%.1f s)%n",
+                              result, error,
+                              (System.nanoTime() - start) / 1e9);
+            result.save(Paths.get(options.getFirst("--out")),
+                        String.format("Tuned on %d positions: K %.6g, "
+                                      + "error %.6f", tuner.size(), fit,
+                                      error));
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.Tuner [--threads=N]"
+                           + " [--iterations=N] [--params=FILE]"
+                           + " [--scale=N] [--rate=R] --out=FILE DATA ...");
+        System.exit(1);
+    }
+
+    /** Return the integer value of option NAME in OPTIONS, or DFLT if
+     *  absent. */
+    private static int intOption(CommandArgs options, String name, int dflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : dflt;
+    }
+
+    /** A tuner, initially with no positions, that works on POOL. */
+    Tuner(ForkJoinPool pool) {
+        _pool = pool;
+        _features = new byte[0];
+        _results = new byte[0];
+    }
+
+    /** Return the number of positions loaded. */
+    int size() {
+        return _size;
+    }
+
+    /** Add the positions in SHARDS that have results, reading the shards
+     *  in parallel. */
+    void load(List<Path> shards) throws IOException {
+        ArrayList<Callable<Tuner>> tasks = new ArrayList<>();
+        for (Path shard : shards) {
+            tasks.add(() -> read(shard));
+        }
+        ArrayList<Tuner> loaded = new ArrayList<>();
+        try {
+            for (Future<Tuner> future : _pool.invokeAll(tasks)) {
+                loaded.add(future.get());
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        int size = _size;
+        for (Tuner part : loaded) {
+            size = Math.addExact(size, part._size);
+        }
+        _features = Arrays.copyOf(_features,
+                                  Math.multiplyExact(size, EvalParams.COUNT));
+        _results = Arrays.copyOf(_results, size);
+        for (Tuner part : loaded) {
+            System.arraycopy(part._features, 0, _features,
+                             _size * EvalParams.COUNT,
+                             part._size * EvalParams.COUNT);
+            System.arraycopy(part._results, 0, _results, _size, part._size);
+            _size += part._size;
+        }
+    }
+
+    /** Add the position on BOARD, from a game whose result (1 for a White
+     *  win, 0 for a Black win) is RESULT. */
+    void add(Board board, int result) {
+        EvalParams.features(board, _featureBuffer);
+        add(_featureBuffer, result);
+    }
+
+    /** Add the position packed at BASE in POSITIONS (as by
+     *  BatchEvaluator.pack), from a game whose result is RESULT (as for
+     *  add(Board, int)). */
+    void add(byte[] positions, int base, int result) {
+        EvalParams.features(positions, base, _featureBuffer);
+        add(_featureBuffer, result);
+    }
+
+    /** Add a position with the given FEATURES, from a game whose result
+     *  is RESULT (as for add(Board, int)). */
+    private void add(int[] features, int result) {
+        if (_size == _results.length) {
+            int capacity = Math.max(16, 2 * _size);
+            _features = Arrays.copyOf(_features,
+                                      capacity * EvalParams.COUNT);
+            _results = Arrays.copyOf(_results, capacity);
+        }
+        for (int k = 0; k < EvalParams.COUNT; k += 1) {
+            _features[_size * EvalParams.COUNT + k] = (byte) features[k];
+        }
+        _results[_size] = (byte) result;
+        _size += 1;
+    }
+
+    /** Return the mean squared error of the predictions made using
+     *  (real-valued) WEIGHTS and scale K. */
+    double error(double[] weights, double k) {
+        return _pool.invoke(new Pass(weights, k, false, 0, _size))[0]
+            / _size;
+    }
+
+    /** Return the K that minimizes error(WEIGHTS, K), as found by a
+     *  golden-section search on log K. */
+    double fitScale(double[] weights) {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double lo = MIN_LOG_SCALE, hi = MAX_LOG_SCALE;
+        double a = hi - ratio * (hi - lo), b = lo + ratio * (hi - lo);
+        double errorA = error(weights, Math.exp(a)),
+            errorB = error(weights, Math.exp(b));
+        for (int step = 0; step < SCALE_STEPS; step += 1) {
+            if (errorA <= errorB) {
+                hi = b;
+                b = a;
+                errorB = errorA;
+                a = hi - ratio * (hi - lo);
+                errorA = error(weights, Math.exp(a));
+            } else {
+                lo = a;
+                a = b;
+                errorA = errorB;
+                b = lo + ratio * (hi - lo);
+                errorB = error(weights, Math.exp(b));
+            }
+        }
+        return Math.exp((lo + hi) / 2);
+    }
+
+    /** Return the weights with the least error found by ITERATIONS steps
+     *  of gradient descent of size RATE from WEIGHTS, with scale K,
+     *  reporting progress on REPORT unless it is null. */
+    double[] tune(double[] weights, double k, int iterations, double rate,
+                  PrintStream report) {
+        int n = weights.length;
+        double[] current = weights.clone(), best = weights.clone(),
+            mean = new double[n], meanSquare = new double[n];
+        double bestError = Double.MAX_VALUE;
+        for (int step = 1; step <= iterations; step += 1) {
+            double[] sums =
+                _pool.invoke(new Pass(current, k, true, 0, _size));
+            double error = sums[0] / _size;
+            if (error < bestError) {
+                bestError = error;
+                System.arraycopy(current, 0, best, 0, n);
+            }
+            for (int j = 0; j < n; j += 1) {
+                double gradient = sums[j + 1] / _size;
+                mean[j] = BETA1 * mean[j] + (1 - BETA1) * gradient;
+                meanSquare[j] = BETA2 * meanSquare[j]
+                    + (1 - BETA2) * gradient * gradient;
+                double m = mean[j] / (1 - Math.pow(BETA1, step)),
+                    v = meanSquare[j] / (1 - Math.pow(BETA2, step));
+                current[j] -= rate * m / (Math.sqrt(v) + EPSILON);
+            }
+            if (report != null
+                && (step % REPORT_INTERVAL == 0 || step == iterations)) {
+                report.printf("Step %d: error %.6f  %s%n", step, error,
+                              Arrays.toString(round(current).weights()));
+            }
+        }
+        return best;
+    }
+
+    /** Return WEIGHTS rounded to the nearest integers. */
+    static EvalParams round(double[] weights) {
+        int[] result = new int[weights.length];
+        for (int k = 0; k < weights.length; k += 1) {
+            result[k] = (int) Math.round(weights[k]);
+        }
+        return new EvalParams(result);
+    }
+
+    /** Return the weights of PARAMS, as doubles. */
+    static double[] doubles(EvalParams params) {
+        double[] result = new double[EvalParams.COUNT];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = params.weight(k);
+        }
+        return result;
+    }
+
+    /** Return a tuner (with no pool) holding the positions in SHARD
+     *  that have results. */
+    private static Tuner read(Path shard) throws IOException {
+        Tuner result = new Tuner(null);
+        byte[] squares = new byte[NUM_SQUARES];
+        try (TrainingData.Reader in = new TrainingData.Reader(shard)) {
+            for (TrainingData.Sample sample = in.next(); sample != null;
+                 sample = in.next()) {
+                if (sample.result() != null) {
+                    sample.pack(squares, 0);
+                    result.add(squares, 0,
+                               sample.result() == WHITE ? 1 : 0);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A task that sums, over positions START to END-1, the squared
+     *  errors of the predictions made using the weights and scale given
+     *  to it and, if requested, their gradient with respect to the
+     *  weights.  Its result is the sum of the errors followed by the sums
+     *  of the gradient's components. */
+    private class Pass extends RecursiveTask<double[]> {
+
+        /** A task summing the errors for WEIGHTS and K, and their gradient
+         *  iff GRADIENT, over positions START .. END-1. */
+        Pass(double[] weights, double k, boolean gradient, int start,
+             int end) {
+            _weights = weights;
+            _k = k;
+            _gradient = gradient;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (_end - _start > CHUNK_SIZE) {
+                int middle = (_start + _end) >>> 1;
+                Pass left = new Pass(_weights, _k, _gradient, _start, middle);
+                left.fork();
+                double[] result =
+                    new Pass(_weights, _k, _gradient, middle, _end).compute();
+                double[] other = left.join();
+                for (int j = 0; j < result.length; j += 1) {
+                    result[j] += other[j];
+                }
+                return result;
+            }
+            int n = EvalParams.COUNT;
+            double[] weights = _weights, result = new double[n + 1];
+            byte[] features = _features;
+            for (int i = _start; i < _end; i += 1) {
+                int base = i * n;
+                double score = 0;
+                for (int j = 0; j < n; j += 1) {
+                    score += weights[j] * features[base + j];
+                }
+                double prediction = 1 / (1 + Math.exp(-_k * score)),
+                    difference = prediction - _results[i];
+                result[0] += difference * difference;
+                if (_gradient) {
+                    double slope = 2 * difference * prediction
+                        * (1 - prediction) * _k;
+                    for (int j = 0; j < n; j += 1) {
+                        result[j + 1] += slope * features[base + j];
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** The weights. */
+        private final double[] _weights;
+        /** The scale of the sigmoid. */
+        private final double _k;
+        /** True iff the gradient is to be summed. */
+        private final boolean _gradient;
+        /** The range of positions summed. */
+        private final int _start, _end;
+    }
+
+    /** Pool on which work is done. */
+    private final ForkJoinPool _pool;
+    /** Number of positions loaded. */
+    private int _size;
+    /** Features of the positions: those of position i are at
+     *  i * EvalParams.COUNT. */
+    private byte[] _features;
+    /** Results of the positions' games: 1 for a White win, 0 for Black. */
+    private byte[] _results;
+    /** Features of the position being added. */
+    private final int[] _featureBuffer = new int[EvalParams.COUNT];
+}
@@ -1,5 +1,22 @@
 package tablut;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -43,6 +60,776 @@ public class UnitTest {
         assertEquals(testBoard.distanceFromTo(s1, s2), 4);
     }
 
-}
+    @Test
+    public void checkUndoRestoresPosition() {
+        for (String name : Positions.NAMES) {
+            Board testBoard = Positions.get(name);
+            String start = testBoard.encodedBoard();
+            for (Move mv : testBoard.legalMoves(testBoard.turn())) {
+                testBoard.makeMove(mv);
+                testBoard.undo();
+                assertEquals(start, testBoard.encodedBoard());
+                assertEquals(0, testBoard.moveCount());
+            }
+        }
+    }
+
+    @Test
+    public void checkEngine() {
+        Engine engine = new Engine(new AI(2));
+        assertEquals(Piece.BLACK, engine.turn());
+        engine.applyMove("d1-4");
+        assertEquals(1, engine.moveCount());
+        try {
+            engine.applyMove("d4-3");
+            fail("moved the wrong side");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(1, engine.moveCount());
+        }
+        Move best = engine.search(SearchLimits.nodes(500));
+        assertTrue(engine.legalMoves().contains(best));
+        assertTrue(engine.lastSearchNodes() <= 501);
+        engine.applyMove(best);
+        assertTrue(engine.undo());
+        assertTrue(engine.undo());
+        assertEquals(new Board().encodedBoard(),
+                     engine.board().encodedBoard());
+    }
+
+    @Test
+    public void checkHashFollowsPosition() {
+        Random random = new Random(61);
+        Board testBoard = new Board();
+        long start = testBoard.hash();
+        for (int k = 0; k < 40 && testBoard.winner() == null; k += 1) {
+            List<Move> moves = testBoard.legalMoves(testBoard.turn());
+            testBoard.makeMove(moves.get(random.nextInt(moves.size())));
+            Board fresh = new Board();
+            fresh.uncodeBoard(testBoard.encodedBoard());
+            assertEquals(fresh.hash(), testBoard.hash());
+        }
+        while (testBoard.moveCount() > 0) {
+            testBoard.undo();
+        }
+        assertEquals(start, testBoard.hash());
+    }
+
+    @Test
+    public void checkMultiPV() {
+        Board testBoard = new Board();
+        String start = testBoard.encodedBoard();
+        AI ai = new AI(2);
+        List<SearchInfo> lines =
+            ai.analyze(testBoard, 4, SearchLimits.depth(2), null);
+        assertEquals(4, lines.size());
+        assertEquals(start, testBoard.encodedBoard());
+        for (int k = 0; k < lines.size(); k += 1) {
+            SearchInfo line = lines.get(k);
+            assertEquals(k + 1, line.multiPV());
+            assertEquals(2, line.depth());
+            for (int j = 0; j < k; j += 1) {
+                assertTrue(lines.get(j).score() >= line.score());
+                assertTrue(lines.get(j).pv().get(0) != line.pv().get(0));
+            }
+        }
+        assertEquals(ai.findMove(testBoard, 2), lines.get(0).pv().get(0));
+    }
+
+    @Test
+    public void checkArchiveRoundTrip() throws IOException {
+        Random random = new Random(35);
+        Board testBoard = Positions.get("middlegame");
+        ArrayList<Move> moves = new ArrayList<>();
+        for (int k = 0; k < 20 && testBoard.winner() == null; k += 1) {
+            List<Move> legal = testBoard.legalMoves(testBoard.turn());
+            Move move = legal.get(random.nextInt(legal.size()));
+            testBoard.makeMove(move);
+            moves.add(move);
+        }
+        GameRecord[] games = {
+            new GameRecord(null, 0, List.of(), null),
+            new GameRecord(Positions.get("middlegame").encodedBoard(), 60,
+                           moves, Piece.BLACK),
+            new GameRecord(null, GameArchive.MAX_MOVE_LIMIT, List.of(),
+                           Piece.WHITE),
+        };
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            try (GameArchive.Writer writer = new GameArchive.Writer(file)) {
+                for (GameRecord game : games) {
+                    writer.write(game);
+                }
+                try {
+                    writer.write(new GameRecord(null,
+                                                GameArchive.MAX_MOVE_LIMIT
+                                                + 1, List.of(), null));
+                    fail("archived a move limit that does not fit");
+                } catch (IOException excp) {
+                    /* Expected. */
+                }
+            }
+            try (GameArchive.Reader reader = new GameArchive.Reader(file)) {
+                for (GameRecord game : games) {
+                    assertEquals(game, reader.next());
+                }
+                assertNull(reader.next());
+            }
+            assertEquals(testBoard.encodedBoard(),
+                         games[1].end().encodedBoard());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkFen() {
+        assertEquals(Board.INITIAL_FEN, new Board().fen());
+        for (String name : Positions.NAMES) {
+            Board testBoard = Positions.get(name);
+            Board copy = new Board();
+            copy.setFen(testBoard.fen());
+            assertEquals(testBoard.encodedBoard(), copy.encodedBoard());
+            assertEquals(testBoard.hash(), copy.hash());
+        }
+        Board testBoard = new Board();
+        for (String bad : new String[] {
+                "", "9/9/9/9/9/9/9/9/9", "9/9/9/9/9/9/9/9/9 x",
+                "9/9/9/9/9/9/9/9 w", "9/9/9/9/9/9/9/9/91 w",
+                "9/9/9/9/K3K4/9/9/9/9 b", "9/9/9/9/9/9/9/9/9/9 w" }) {
+            try {
+                testBoard.setFen(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                assertEquals(Board.INITIAL_FEN, testBoard.fen());
+            }
+        }
+        assertNull(testBoard.winner());
+        testBoard.setFen("9/9/9/9/9/9/9/9/9 w");
+        assertEquals(Piece.BLACK, testBoard.winner());
+        testBoard.setFen("9/9/9/9/4K4/9/9/9/9 b");
+        assertEquals(Piece.WHITE, testBoard.winner());
+        testBoard.setFen("9/9/9/9/4K4/9/9/9/B8 b");
+        assertNull(testBoard.winner());
+    }
+
+    @Test
+    public void checkGameHistory() {
+        Random random = new Random(44);
+        Board testBoard = new Board();
+        GameHistory history = new GameHistory();
+        ArrayList<String> positions = new ArrayList<>();
+        ArrayList<Long> hashes = new ArrayList<>();
+        positions.add(testBoard.encodedBoard());
+        hashes.add(testBoard.hash());
+        while (testBoard.winner() == null && positions.size() <= 60) {
+            List<Move> legal = testBoard.legalMoves(testBoard.turn());
+            Move move = legal.get(random.nextInt(legal.size()));
+            testBoard.makeMove(move);
+            history.add(move);
+            positions.add(testBoard.encodedBoard());
+            hashes.add(testBoard.hash());
+        }
+        Board board = testBoard;
+        for (int ply : new int[] { 0, 47, 16, positions.size() - 1, 1 }) {
+            history.position(ply, board);
+            assertEquals(positions.get(ply), board.encodedBoard());
+            assertEquals((long) hashes.get(ply), board.hash());
+            assertEquals(ply, board.moveCount());
+            assertEquals(ply, history.current());
+        }
+        history.position(20, board);
+        Move move = history.moves().get(20);
+        board.makeMove(move);
+        history.add(move);
+        assertEquals(positions.size() - 1, history.length());
+        history.position(21, board);
+        List<Move> legal = board.legalMoves(board.turn());
+        legal.remove(history.moves().get(21));
+        board.makeMove(legal.get(0));
+        history.add(legal.get(0));
+        assertEquals(22, history.length());
+        String after = board.encodedBoard();
+        history.position(3, board);
+        assertEquals(positions.get(3), board.encodedBoard());
+        history.position(22, board);
+        assertEquals(after, board.encodedBoard());
+    }
+
+    @Test
+    public void checkViewEvent() {
+        Board testBoard = Positions.get("capture");
+        BoardSnapshot before = new BoardSnapshot(testBoard);
+        Move move = Move.mv(Positions.CAPTURE_MOVE);
+        testBoard.makeMove(move);
+        ViewEvent event =
+            new ViewEvent(ViewEvent.Kind.MOVE, move, before,
+                          new BoardSnapshot(testBoard));
+        assertEquals(List.of(Square.sq("d6"), Square.sq("e7")),
+                     event.captured());
+        assertEquals(4, event.changed().size());
+        assertTrue(event.changed().contains(move.from()));
+        assertTrue(event.changed().contains(move.to()));
+        assertEquals(Piece.EMPTY, event.snapshot().get(Square.sq("d6")));
+        assertEquals(Piece.BLACK, before.get(Square.sq("h6")));
+    }
+
+    @Test
+    public void checkVariantBoard() {
+        VariantBoard tablut = new VariantBoard(Variant.TABLUT);
+        for (String name : Bench.POSITIONS) {
+            Board testBoard = Positions.get(name);
+            tablut.setFen(testBoard.fen());
+            assertEquals(testBoard.legalMoves(testBoard.turn()).size(),
+                         tablut.perft(1));
+            assertEquals(testBoard.fen(), tablut.fen());
+        }
+        tablut.setFen(Board.INITIAL_FEN);
+        assertEquals(353200, tablut.perft(3));
+        for (Variant variant : Variant.VARIANTS) {
+            VariantBoard board = new VariantBoard(variant);
+            long hash = board.hash();
+            int[] moves = new int[board.maxMoves()];
+            int n = board.legalMoves(moves);
+            for (int k = 0; k < n; k += 1) {
+                board.makeMove(moves[k]);
+                board.undo();
+            }
+            assertEquals(variant.initial(), board.fen());
+            assertEquals(hash, board.hash());
+        }
+        assertEquals(40, new VariantBoard(Variant.BRANDUBH).perft(1));
+        assertEquals("hnefatafl,edges,unarmed,strong",
+                     Variant.get("hnefatafl,edges,unarmed").toString());
+        assertEquals("7/7/2K1W2/7/7/7/7 b -",
+                     afterVariantMove("brandubh,armed",
+                                      "7/7/3BW2/7/7/7/2K4 w", 2, 0, 2, 4));
+        assertEquals("7/7/2KBW2/7/7/7/7 b -",
+                     afterVariantMove("brandubh,unarmed",
+                                      "7/7/3BW2/7/7/7/2K4 w", 2, 0, 2, 4));
+        assertEquals("4K4/9/9/9/9/9/9/9/9 b W",
+                     afterVariantMove("tablut,edges",
+                                      "9/9/9/9/4K4/9/9/9/9 w", 4, 4, 4, 8));
+        assertEquals("4K4/9/9/9/9/9/9/9/9 b -",
+                     afterVariantMove("tablut,corners",
+                                      "9/9/9/9/4K4/9/9/9/9 w", 4, 4, 4, 8));
+        assertEquals("K8/9/9/9/9/9/9/9/9 b W",
+                     afterVariantMove("tablut,corners",
+                                      "1K7/9/9/9/9/9/9/9/9 w", 1, 8, 0, 8));
+        assertEquals("9/9/9/9/9/9/1B1B5/9/9 w B",
+                     afterVariantMove("tablut,weak",
+                                      "9/9/9/9/9/9/1BK6/9/3B5 b", 3, 0, 3, 2));
+        assertEquals("9/9/9/9/9/9/1BKB5/9/9 w -",
+                     afterVariantMove("tablut,strong",
+                                      "9/9/9/9/9/9/1BK6/9/3B5 b", 3, 0, 3, 2));
+    }
+
+    /** Return the position (as VariantBoard.fen) and the winner ("W",
+     *  "B", or "-" if none) after the move from FROMCOL FROMROW to TOCOL
+     *  TOROW in the position FEN of the variant named VARIANT. */
+    private static String afterVariantMove(String variant, String fen,
+                                           int fromCol, int fromRow,
+                                           int toCol, int toRow) {
+        Variant rules = Variant.get(variant);
+        VariantBoard board = new VariantBoard(rules);
+        board.setFen(fen);
+        board.makeMove(VariantBoard.move(rules.cell(fromCol, fromRow),
+                                         rules.cell(toCol, toRow)));
+        String winner = board.winner() == Variant.WHITE_CELL ? "W"
+            : board.winner() == Variant.BLACK_CELL ? "B" : "-";
+        return board.fen() + " " + winner;
+    }
+
+    @Test
+    public void checkAccumulator() throws IOException {
+        Random random = new Random(47);
+        int hidden = 16;
+        short[] biases = new short[hidden];
+        short[] weights = new short[Network.FEATURES * hidden];
+        short[] outputWeights = new short[hidden];
+        for (int i = 0; i < weights.length; i += 1) {
+            weights[i] = (short) (random.nextInt(201) - 100);
+        }
+        for (int h = 0; h < hidden; h += 1) {
+            biases[h] = (short) (random.nextInt(201) - 100);
+            outputWeights[h] = (short) (random.nextInt(201) - 100);
+        }
+        Network network = new Network(hidden, 255, 4, biases, weights,
+                                      outputWeights, 7);
+        Path file = Files.createTempFile("tablut", ".nnue");
+        try {
+            network.save(file);
+            Network loaded = Network.load(file);
+            assertEquals(network.evaluate(new Board()),
+                         loaded.evaluate(new Board()));
+        } finally {
+            Files.delete(file);
+        }
+        Board testBoard = Positions.get("capture");
+        Accumulator accumulator = new Accumulator(network, testBoard);
+        testBoard.setAccumulator(accumulator);
+        for (int k = 0; k < 40 && testBoard.winner() == null; k += 1) {
+            List<Move> moves = testBoard.legalMoves(testBoard.turn());
+            testBoard.makeMove(moves.get(random.nextInt(moves.size())));
+            assertEquals(network.evaluate(testBoard), accumulator.evaluate());
+            if (k % 3 == 0) {
+                testBoard.undo();
+                assertEquals(network.evaluate(testBoard),
+                             accumulator.evaluate());
+            }
+        }
+        testBoard.init();
+        assertEquals(network.evaluate(testBoard), accumulator.evaluate());
+        AI ai = new AI(2);
+        ai.setNetwork(network);
+        Board searched = Positions.get("opening");
+        assertNotNull(ai.findMove(searched, 2));
+        assertNull(searched.accumulator());
+    }
 
+    @Test
+    public void checkBatchEvaluator() {
+        Random random = new Random(48);
+        int hidden = 5;
+        short[] weights = new short[Network.FEATURES * hidden];
+        for (int i = 0; i < weights.length; i += 1) {
+            weights[i] = (short) (random.nextInt(2001) - 1000);
+        }
+        Network network =
+            new Network(hidden, 4000, 2, new short[] { 1, -2, 3, -4, 5 },
+                        weights, new short[] { 9, -8, 7, -6, 5 }, -3);
+        AI ai = new AI();
+        Board[] boards = new Board[Positions.NAMES.length + 1];
+        byte[] positions = new byte[boards.length * Square.NUM_SQUARES];
+        for (int k = 0; k < boards.length; k += 1) {
+            boards[k] = k < Positions.NAMES.length
+                ? Positions.get(Positions.NAMES[k]) : new Board();
+            BatchEvaluator.pack(boards[k], positions, k);
+        }
+        boards[boards.length - 1].setFen("9/9/9/9/9/9/9/9/9 w");
+        BatchEvaluator.pack(boards[boards.length - 1], positions,
+                            boards.length - 1);
+        int[] scores = new int[boards.length];
+        BatchEvaluator.create(null, EvalParams.DEFAULT)
+            .evaluate(positions, boards.length, scores);
+        for (int k = 0; k < boards.length; k += 1) {
+            assertEquals(ai.staticScore(boards[k]), scores[k]);
+        }
+        ai.setParams(new EvalParams(5, -3, 40, -2, -6));
+        BatchEvaluator.create(null, ai.params())
+            .evaluate(positions, boards.length, scores);
+        for (int k = 0; k < boards.length; k += 1) {
+            assertEquals(ai.staticScore(boards[k]), scores[k]);
+        }
+        BatchEvaluator.create(network, EvalParams.DEFAULT)
+            .evaluate(positions, boards.length, scores);
+        for (int k = 0; k < boards.length; k += 1) {
+            assertEquals(network.evaluate(boards[k]), scores[k]);
+        }
+    }
 
+    @Test
+    public void checkTrainingData() throws IOException {
+        SelfPlay selfPlay = new SelfPlay(new AI(1));
+        List<TrainingData.Sample> samples =
+            new ArrayList<>(selfPlay.play(new AI(1), 49));
+        assertFalse(samples.isEmpty());
+        samples.add(samples.get(0));
+        Path dir = Files.createTempDirectory("tablut");
+        try {
+            int written = 0;
+            try (TrainingData.Writer out =
+                 new TrainingData.Writer(dir, "test", samples.size())) {
+                for (TrainingData.Sample sample : samples) {
+                    if (out.write(sample)) {
+                        written += 1;
+                    }
+                }
+                assertEquals(1, out.duplicates());
+            }
+            List<Path> shards = TrainingData.shards(dir);
+            assertEquals(1, shards.size());
+            try (TrainingData.Reader in =
+                 new TrainingData.Reader(shards.get(0))) {
+                for (int k = 0; k < written; k += 1) {
+                    TrainingData.Sample expected = samples.get(k),
+                        sample = in.next();
+                    assertEquals(expected.toString(), sample.toString());
+                    assertEquals(expected.hash(), sample.hash());
+                    assertNotNull(sample.result());
+                }
+                assertNull(in.next());
+            }
+        } finally {
+            for (Path shard : TrainingData.shards(dir)) {
+                Files.delete(shard);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkTuner() throws IOException {
+        EvalParams params = new EvalParams(3, -2, 20, -1, -4);
+        Path file = Files.createTempFile("tablut", ".params");
+        try {
+            params.save(file, "test");
+            assertEquals(params.toString(),
+                         EvalParams.load(file).toString());
+        } finally {
+            Files.delete(file);
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Tuner tuner = new Tuner(pool), packed = new Tuner(pool);
+            byte[] squares = new byte[Square.NUM_SQUARES];
+            Random random = new Random(50);
+            for (int k = 0; k < 200; k += 1) {
+                Board board = new Board();
+                for (int ply = 0; ply < 30 && board.winner() == null;
+                     ply += 1) {
+                    List<Move> moves = board.legalMoves(board.turn());
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                }
+                int result = random.nextInt(2);
+                tuner.add(board, result);
+                BatchEvaluator.pack(board, squares, 0);
+                packed.add(squares, 0, result);
+            }
+            double[] weights = Tuner.doubles(EvalParams.DEFAULT);
+            double fit = tuner.fitScale(weights);
+            assertTrue(fit > 0);
+            double error = tuner.error(weights, fit);
+            assertEquals(error, packed.error(weights, fit), 0);
+            double[] tuned = tuner.tune(weights, fit, 100, 0.5, null);
+            assertTrue(tuner.error(tuned, fit) < error);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void checkProtocolStopsAtOnce() throws InterruptedException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Protocol protocol =
+            new Protocol(new Engine(), new PrintStream(output, true));
+        Iterator<String> input =
+            List.of("uci", "position startpos", "go infinite", "stop",
+                    "quit").iterator();
+        Thread runner = new Thread(() ->
+            protocol.run(() -> input.hasNext() ? input.next() : null));
+        runner.setDaemon(true);
+        runner.start();
+        runner.join(10_000);
+        assertFalse("protocol hung after stop", runner.isAlive());
+        assertTrue(output.toString().contains("bestmove "));
+    }
+
+    @Test
+    public void checkStopAffectsOneSearch() {
+        Engine engine = new Engine(new AI(2));
+        engine.stop();
+        assertEquals(2, engine.analyze(1, SearchLimits.depth(2), null)
+                     .get(0).depth());
+        long generation = engine.newGeneration();
+        engine.stop(generation);
+        assertEquals(0, engine.analyze(1, SearchLimits.depth(2), null,
+                                       generation).get(0).depth());
+        assertEquals(2, engine.analyze(1, SearchLimits.depth(2), null)
+                     .get(0).depth());
+    }
+
+    @Test
+    public void checkPositionIndex() throws IOException {
+        Random random = new Random(36);
+        ArrayList<GameRecord> games = new ArrayList<>();
+        for (int g = 0; g < 3; g += 1) {
+            Board board = new Board();
+            ArrayList<Move> moves = new ArrayList<>();
+            for (int k = 0; k < 12 + 4 * g && board.winner() == null;
+                 k += 1) {
+                List<Move> legal = board.legalMoves(board.turn());
+                Move move = legal.get(random.nextInt(legal.size()));
+                board.makeMove(move);
+                moves.add(move);
+            }
+            games.add(new GameRecord(null, 0, moves,
+                                     g == 0 ? null : g == 1 ? Piece.WHITE
+                                     : Piece.BLACK));
+        }
+        HashMap<Long, long[]> expected = new HashMap<>();
+        for (GameRecord game : games) {
+            Board board = game.start();
+            ArrayList<Long> hashes = new ArrayList<>();
+            hashes.add(board.hash());
+            for (Move move : game.moves()) {
+                board.makeMove(move);
+                hashes.add(board.hash());
+            }
+            for (long hash : hashes) {
+                long[] counts =
+                    expected.computeIfAbsent(hash, h -> new long[3]);
+                counts[0] += 1;
+                counts[1] += game.winner() == Piece.WHITE ? 1 : 0;
+                counts[2] += game.winner() == Piece.BLACK ? 1 : 0;
+            }
+        }
+        Path dir = Files.createTempDirectory("tablut");
+        Path archive = dir.resolve("games.tba");
+        int rounds = PositionIndex.MAX_SEGMENTS + 2;
+        try {
+            try (GameArchive.Writer writer = new GameArchive.Writer(archive)) {
+                for (GameRecord game : games) {
+                    writer.write(game);
+                }
+            }
+            Path meta = dir.resolve(PositionIndex.META_FILE),
+                staleMeta = dir.resolve("stale");
+            try (PositionIndex index = new PositionIndex(dir)) {
+                index.addArchive(archive);
+                index.flush();
+                Files.copy(meta, staleMeta);
+                index.addArchive(archive);
+                index.flush();
+            }
+            Files.move(staleMeta, meta, StandardCopyOption.REPLACE_EXISTING);
+            try (PositionIndex index = new PositionIndex(dir)) {
+                for (int r = 2; r < rounds; r += 1) {
+                    index.addArchive(archive);
+                    index.flush();
+                }
+                for (Map.Entry<Long, long[]> entry : expected.entrySet()) {
+                    PositionIndex.Stats stats = index.lookup(entry.getKey());
+                    long[] counts = entry.getValue();
+                    assertEquals(rounds * counts[0], stats.count());
+                    assertEquals(rounds * counts[1], stats.whiteWins());
+                    assertEquals(rounds * counts[2], stats.blackWins());
+                }
+                assertEquals(0, index.lookup(12345).count());
+            }
+            int segments = 0;
+            try (DirectoryStream<Path> files =
+                 Files.newDirectoryStream(dir, PositionIndex.SEGMENT_PREFIX
+                                          + "*"
+                                          + PositionIndex.SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    segments += 1;
+                }
+            }
+            assertEquals(2, segments);
+            byte[] metaContents = Files.readAllBytes(meta);
+            try (PositionIndex index = PositionIndex.open(dir, true)) {
+                long[] counts = expected.values().iterator().next();
+                assertEquals(rounds * counts[0],
+                             index.lookup(expected.keySet().iterator()
+                                          .next()).count());
+                try {
+                    index.merge();
+                    fail("merged a read-only index");
+                } catch (IllegalStateException excp) {
+                    /* Expected. */
+                }
+            }
+            assertArrayEquals(metaContents, Files.readAllBytes(meta));
+            Path missing = dir.resolve("missing");
+            try {
+                PositionIndex.open(missing, true).close();
+                fail("opened a missing index");
+            } catch (IOException excp) {
+                assertFalse(Files.exists(missing));
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /** Check that Move.mv and Move.isGrammaticalMove, given characters
+     *  in the middle of a string, agree with Move.MOVE_PATTERN. */
+    @Test
+    public void checkMoveParser() {
+        String chars = "aAeiIjJ@`0159-x";
+        Matcher matcher = Move.MOVE_PATTERN.matcher("");
+        char[] text = "# ....  ".toCharArray();
+        for (int k = 0; k < chars.length() * chars.length()
+                 * chars.length() * chars.length(); k += 1) {
+            for (int i = 0, n = k; i < 4; i += 1, n /= chars.length()) {
+                text[2 + i] = chars.charAt(n % chars.length());
+            }
+            String str = new String(text, 2, 4);
+            boolean matches = matcher.reset(str).matches();
+            String line = new String(text);
+            assertEquals(str, matches, Move.isGrammaticalMove(line, 2, 6));
+            assertEquals(str, matches, Move.isGrammaticalMove(str));
+            Move move = Move.mv(line, 2, 6);
+            if (!matches) {
+                assertNull(str, move);
+            } else if (move != null) {
+                assertEquals(str, str.toLowerCase(), move.toString());
+            }
+        }
+        assertEquals(Move.mv("d1-3"), Move.mv("D1-3"));
+        assertEquals(Move.mv("d1-f"), Move.mv("xd1-Fx", 1, 5));
+        assertNull(Move.mv("a1-a"));
+        assertNull(Move.mv("e5-5"));
+        assertTrue(Move.isGrammaticalMove("a1-a"));
+        assertFalse(Move.isGrammaticalMove("j1-3"));
+        assertFalse(Move.isGrammaticalMove("a0-3"));
+        assertFalse(Move.isGrammaticalMove("a1-0"));
+        assertFalse(Move.isGrammaticalMove("a1 3"));
+        assertFalse(Move.isGrammaticalMove("a1-33"));
+        assertFalse(Move.isGrammaticalMove("a1-"));
+    }
+
+    /** Return the errors reported by a Controller with manual players
+     *  given COMMANDS, one per line. */
+    private static String controllerErrors(String... commands) {
+        String input = "manual white\nmanual black\n"
+            + String.join("\n", commands) + "\nquit\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+            err = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(out, true),
+            errors = new PrintStream(err, true);
+        new Controller(new NullView(), null,
+                       new TextReporter(output, errors),
+                       new TextPlayer(), new AI(), false,
+                       new ByteArrayInputStream(input.getBytes()),
+                       output).play();
+        return err.toString().replaceAll("\\s*\n+", "\n").trim();
+    }
+
+    /** Check that the Controller's commands accept the arguments their
+     *  syntax allows, and reject others with the usual messages. */
+    @Test
+    public void checkControllerCommands() {
+        assertEquals("", controllerErrors("seed 42", "  LIMIT 20 # a limit",
+                                          "D1-3", "C5-4", "undo", "redo 1",
+                                          "goto end", "goto 0", "dump",
+                                          "", "# comment"));
+        assertEquals("Error: Bad command: seed", controllerErrors("seed"));
+        assertEquals("Error: Bad command: seed 1 2",
+                     controllerErrors("seed 1 2"));
+        assertEquals("Error: Bad command: seed -1",
+                     controllerErrors("seed -1"));
+        assertEquals("Error: Bad command: undo 1 2",
+                     controllerErrors("undo 1 2"));
+        assertEquals("Error: Bad command: goto last",
+                     controllerErrors("goto last"));
+        assertEquals("Error: Bad command: manual red",
+                     controllerErrors("Manual Red"));
+        assertEquals("Error: Bad command: toggle j1",
+                     controllerErrors("toggle j1"));
+        assertEquals("Error: Bad command: dump all",
+                     controllerErrors("dump all"));
+        assertEquals("Error: Bad command: frobnicate",
+                     controllerErrors("frobnicate"));
+        assertEquals("Error: Bad command: j1-3", controllerErrors("j1-3"));
+        assertEquals("Invalid move. Please try again.",
+                     controllerErrors("a1-a"));
+        assertEquals("Error: number too large",
+                     controllerErrors("limit 99999999999"));
+    }
+
+    @Test
+    public void checkSprt() {
+        Match.Result result = new Match.Result(0, 10);
+        for (int k = 0; k < 50; k += 1) {
+            result.add(k % 5 < 3 ? Piece.WHITE : Piece.BLACK);
+        }
+        assertEquals(30, result.wins());
+        assertEquals(20, result.losses());
+        assertEquals(0.2671154560, result.llr(), 1e-9);
+        assertFalse(result.decided());
+        assertEquals("inconclusive", result.verdict());
+
+        Match.Result better = new Match.Result(0, 10);
+        for (int k = 0; k < 103; k += 1) {
+            better.add(Piece.WHITE);
+        }
+        assertFalse(better.decided());
+        better.add(Piece.WHITE);
+        assertTrue(better.decided());
+        assertTrue(better.verdict().startsWith("H1 accepted"));
+
+        Match.Result worse = new Match.Result(0, 10);
+        for (int k = 0; k < 100; k += 1) {
+            worse.add(Piece.BLACK);
+        }
+        assertFalse(worse.decided());
+        worse.add(Piece.BLACK);
+        assertTrue(worse.decided());
+        assertTrue(worse.verdict().startsWith("H0 accepted"));
+    }
+
+    @Test
+    public void checkMatchPairsOpenings() {
+        Match match = new Match(new AI(1), new AI(1));
+        match.setSeed(7);
+        for (int game = 0; game < 6; game += 2) {
+            List<Move> opening = match.gameOpening(game);
+            assertEquals(Match.DEFAULT_OPENING_PLIES, opening.size());
+            assertEquals(opening, match.gameOpening(game + 1));
+            assertFalse(opening.equals(match.gameOpening(game + 2)));
+            assertTrue(Match.firstIsWhite(game));
+            assertFalse(Match.firstIsWhite(game + 1));
+            Board board = new Board();
+            for (Move move : opening) {
+                assertTrue(board.isLegal(move));
+                board.makeMove(move);
+            }
+        }
+    }
+
+    @Test
+    public void checkVariantPlay() {
+        Variant variant = Variant.get("brandubh");
+        VariantBoard board = new VariantBoard(variant);
+        board.setFen("7/7/7/B6/7/K6/7 w");
+        VariantAI ai = new VariantAI(2);
+        assertEquals(VariantBoard.move(variant.cell(0, 1), variant.cell(0, 0)),
+                     ai.findMove(board));
+        assertEquals("7/7/7/B6/7/K6/7 w", board.fen());
+
+        Match match = new Match(new AI(1), new AI(1));
+        match.setVariant(variant);
+        match.setGames(4);
+        match.setThreads(1);
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        try {
+            assertEquals(4, match.run(out).games());
+            assertEquals(4, match.run(out).games());
+        } catch (IOException excp) {
+            fail(excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkMatchArchiveClosedAfterRun() throws IOException {
+        Path file = Files.createTempFile("tablut", ".tba");
+        try {
+            Match match = new Match(new AI(1), new AI(1));
+            match.setGames(2);
+            match.setThreads(1);
+            match.setArchive(new GameArchive.Writer(file));
+            PrintStream out = new PrintStream(new ByteArrayOutputStream());
+            assertEquals(2, match.run(out).games());
+            try {
+                match.run(out);
+                fail("ran a match into a closed archive");
+            } catch (IllegalStateException excp) {
+                /* Expected. */
+            }
+            try (GameArchive.Reader reader = new GameArchive.Reader(file)) {
+                assertNotNull(reader.next());
+                assertNotNull(reader.next());
+                assertNull(reader.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
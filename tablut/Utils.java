@@ -2,6 +2,7 @@ package tablut;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 
 /** Miscellaneous utilties.
  *  @author P. N. Hilfinger */
@@ -14,6 +15,28 @@ class Utils {
         return new IllegalArgumentException(String.format(msg, args));
     }
 
+    /** Return the whitespace-separated words in LINE, in order.  Cheaper
+     *  than LINE.trim().split("\\s+"), which uses a regular expression,
+     *  and returns an empty array for a blank LINE. */
+    static String[] words(String line) {
+        ArrayList<String> result = new ArrayList<>();
+        int n = line.length(), i;
+        i = 0;
+        while (i < n) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            int k = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            if (k < i) {
+                result.add(line.substring(k, i));
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
     /** Report a fatal error and exit.  MSG and ARGS are as for String.format
      *  and define a message string. */
     static void fatal(String msg, Object... args) {
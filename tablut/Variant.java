@@ -0,0 +1,227 @@
+package tablut;
+
+import java.util.List;
+import java.util.Random;
+
+import static tablut.Utils.error;
+
+/** A rule variant of the tafl games: the size of the board, the starting
+ *  position, and the rules on how the king escapes, whether he helps to
+ *  capture, and how he is captured.  Each variant also carries the tables
+ *  that VariantBoards of its size use in place of size-dependent
+ *  computation: the board is stored with a border of off-board cells (a
+ *  "mailbox"), so that move generation and capture need no bounds checks,
+ *  and the special squares are looked up rather than computed.
+ *  Variants are immutable.
+ *  <p>
+ *  A variant is named by one of the names of VARIANTS, optionally followed
+ *  by options separated by commas: "corners" or "edges" (where the king
+ *  escapes), "armed" or "unarmed" (whether the king captures), and
+ *  "strong" or "weak" (whether the king must always be surrounded on four
+ *  sides to be captured, or only on or beside the throne).  For example,
+ *  "tablut,corners,unarmed".
+ *  @author Osvaldo Valadez
+ */
+final class Variant {
+
+    /** Contents of cells of a VariantBoard. */
+    static final byte
+        EMPTY_CELL = 0, WHITE_CELL = 1, BLACK_CELL = 2, KING_CELL = 3,
+        OFF_CELL = 4;
+
+    /** 7x7 Brandubh: corner escape, armed king, captured by two except on
+     *  or beside the throne. */
+    static final Variant BRANDUBH =
+        new Variant("brandubh", 7, "3B3/3B3/3W3/BBWKWBB/3W3/3B3/3B3 b",
+                    true, true, false);
+
+    /** 9x9 Tablut, with the initial position and rules of Board, except
+     *  that the game ends when the king reaches an edge (which Board does
+     *  not check): edge escape, armed king, captured by two except on or
+     *  beside the throne. */
+    static final Variant TABLUT =
+        new Variant("tablut", 9, Board.INITIAL_FEN, false, true, false);
+
+    /** 11x11 (Copenhagen) Hnefatafl: corner escape, armed king, captured
+     *  by four. */
+    static final Variant HNEFATAFL =
+        new Variant("hnefatafl", 11,
+                    "3BBBBB3/5B5/11/B4W4B/B3WWW3B/BB1WWKWW1BB/B3WWW3B/"
+                    + "B4W4B/11/5B5/3BBBBB3 b", true, true, true);
+
+    /** 13x13 Hnefatafl: corner escape, armed king, captured by four. */
+    static final Variant HNEFATAFL13 =
+        new Variant("hnefatafl13", 13,
+                    "4BBBBB4/6B6/13/B5W5B/B5W5B/B4WWW4B/BB2WWKWW2BB/"
+                    + "B4WWW4B/B5W5B/B5W5B/13/6B6/4BBBBB4 b",
+                    true, true, true);
+
+    /** The basic variants. */
+    static final List<Variant> VARIANTS =
+        List.of(BRANDUBH, TABLUT, HNEFATAFL, HNEFATAFL13);
+
+    /** Return the variant named NAME (see above).  Throws
+     *  IllegalArgumentException if there is none. */
+    static Variant get(String name) {
+        String[] parts = name.trim().toLowerCase().split(",");
+        Variant result = null;
+        for (Variant variant : VARIANTS) {
+            if (variant._name.equals(parts[0])) {
+                result = variant;
+            }
+        }
+        if (result == null) {
+            throw error("unknown variant: %s", parts[0]);
+        }
+        boolean corners = result._cornerEscape, armed = result._armedKing,
+            strong = result._strongKing;
+        for (int i = 1; i < parts.length; i += 1) {
+            switch (parts[i]) {
+            case "corners":
+            case "edges":
+                corners = parts[i].equals("corners");
+                break;
+            case "armed":
+            case "unarmed":
+                armed = parts[i].equals("armed");
+                break;
+            case "strong":
+            case "weak":
+                strong = parts[i].equals("strong");
+                break;
+            default:
+                throw error("unknown variant option: %s", parts[i]);
+            }
+        }
+        if (corners == result._cornerEscape && armed == result._armedKing
+            && strong == result._strongKing) {
+            return result;
+        }
+        return new Variant(result._name, result._size, result._initial,
+                           corners, armed, strong);
+    }
+
+    /** A variant called NAME on a SIZE x SIZE board, starting from INITIAL
+     *  (in the notation of VariantBoard.setFen), in which the king escapes
+     *  to the corners iff CORNERESCAPE (otherwise to any edge square),
+     *  helps to capture iff ARMEDKING, and is always captured only by
+     *  surrounding him on four sides iff STRONGKING. */
+    private Variant(String name, int size, String initial,
+                    boolean cornerEscape, boolean armedKing,
+                    boolean strongKing) {
+        _name = name;
+        _size = size;
+        _initial = initial;
+        _cornerEscape = cornerEscape;
+        _armedKing = armedKing;
+        _strongKing = strongKing;
+
+        width = size + 2;
+        directions = new int[] { width, 1, -width, -1 };
+        squares = new int[size * size];
+        restricted = new boolean[width * width];
+        escape = new boolean[width * width];
+        nearThrone = new boolean[width * width];
+        throne = cell(size / 2, size / 2);
+        for (int row = 0; row < size; row += 1) {
+            for (int col = 0; col < size; col += 1) {
+                int p = cell(col, row);
+                squares[row * size + col] = p;
+                boolean corner = (row == 0 || row == size - 1)
+                    && (col == 0 || col == size - 1);
+                boolean edge = row == 0 || row == size - 1
+                    || col == 0 || col == size - 1;
+                restricted[p] = p == throne || (cornerEscape && corner);
+                escape[p] = cornerEscape ? corner : edge;
+                nearThrone[p] =
+                    Math.abs(p - throne) == 1 || Math.abs(p - throne) == width
+                    || p == throne;
+            }
+        }
+        zobrist = new long[KING_CELL + 1][width * width];
+        Random random = new Random(size);
+        for (long[] keys : zobrist) {
+            for (int p = 0; p < keys.length; p += 1) {
+                keys[p] = random.nextLong();
+            }
+        }
+        whiteToMove = random.nextLong();
+    }
+
+    /** Return the index of the cell at column COL and row ROW (from 0 at
+     *  the lower left) of a VariantBoard of my size. */
+    int cell(int col, int row) {
+        return (row + 1) * width + col + 1;
+    }
+
+    /** Return my basic name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the number of squares on a side of my board. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my starting position (see VariantBoard.setFen). */
+    String initial() {
+        return _initial;
+    }
+
+    /** Return true iff the king escapes to the corners, rather than to
+     *  any edge square. */
+    boolean cornerEscape() {
+        return _cornerEscape;
+    }
+
+    /** Return true iff the king helps to capture. */
+    boolean armedKing() {
+        return _armedKing;
+    }
+
+    /** Return true iff the king must be surrounded on all four sides to be
+     *  captured wherever he is (otherwise, only on or beside the
+     *  throne). */
+    boolean strongKing() {
+        return _strongKing;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s,%s,%s,%s", _name,
+                             _cornerEscape ? "corners" : "edges",
+                             _armedKing ? "armed" : "unarmed",
+                             _strongKing ? "strong" : "weak");
+    }
+
+    /** Width of the mailbox (the board plus its border). */
+    final int width;
+    /** Offsets between neighboring cells, by direction (as in Square). */
+    final int[] directions;
+    /** The cells of the squares on the board, in square-index order. */
+    final int[] squares;
+    /** The cell of the throne. */
+    final int throne;
+    /** restricted[p] iff only the king may stop on cell p (the throne and,
+     *  with corner escape, the corners).  Empty restricted squares are
+     *  hostile to all pieces. */
+    final boolean[] restricted;
+    /** escape[p] iff the king wins by reaching cell p. */
+    final boolean[] escape;
+    /** nearThrone[p] iff p is the throne or orthogonally adjacent to it. */
+    final boolean[] nearThrone;
+    /** zobrist[c][p] is the hash key of contents c on cell p. */
+    final long[][] zobrist;
+    /** Hash key of White to move. */
+    final long whiteToMove;
+
+    /** My basic name. */
+    private final String _name;
+    /** My board size. */
+    private final int _size;
+    /** My starting position. */
+    private final String _initial;
+    /** Rule options. */
+    private final boolean _cornerEscape, _armedKing, _strongKing;
+}
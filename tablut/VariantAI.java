@@ -0,0 +1,130 @@
+package tablut;
+
+import static tablut.Variant.BLACK_CELL;
+import static tablut.Variant.EMPTY_CELL;
+import static tablut.Variant.KING_CELL;
+import static tablut.Variant.WHITE_CELL;
+
+/** A player for any Variant: a fixed-depth alpha-beta search on a
+ *  VariantBoard.  The evaluation counts material (a white piece being
+ *  worth two black ones, since Black starts with about twice as many)
+ *  and how near the king is to escaping.  A side with no legal moves
+ *  loses.  The search allocates nothing but its move buffers, one array
+ *  per ply for each call of findMove.  A VariantAI keeps no state between
+ *  searches, so one may be used by several threads at once.
+ *  @author Osvaldo Valadez
+ */
+final class VariantAI {
+
+    /** Value of a won position, less the number of plies to the win. */
+    static final int WINNING_VALUE = 1_000_000;
+
+    /** Value of a white piece (other than the king). */
+    static final int WHITE_VALUE = 20;
+
+    /** Value of a black piece. */
+    static final int BLACK_VALUE = 10;
+
+    /** Value lost by White for each step between the king and the
+     *  nearest escape square. */
+    static final int KING_DISTANCE_VALUE = 3;
+
+    /** A player that searches DEPTH plies (at least 1). */
+    VariantAI(int depth) {
+        _depth = Math.max(1, depth);
+    }
+
+    /** Return my search depth. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the move (as for VariantBoard.move) that I choose for the
+     *  side to move on BOARD, which must have a legal move.  BOARD is
+     *  unchanged on return. */
+    int findMove(VariantBoard board) {
+        int[][] moves = new int[_depth][board.maxMoves()];
+        int[] buffer = moves[_depth - 1];
+        int n = board.legalMoves(buffer);
+        if (n == 0) {
+            throw new IllegalStateException("no legal move");
+        }
+        int best = buffer[0], alpha = -WINNING_VALUE - 1;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(buffer[k]);
+            int value = -search(board, _depth - 1, -WINNING_VALUE - 1,
+                                -alpha, 1, moves);
+            board.undo();
+            if (value > alpha) {
+                alpha = value;
+                best = buffer[k];
+            }
+        }
+        return best;
+    }
+
+    /** Return the value of the position on BOARD, PLY plies below the
+     *  root, for the side to move, searching DEPTH more plies with
+     *  MOVES[DEPTH - 1] holding its moves.  The value is exact if it is
+     *  strictly between ALPHA and BETA, and otherwise only bounded on the
+     *  same side of them. */
+    private int search(VariantBoard board, int depth, int alpha, int beta,
+                       int ply, int[][] moves) {
+        int winner = board.winner();
+        if (winner != EMPTY_CELL) {
+            return winner == board.turn() ? WINNING_VALUE - ply
+                : ply - WINNING_VALUE;
+        }
+        if (depth == 0) {
+            int score = staticScore(board);
+            return board.turn() == WHITE_CELL ? score : -score;
+        }
+        int[] buffer = moves[depth - 1];
+        int n = board.legalMoves(buffer);
+        if (n == 0) {
+            return ply - WINNING_VALUE;
+        }
+        for (int k = 0; k < n && alpha < beta; k += 1) {
+            board.makeMove(buffer[k]);
+            int value = -search(board, depth - 1, -beta, -alpha, ply + 1,
+                                moves);
+            board.undo();
+            alpha = Math.max(alpha, value);
+        }
+        return alpha;
+    }
+
+    /** Return the static value of the position on BOARD, from White's
+     *  point of view. */
+    static int staticScore(VariantBoard board) {
+        Variant variant = board.variant();
+        int size = variant.size(), score = 0, king = -1;
+        for (int p : variant.squares) {
+            switch (board.get(p)) {
+            case WHITE_CELL:
+                score += WHITE_VALUE;
+                break;
+            case BLACK_CELL:
+                score -= BLACK_VALUE;
+                break;
+            case KING_CELL:
+                king = p;
+                break;
+            default:
+                break;
+            }
+        }
+        if (king >= 0) {
+            int col = king % variant.width - 1, row = king / variant.width - 1;
+            int dCol = Math.min(col, size - 1 - col),
+                dRow = Math.min(row, size - 1 - row);
+            int distance = variant.cornerEscape() ? dCol + dRow
+                : Math.min(dCol, dRow);
+            score -= KING_DISTANCE_VALUE * distance;
+        }
+        return score;
+    }
+
+    /** My search depth. */
+    private final int _depth;
+}
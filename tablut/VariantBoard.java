@@ -0,0 +1,436 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Utils.error;
+import static tablut.Variant.BLACK_CELL;
+import static tablut.Variant.EMPTY_CELL;
+import static tablut.Variant.KING_CELL;
+import static tablut.Variant.OFF_CELL;
+import static tablut.Variant.WHITE_CELL;
+
+/** A board for any Variant of tafl.  The squares are cells of a "mailbox":
+ *  an array one cell wider on each side than the board, whose border cells
+ *  hold OFF_CELL, so that a line of moves or a capture test stops at the
+ *  edge of the board without bounds checks, and the special squares are
+ *  looked up in the tables of the variant.  Moves are ints
+ *  (see move(FROM, TO)), and are generated into arrays supplied by the
+ *  caller, so that move generation, making moves, and undoing them
+ *  allocate nothing.
+ *  <p>
+ *  The rules are those of Board, generalized by the variant's options:
+ *  pieces move like rooks, but only the king may stop on the throne (or,
+ *  with corner escape, on a corner), and pieces may pass over the empty
+ *  throne.  A piece is captured when sandwiched between the piece just
+ *  moved and a friendly piece (the king, if armed, counting as a white
+ *  piece) or a hostile square: an empty restricted square, or the
+ *  throne with the king on it for Black's pieces.  An unarmed king
+ *  captures nothing.  The king is captured by
+ *  surrounding him on all four sides (with the empty throne counting as
+ *  Black's) if he is strong or on or beside the throne, and otherwise like
+ *  any other piece.  White wins when the king reaches an escape square,
+ *  and Black when the king is captured.  The draw rules of Board (the move
+ *  limit and repeated positions) are not implemented.  A side with no
+ *  legal moves loses, but winner() does not report that (it would cost a
+ *  move generation after every move): it is up to the caller, finding that
+ *  legalMoves returns none before the game is over, to score the
+ *  position as lost (see VariantAI and Match).
+ *  @author Osvaldo Valadez
+ */
+final class VariantBoard {
+
+    /** A board for VARIANT, set to its initial position. */
+    VariantBoard(Variant variant) {
+        _variant = variant;
+        _cells = new byte[variant.width * variant.width];
+        int size = variant.size();
+        _maxMoves = 2 * (size - 1) * size * size;
+        _undo = new int[UNDO_RECORD];
+        setFen(variant.initial());
+    }
+
+    /** A copy of MODEL, without its undo history. */
+    VariantBoard(VariantBoard model) {
+        _variant = model._variant;
+        _cells = model._cells.clone();
+        _maxMoves = model._maxMoves;
+        _undo = new int[UNDO_RECORD];
+        _turn = model._turn;
+        _winner = model._winner;
+        _hash = model._hash;
+    }
+
+    /** Return the move from cell FROM to cell TO. */
+    static int move(int from, int to) {
+        return from << MOVE_SHIFT | to;
+    }
+
+    /** Return the cell moved from by MOVE. */
+    static int from(int move) {
+        return move >>> MOVE_SHIFT;
+    }
+
+    /** Return the cell moved to by MOVE. */
+    static int to(int move) {
+        return move & MOVE_MASK;
+    }
+
+    /** Return my variant. */
+    Variant variant() {
+        return _variant;
+    }
+
+    /** Return the contents of cell P. */
+    byte get(int p) {
+        return _cells[p];
+    }
+
+    /** Return the side to move: WHITE_CELL or BLACK_CELL. */
+    int turn() {
+        return _turn;
+    }
+
+    /** Return the winner (WHITE_CELL or BLACK_CELL) if the king has
+     *  escaped or been captured, and otherwise EMPTY_CELL (even if the
+     *  side to move has no legal moves). */
+    int winner() {
+        return _winner;
+    }
+
+    /** Return the hash of the current position. */
+    long hash() {
+        return _hash;
+    }
+
+    /** Return the size of the arrays that legalMoves needs. */
+    int maxMoves() {
+        return _maxMoves;
+    }
+
+    /** Store the legal moves of the side to move in MOVES, which must have
+     *  at least maxMoves() elements, and return their number.  There are
+     *  none if the game is over. */
+    int legalMoves(int[] moves) {
+        if (_winner != EMPTY_CELL) {
+            return 0;
+        }
+        byte[] cells = _cells;
+        boolean[] restricted = _variant.restricted;
+        int[] directions = _variant.directions;
+        int n = 0;
+        for (int from : _variant.squares) {
+            int piece = cells[from];
+            if (piece == EMPTY_CELL || side(piece) != _turn) {
+                continue;
+            }
+            boolean king = piece == KING_CELL;
+            for (int dir : directions) {
+                for (int to = from + dir; cells[to] == EMPTY_CELL;
+                     to += dir) {
+                    if (king || !restricted[to]) {
+                        moves[n] = from << MOVE_SHIFT | to;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Make MOVE, which must be legal, with its captures. */
+    void makeMove(int move) {
+        int from = move >>> MOVE_SHIFT, to = move & MOVE_MASK;
+        byte piece = _cells[from];
+        int mover = side(piece);
+        int top = _undoTop;
+        if (top + UNDO_RECORD > _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undo.length);
+        }
+        put(from, EMPTY_CELL);
+        put(to, piece);
+        int prevWinner = _winner;
+        if (piece == KING_CELL && _variant.escape[to]) {
+            _winner = WHITE_CELL;
+        }
+        boolean captures = piece != KING_CELL || _variant.armedKing();
+        for (int dir : _variant.directions) {
+            if (!captures) {
+                break;
+            }
+            int victim = to + dir;
+            byte contents = _cells[victim];
+            if (contents == EMPTY_CELL || contents == OFF_CELL
+                || side(contents) == mover) {
+                continue;
+            }
+            if (contents == KING_CELL ? kingCaptured(victim, dir)
+                : hostile(victim + dir, mover)) {
+                _undo[top] = victim << MOVE_SHIFT | contents;
+                top += 1;
+                put(victim, EMPTY_CELL);
+                if (contents == KING_CELL) {
+                    _winner = BLACK_CELL;
+                }
+            }
+        }
+        _undo[top] = prevWinner << CAPTURES_SHIFT
+            | (top - _undoTop) << MOVE_SHIFT;
+        _undo[top + 1] = move;
+        _undoTop = top + 2;
+        _turn = opponent(_turn);
+        _hash ^= _variant.whiteToMove;
+    }
+
+    /** Undo the last move made. */
+    void undo() {
+        int top = _undoTop - 2;
+        int move = _undo[top + 1];
+        int info = _undo[top];
+        int captures = (info >>> MOVE_SHIFT) & MOVE_MASK;
+        _turn = opponent(_turn);
+        _hash ^= _variant.whiteToMove;
+        _winner = info >>> CAPTURES_SHIFT;
+        int from = move >>> MOVE_SHIFT, to = move & MOVE_MASK;
+        byte piece = _cells[to];
+        put(to, EMPTY_CELL);
+        put(from, piece);
+        for (int k = 0; k < captures; k += 1) {
+            top -= 1;
+            int record = _undo[top];
+            put(record >>> MOVE_SHIFT, (byte) (record & MOVE_MASK));
+        }
+        _undoTop = top;
+    }
+
+    /** Set the position to FEN, in the notation of Board.setFen, except
+     *  that runs of empty squares are decimal numbers, so that "11" is 11
+     *  empty squares.  Throws IllegalArgumentException, leaving the board
+     *  unchanged, if FEN is not a position on a board of my size with at
+     *  most one king. */
+    void setFen(String fen) {
+        int size = _variant.size();
+        byte[] cells = new byte[_cells.length];
+        Arrays.fill(cells, OFF_CELL);
+        int row = size - 1, col = 0, kings = 0, i;
+        for (i = 0; i < fen.length() && fen.charAt(i) != ' '; i += 1) {
+            char c = fen.charAt(i);
+            byte piece;
+            switch (c) {
+            case '/':
+                if (col != size || row == 0) {
+                    throw error("bad position: %s", fen);
+                }
+                row -= 1;
+                col = 0;
+                continue;
+            case 'w': case 'W':
+                piece = WHITE_CELL;
+                break;
+            case 'b': case 'B':
+                piece = BLACK_CELL;
+                break;
+            case 'k': case 'K':
+                piece = KING_CELL;
+                kings += 1;
+                break;
+            default:
+                int run = 0;
+                for (; i < fen.length() && Character.isDigit(fen.charAt(i));
+                     i += 1) {
+                    run = 10 * run + fen.charAt(i) - '0';
+                }
+                i -= 1;
+                if (run == 0 || col + run > size) {
+                    throw error("bad position: %s", fen);
+                }
+                for (; run > 0; run -= 1, col += 1) {
+                    cells[_variant.cell(col, row)] = EMPTY_CELL;
+                }
+                continue;
+            }
+            if (col == size) {
+                throw error("bad position: %s", fen);
+            }
+            cells[_variant.cell(col, row)] = piece;
+            col += 1;
+        }
+        if (row != 0 || col != size || kings > 1 || i + 2 != fen.length()) {
+            throw error("bad position: %s", fen);
+        }
+        int turn;
+        switch (fen.charAt(i + 1)) {
+        case 'w': case 'W':
+            turn = WHITE_CELL;
+            break;
+        case 'b': case 'B':
+            turn = BLACK_CELL;
+            break;
+        default:
+            throw error("bad position: %s", fen);
+        }
+        System.arraycopy(cells, 0, _cells, 0, cells.length);
+        _turn = turn;
+        _winner = EMPTY_CELL;
+        _undoTop = 0;
+        _hash = turn == WHITE_CELL ? _variant.whiteToMove : 0;
+        for (int p : _variant.squares) {
+            if (_cells[p] != EMPTY_CELL) {
+                _hash ^= _variant.zobrist[_cells[p]][p];
+            }
+        }
+    }
+
+    /** Return the current position in the notation of setFen. */
+    String fen() {
+        int size = _variant.size();
+        StringBuilder result = new StringBuilder();
+        for (int row = size - 1; row >= 0; row -= 1) {
+            int empty = 0;
+            for (int col = 0; col < size; col += 1) {
+                byte contents = _cells[_variant.cell(col, row)];
+                if (contents == EMPTY_CELL) {
+                    empty += 1;
+                    continue;
+                }
+                if (empty > 0) {
+                    result.append(empty);
+                    empty = 0;
+                }
+                result.append(contents == WHITE_CELL ? 'W'
+                              : contents == BLACK_CELL ? 'B' : 'K');
+            }
+            if (empty > 0) {
+                result.append(empty);
+            }
+            result.append(row == 0 ? ' ' : '/');
+        }
+        result.append(_turn == WHITE_CELL ? 'w' : 'b');
+        return result.toString();
+    }
+
+    /** Return the number of positions DEPTH moves from the current one
+     *  (counting none beyond the end of the game). */
+    long perft(int depth) {
+        int[][] moves = new int[depth][_maxMoves];
+        return perft(depth, moves);
+    }
+
+    /** Return the number of positions DEPTH moves from the current one,
+     *  using MOVES[DEPTH - 1] to hold the moves of the current one. */
+    private long perft(int depth, int[][] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] buffer = moves[depth - 1];
+        int n = legalMoves(buffer);
+        if (depth == 1) {
+            return n;
+        }
+        long result = 0;
+        for (int k = 0; k < n; k += 1) {
+            makeMove(buffer[k]);
+            result += perft(depth - 1, moves);
+            undo();
+        }
+        return result;
+    }
+
+    /** Return true iff the king, on cell P, is captured by the black piece
+     *  just moved beside him in direction -DIR. */
+    private boolean kingCaptured(int p, int dir) {
+        if (_variant.strongKing() || _variant.nearThrone[p]) {
+            for (int d : _variant.directions) {
+                int q = p + d;
+                if (_cells[q] != BLACK_CELL
+                    && !(_cells[q] == EMPTY_CELL && q == _variant.throne)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return hostile(p + dir, BLACK_CELL);
+    }
+
+    /** Return true iff cell P is hostile to the pieces of the opponent of
+     *  MOVER, which has just moved. */
+    private boolean hostile(int p, int mover) {
+        byte contents = _cells[p];
+        if (contents == EMPTY_CELL) {
+            return _variant.restricted[p];
+        } else if (contents == KING_CELL) {
+            return mover == WHITE_CELL
+                && (_variant.armedKing() || p == _variant.throne);
+        } else {
+            return contents == mover;
+        }
+    }
+
+    /** Set cell P to CONTENTS, updating the hash. */
+    private void put(int p, byte contents) {
+        long[][] zobrist = _variant.zobrist;
+        if (_cells[p] != EMPTY_CELL) {
+            _hash ^= zobrist[_cells[p]][p];
+        }
+        if (contents != EMPTY_CELL) {
+            _hash ^= zobrist[contents][p];
+        }
+        _cells[p] = contents;
+    }
+
+    /** Return the side that PIECE (not empty) belongs to. */
+    private static int side(int piece) {
+        return piece == KING_CELL ? WHITE_CELL : piece;
+    }
+
+    /** Return the opponent of SIDE. */
+    private static int opponent(int side) {
+        return WHITE_CELL + BLACK_CELL - side;
+    }
+
+    /** Print the number of positions reachable from the initial position
+     *  of the variant named ARGS[0] (default "tablut") in 1 to ARGS[1]
+     *  (default 4) moves, with the rate at which they were generated. */
+    public static void main(String... args) {
+        Variant variant = Variant.get(args.length > 0 ? args[0] : "tablut");
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        VariantBoard board = new VariantBoard(variant);
+        System.out.printf("%s%n", variant);
+        for (int d = 1; d <= depth; d += 1) {
+            long start = System.nanoTime();
+            long nodes = board.perft(d);
+            long micros = Math.max(1, (System.nanoTime() - start) / 1000);
+            System.out.printf("perft %d: %12d (%d nodes/s)%n", d, nodes,
+                              nodes * 1_000_000 / micros);
+        }
+    }
+
+    /** Shift of the cell moved from in a move. */
+    private static final int MOVE_SHIFT = 8;
+    /** Mask of the cell moved to in a move. */
+    private static final int MOVE_MASK = (1 << MOVE_SHIFT) - 1;
+    /** Shift of the previous winner in an undo record. */
+    private static final int CAPTURES_SHIFT = 16;
+    /** Maximum length of the undo record of one move: up to four
+     *  captures, the number of captures and previous winner, and the
+     *  move. */
+    private static final int UNDO_RECORD = 6;
+
+    /** My variant. */
+    private final Variant _variant;
+    /** The contents of my cells. */
+    private final byte[] _cells;
+    /** An upper bound on the number of legal moves. */
+    private final int _maxMoves;
+    /** Side to move. */
+    private int _turn;
+    /** Winner, or EMPTY_CELL. */
+    private int _winner;
+    /** Hash of the position. */
+    private long _hash;
+    /** Undo records of the moves made, each consisting of the captured
+     *  pieces (cell << MOVE_SHIFT | contents), the previous winner and
+     *  number of captures, and the move. */
+    private int[] _undo;
+    /** Length of the used part of _undo. */
+    private int _undoTop;
+}
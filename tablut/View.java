@@ -1,10 +1,20 @@
 package tablut;
 
+import java.util.function.Consumer;
+
 /** A view of a Tablut board.
  *  @author P. N. Hilfinger */
 interface View {
 
-    /** Update the current view according to the game on CONTROLLER. */
-    void update(Controller controller);
+    /** Update the current view according to EVENT, which describes a
+     *  change in the game being viewed.  Called by the Controller's
+     *  thread; EVENT and its snapshot are immutable, so they may be
+     *  passed on to other threads. */
+    void update(ViewEvent event);
+
+    /** Return a receiver for reports on the progress of AI players'
+     *  searches, or null if I do not display them.  The receiver is
+     *  called from searching threads and must not block them. */
+    Consumer<SearchProgress> searchMonitor();
 
 }
@@ -0,0 +1,102 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static tablut.Piece.EMPTY;
+import static tablut.Square.SQUARE_LIST;
+
+/** A notification to a View of a change in the game shown on it: its kind,
+ *  a snapshot of the resulting board, the squares whose contents changed,
+ *  and, for moves, the move and the pieces it captured.  ViewEvents are
+ *  immutable.
+ *  @author Osvaldo Valadez
+ */
+final class ViewEvent {
+
+    /** The kinds of event. */
+    enum Kind {
+        /** A new game has started. */
+        NEW_GAME,
+        /** A move was made. */
+        MOVE,
+        /** Moves were undone. */
+        UNDO,
+        /** Moves were redone, or the game went to another point in its
+         *  history. */
+        GOTO,
+        /** The board was edited other than by moves (e.g., by toggle). */
+        EDIT,
+        /** A player was changed (e.g., by manual or auto). */
+        PLAYERS,
+        /** The game has been won. */
+        WINNER
+    }
+
+    /** An event of kind KIND, resulting from MOVE (null unless KIND is
+     *  MOVE), that changed the board from BEFORE (null if unknown) to
+     *  AFTER. */
+    ViewEvent(Kind kind, Move move, BoardSnapshot before,
+              BoardSnapshot after) {
+        _kind = kind;
+        _move = move;
+        _snapshot = after;
+        ArrayList<Square> changed = new ArrayList<>();
+        ArrayList<Square> captured = new ArrayList<>();
+        if (before != after) {
+            for (Square s : SQUARE_LIST) {
+                if (before == null || before.get(s) != after.get(s)) {
+                    changed.add(s);
+                    if (move != null && s != move.from()
+                        && after.get(s) == EMPTY) {
+                        captured.add(s);
+                    }
+                }
+            }
+        }
+        _changed = Collections.unmodifiableList(changed);
+        _captured = Collections.unmodifiableList(captured);
+    }
+
+    /** Return my kind. */
+    Kind kind() {
+        return _kind;
+    }
+
+    /** Return the move made, if I am a MOVE event, and otherwise null. */
+    Move move() {
+        return _move;
+    }
+
+    /** Return the squares whose pieces were captured by my move (empty
+     *  unless I am a MOVE event). */
+    List<Square> captured() {
+        return _captured;
+    }
+
+    /** Return the squares whose contents changed. */
+    List<Square> changed() {
+        return _changed;
+    }
+
+    /** Return the state of the board after the event. */
+    BoardSnapshot snapshot() {
+        return _snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return _move == null ? _kind.toString()
+            : String.format("%s %s x%s", _kind, _move, _captured);
+    }
+
+    /** My kind. */
+    private final Kind _kind;
+    /** My move, or null. */
+    private final Move _move;
+    /** The resulting board. */
+    private final BoardSnapshot _snapshot;
+    /** Changed and captured squares. */
+    private final List<Square> _changed, _captured;
+}
@@ -0,0 +1,121 @@
+package tablut;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+
+/** A warm-up phase for the JIT compiler.  The first searches of a process
+ *  otherwise run largely in the interpreter, so that under time controls
+ *  the first few moves are searched several plies less deeply than later
+ *  ones.  Warmup first plays a short scripted session through a
+ *  Controller, as a server session would, so that the classes used in
+ *  play are loaded and initialized.  It then exercises move generation,
+ *  move making and undoing (with the capture code), evaluation, and search
+ *  on the positions in Positions, round after round, until the JIT
+ *  compiler has (nearly) stopped compiling or a time budget runs out.
+ *  @author Osvaldo Valadez
+ */
+class Warmup {
+
+    /** Default time budget of a warm-up, in milliseconds. */
+    static final long DEFAULT_BUDGET = 3000;
+
+    /** Minimum number of rounds run. */
+    static final int MIN_ROUNDS = 3;
+
+    /** The compiler is considered settled when it has spent less than this
+     *  many milliseconds compiling during a round. */
+    static final long SETTLED_MILLIS = 5;
+
+    /** Depth of the searches in each round. */
+    static final int SEARCH_DEPTH = 2;
+
+    /** Names of the positions used, all from Positions. */
+    static final String[] POSITIONS = Bench.POSITIONS;
+
+    /** Commands of the session played at the start of a warm-up. */
+    private static final byte[] SESSION_SCRIPT =
+        "auto black\ndump\nundo\nquit\n".getBytes();
+
+    /** Warm up for at most BUDGET milliseconds (but at least MIN_ROUNDS
+     *  rounds), reporting the rounds run, the time taken, and the time
+     *  spent by the JIT compiler in one line on LOG. */
+    static void run(PrintStream log, long budget) {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean timed =
+            jit != null && jit.isCompilationTimeMonitoringSupported();
+        long compileStart = timed ? jit.getTotalCompilationTime() : 0;
+        long start = System.nanoTime();
+        long deadline = start + budget * 1_000_000;
+        AI ai = new AI();
+        playSession(ai);
+        int rounds;
+        for (rounds = 1; true; rounds += 1) {
+            long compiled = timed ? jit.getTotalCompilationTime() : 0;
+            _sink += round(ai);
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            if (rounds >= MIN_ROUNDS
+                && (!timed
+                    || jit.getTotalCompilationTime() - compiled
+                       < SETTLED_MILLIS)) {
+                break;
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (timed) {
+            log.printf("Warm-up: %d rounds in %d ms (JIT compilation "
+                       + "%d ms)%n", rounds, millis,
+                       jit.getTotalCompilationTime() - compileStart);
+        } else {
+            log.printf("Warm-up: %d rounds in %d ms%n", rounds, millis);
+        }
+        log.flush();
+    }
+
+    /** Play SESSION_SCRIPT through a Controller whose AI players are
+     *  copies of AI, discarding its output. */
+    private static void playSession(AI ai) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(discard, discard),
+                           new TextPlayer(), ai.copy(), false,
+                           new ByteArrayInputStream(SESSION_SCRIPT),
+                           discard);
+        control.play();
+    }
+
+    /** Run one round of warm-up, using AI for evaluation and search.
+     *  Returns a value computed from the results, which run adds to _sink
+     *  so that none of the work can be optimized away. */
+    private static long round(AI ai) {
+        long result = 0;
+        for (String name : POSITIONS) {
+            Board board = Positions.get(name);
+            for (Move move : board.legalMoves(board.turn())) {
+                board.makeMove(move);
+                result += ai.staticScore(board);
+                for (Move reply : board.legalMoves(board.turn())) {
+                    board.makeMove(reply);
+                    result += board.winner() == null ? 0 : 1;
+                    board.undo();
+                }
+                board.undo();
+            }
+            ai.clearHash();
+            ai.findMove(board, SEARCH_DEPTH);
+            result += ai.nodeCount();
+        }
+        return result;
+    }
+
+    /** The sum of the values of all rounds run.  Being volatile, it must
+     *  actually be written, and so the rounds must actually compute their
+     *  values. */
+    private static volatile long _sink;
+
+}
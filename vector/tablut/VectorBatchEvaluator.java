@@ -0,0 +1,209 @@
+package tablut;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+
+/** A BatchEvaluator that uses the (incubating) Vector API, which must be
+ *  enabled when compiling and running (--add-modules
+ *  jdk.incubator.vector).  Each position's squares are compared a vector
+ *  of bytes at a time, to find its king and count its pieces or to
+ *  extract its network features, and the network's accumulator, hidden
+ *  units, and output are computed a vector of ints at a time, using the
+ *  widest vectors the machine supports.  Its results are exactly those
+ *  of the scalar BatchEvaluator.
+ *  @author Osvaldo Valadez
+ */
+final class VectorBatchEvaluator extends BatchEvaluator {
+
+    /** Species of the vectors holding squares. */
+    private static final VectorSpecies<Byte> BYTES =
+        ByteVector.SPECIES_PREFERRED;
+
+    /** Species of the vectors holding hidden units. */
+    private static final VectorSpecies<Integer> INTS =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Number of squares, rounded up to a whole number of vectors.  The
+     *  squares of each position are copied to an array of this length,
+     *  padded with empty squares, so that none of the loads of squares
+     *  needs a mask (which this JIT compiles less well). */
+    private static final int PADDED_SQUARES =
+        BYTES.loopBound(NUM_SQUARES + BYTES.length() - 1);
+
+    /** SCAN_ORDER, padded to PADDED_SQUARES with values larger than any
+     *  in it. */
+    private static final byte[] PADDED_SCAN_ORDER =
+        new byte[PADDED_SQUARES];
+
+    static {
+        Arrays.fill(PADDED_SCAN_ORDER, Byte.MAX_VALUE);
+        System.arraycopy(SCAN_ORDER, 0, PADDED_SCAN_ORDER, 0, NUM_SQUARES);
+    }
+
+    /** Contents of squares, as packed. */
+    private static final byte
+        EMPTY_CODE = (byte) EMPTY.ordinal(),
+        WHITE_CODE = (byte) WHITE.ordinal(),
+        BLACK_CODE = (byte) BLACK.ordinal(),
+        KING_CODE = (byte) KING.ordinal();
+
+    /** A vectorized evaluator using NETWORK, or the built-in evaluation
+     *  with weights PARAMS if NETWORK is null. */
+    VectorBatchEvaluator(Network network, EvalParams params) {
+        super(network, params);
+        if (network == null) {
+            _hidden = _paddedHidden = 0;
+            _clip = 0;
+            _biases = _weights = _outputWeights = null;
+            _vectorOutput = false;
+        } else {
+            _hidden = network.hidden();
+            _paddedHidden = INTS.loopBound(_hidden + INTS.length() - 1);
+            _clip = network.clip();
+            _biases = widen(network.biases(), _hidden, _paddedHidden);
+            _weights = widen(network.weights(), _hidden, _paddedHidden);
+            _outputWeights =
+                widen(network.outputWeights(), _hidden, _paddedHidden);
+            _vectorOutput = (long) _hidden * _clip * (Short.MAX_VALUE + 1)
+                <= Integer.MAX_VALUE;
+        }
+    }
+
+    @Override
+    boolean vectorized() {
+        return true;
+    }
+
+    @Override
+    void evaluate(byte[] positions, int count, int[] scores) {
+        if (network() == null) {
+            for (int k = 0; k < count; k += 1) {
+                scores[k] = materialScore(positions, k * NUM_SQUARES);
+            }
+        } else {
+            for (int k = 0; k < count; k += 1) {
+                scores[k] = networkScore(positions, k * NUM_SQUARES);
+            }
+        }
+    }
+
+    /** Return the built-in evaluation (as AI.staticScore, with my
+     *  params()) of the position at BASE in POSITIONS.  The pieces are
+     *  counted a vector at a time; the features of the king are found as
+     *  in EvalParams. */
+    private int materialScore(byte[] positions, int base) {
+        byte[] padded = _squares;
+        System.arraycopy(positions, base, padded, 0, NUM_SQUARES);
+        int king = -1, kingAt = NUM_SQUARES;
+        for (int i = 0; i < PADDED_SQUARES; i += BYTES.length()) {
+            VectorMask<Byte> kings =
+                ByteVector.fromArray(BYTES, padded, i).eq(KING_CODE);
+            if (kings.anyTrue()) {
+                king = i + kings.firstTrue();
+                kingAt = SCAN_ORDER[king];
+            }
+        }
+        int white, black;
+        white = black = 0;
+        for (int i = 0; i < PADDED_SQUARES; i += BYTES.length()) {
+            ByteVector squares = ByteVector.fromArray(BYTES, padded, i);
+            VectorMask<Byte> counted =
+                ByteVector.fromArray(BYTES, PADDED_SCAN_ORDER, i)
+                .lt((byte) kingAt);
+            white += squares.eq(WHITE_CODE).and(counted).trueCount();
+            black += squares.eq(BLACK_CODE).and(counted).trueCount();
+        }
+        int[] features = _materialFeatures;
+        features[EvalParams.WHITE_PIECES] = white;
+        features[EvalParams.BLACK_PIECES] = black;
+        EvalParams.kingFeatures(padded, 0, king, features);
+        return params().evaluate(features);
+    }
+
+    /** Return the value given by my network to the position at BASE in
+     *  POSITIONS. */
+    private int networkScore(byte[] positions, int base) {
+        byte[] padded = _squares;
+        System.arraycopy(positions, base, padded, 0, NUM_SQUARES);
+        int[] features = _features;
+        int n = 0;
+        for (int i = 0; i < PADDED_SQUARES; i += BYTES.length()) {
+            VectorMask<Byte> occupied = ByteVector.fromArray(BYTES, padded, i)
+                .compare(VectorOperators.NE, EMPTY_CODE);
+            for (long lanes = occupied.toLong(); lanes != 0;
+                 lanes &= lanes - 1) {
+                int square = i + Long.numberOfTrailingZeros(lanes);
+                features[n] = ((padded[square] - WHITE_CODE) * NUM_SQUARES
+                               + square) * _paddedHidden;
+                n += 1;
+            }
+        }
+        long sum = network().outputBias();
+        IntVector products = IntVector.zero(INTS);
+        for (int h = 0; h < _paddedHidden; h += INTS.length()) {
+            IntVector units = IntVector.fromArray(INTS, _biases, h);
+            for (int k = 0; k < n; k += 1) {
+                units = units.add(IntVector.fromArray(INTS, _weights,
+                                                      features[k] + h));
+            }
+            units = units.max(0).min(_clip);
+            if (_vectorOutput) {
+                products = products.add(
+                    units.mul(IntVector.fromArray(INTS, _outputWeights, h)));
+            } else {
+                units.intoArray(_lanes, 0);
+                for (int lane = 0; lane < _lanes.length; lane += 1) {
+                    sum += (long) _lanes[lane] * _outputWeights[h + lane];
+                }
+            }
+        }
+        sum += products.reduceLanes(VectorOperators.ADD);
+        sum >>= network().shift();
+        return (int) Math.max(-Network.MAX_SCORE,
+                              Math.min(Network.MAX_SCORE, sum));
+    }
+
+    /** Return the elements of DATA, which consists of rows of WIDTH
+     *  elements, as ints, with each row padded with 0s to PADDEDWIDTH
+     *  elements. */
+    private static int[] widen(short[] data, int width, int paddedWidth) {
+        int[] result = new int[data.length / width * paddedWidth];
+        for (int i = 0; i < data.length; i += 1) {
+            result[i / width * paddedWidth + i % width] = data[i];
+        }
+        return result;
+    }
+
+    /** Number of hidden units of my network. */
+    private final int _hidden;
+    /** _hidden, rounded up to a whole number of vectors.  The padding
+     *  units have 0 weights, and so do not affect the result. */
+    private final int _paddedHidden;
+    /** Clipping value of my network's hidden units. */
+    private final int _clip;
+    /** My network's biases, weights (by feature), and output weights, as
+     *  ints, padded to _paddedHidden units. */
+    private final int[] _biases, _weights, _outputWeights;
+    /** True iff products of hidden units and output weights, and their
+     *  sums, can be computed in int vectors without overflow. */
+    private final boolean _vectorOutput;
+    /** Squares of the position being evaluated, padded. */
+    private final byte[] _squares = new byte[PADDED_SQUARES];
+    /** Features (see EvalParams) of the position being evaluated by the
+     *  built-in evaluation. */
+    private final int[] _materialFeatures = new int[EvalParams.COUNT];
+    /** Offsets in _weights of the features of the position being
+     *  evaluated. */
+    private final int[] _features = new int[NUM_SQUARES];
+    /** Lanes of a vector of hidden units, when the output is summed one
+     *  by one. */
+    private final int[] _lanes = new int[INTS.length()];
+}